@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.content.res.Resources;
+import android.graphics.BitmapFactory;
+import android.util.SparseIntArray;
+
+/**
+ * Sizes of image resources, read from just their headers, so setting up
+ * sprites doesn't decode an image the renderer is going to decode again
+ * anyway. Sizes are remembered for as long as the process lives.
+ * <p>
+ * These are the sizes the texture loaders get from the same resources,
+ * not scaled for the screen density like a Drawable would be.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class ImageMetadata {
+
+	public static final ImageMetadata sSingleton = new ImageMetadata();
+
+	private final BitmapFactory.Options mBoundsOptions =
+		new BitmapFactory.Options();
+
+	//Resource ID to width in the high half and height in the low half.
+	private final SparseIntArray mSizes = new SparseIntArray();
+
+	private ImageMetadata() {
+		mBoundsOptions.inJustDecodeBounds = true;
+	}
+
+	/**
+	 * @param resources Resources the image is in
+	 * @param resourceId int image resource
+	 * @return int width in pixels
+	 */
+	public int getWidth(final Resources resources, final int resourceId) {
+		return getSize(resources, resourceId) >>> 16;
+	}
+
+	/**
+	 * @param resources Resources the image is in
+	 * @param resourceId int image resource
+	 * @return int height in pixels
+	 */
+	public int getHeight(final Resources resources, final int resourceId) {
+		return getSize(resources, resourceId) & 0xffff;
+	}
+
+	private synchronized int getSize(final Resources resources,
+			final int resourceId) {
+		int size = mSizes.get(resourceId, -1);
+		if ( -1 != size ) {
+			return size;
+		}
+
+		//Only reads the header, nothing is allocated for the pixels.
+		final InputStream is = resources.openRawResource(resourceId);
+		try {
+			BitmapFactory.decodeStream(is, null, mBoundsOptions);
+		} finally {
+			try {
+				is.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		if ( mBoundsOptions.outWidth < 0 || mBoundsOptions.outHeight < 0 ) {
+			throw new IllegalArgumentException("Not an image: "
+					+ resources.getResourceEntryName(resourceId));
+		}
+		size = mBoundsOptions.outWidth << 16 | mBoundsOptions.outHeight;
+		mSizes.put(resourceId, size);
+		return size;
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.SparseIntArray;
+
+/**
+ * Picks the smallest pixel format that keeps what each image's alpha
+ * channel actually uses, instead of forcing everything to RGB 565 and
+ * losing the alpha of the sprites:
+ * <ul>
+ * <li>Opaque images are RGB 565.</li>
+ * <li>Cutouts, with every pixel either fully transparent or fully opaque,
+ * are RGBA 5551 for OpenGL. Bitmaps have no such config, so they stay
+ * ARGB 8888 until {@link #toRgba5551(Bitmap)} packs them for upload.</li>
+ * <li>Anything translucent is ARGB 8888. ARGB 4444 would be half the size,
+ * but bands the antialiased edges badly enough to notice.</li>
+ * </ul>
+ * Telling which an image is means decoding it with alpha and scanning every
+ * pixel. That only happens the first time a resource is loaded. After
+ * that, its class is remembered for as long as the process lives, and
+ * images are decoded straight to their format.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class PixelFormatPolicy {
+
+	public static final int ALPHA_UNKNOWN = -1;
+
+	public static final int ALPHA_OPAQUE = 0;
+
+	public static final int ALPHA_CUTOUT = 1;
+
+	public static final int ALPHA_TRANSLUCENT = 2;
+
+	private static final String[] ALPHA_NAMES = {
+		"opaque", "cutout", "translucent"
+	};
+
+	/**
+	 * Shared so classifications survive from one test run to the next.
+	 */
+	public static final PixelFormatPolicy sSingleton = new PixelFormatPolicy();
+
+	//Resource ID to ALPHA_ constant. Filled in from decoder threads too.
+	private final SparseIntArray mAlphaClasses = new SparseIntArray();
+
+	private int mScans;
+
+	/**
+	 * @param resourceId int image resource
+	 * @return int ALPHA_ constant, ALPHA_UNKNOWN if not loaded yet
+	 */
+	public synchronized int getAlphaClass(final int resourceId) {
+		return mAlphaClasses.get(resourceId, ALPHA_UNKNOWN);
+	}
+
+	private synchronized void setAlphaClass(final int resourceId,
+			final int alphaClass) {
+		mAlphaClasses.put(resourceId, alphaClass);
+		mScans++;
+	}
+
+	/**
+	 * @return int images scanned so far, each at most once
+	 */
+	public synchronized int getScans() {
+		return mScans;
+	}
+
+	/**
+	 * Decodes an image resource in the config its alpha class calls for,
+	 * scanning it first if its class isn't known yet. Safe to call from any
+	 * thread.
+	 *
+	 * @param resources Resources to decode from
+	 * @param resourceId int image resource
+	 * @param options BitmapFactory.Options to decode with, its preferred
+	 * config is overwritten
+	 * @return Bitmap or null if it couldn't be decoded
+	 */
+	public Bitmap decode(final Resources resources, final int resourceId,
+			final BitmapFactory.Options options) {
+		final int known = getAlphaClass(resourceId);
+		options.inPreferredConfig = ALPHA_UNKNOWN == known
+			? Bitmap.Config.ARGB_8888 : getBitmapConfig(known);
+
+		final Bitmap bitmap;
+		final InputStream is = resources.openRawResource(resourceId);
+		try {
+			bitmap = BitmapFactory.decodeStream(is, null, options);
+		} finally {
+			try {
+				is.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		if ( ALPHA_UNKNOWN != known || null == bitmap ) {
+			return bitmap;
+		}
+
+		final int alphaClass = classify(bitmap);
+		setAlphaClass(resourceId, alphaClass);
+		if ( ALPHA_OPAQUE != alphaClass ) {
+			return bitmap;
+		}
+		//Only decoded with alpha to find out it has none.
+		final Bitmap opaque = bitmap.copy(Bitmap.Config.RGB_565, false);
+		bitmap.recycle();
+		return opaque;
+	}
+
+	/**
+	 * @param bitmap Bitmap to scan every pixel of
+	 * @return int ALPHA_ constant for what the alpha channel uses
+	 */
+	public static int classify(final Bitmap bitmap) {
+		if ( !bitmap.hasAlpha() ) {
+			return ALPHA_OPAQUE;
+		}
+
+		final int width = bitmap.getWidth();
+		final int height = bitmap.getHeight();
+		final int[] row = new int[width];
+		boolean transparent = false;
+		for( int y = 0; y < height; y++ ) {
+			bitmap.getPixels(row, 0, width, 0, y, width, 1);
+			for( int x = 0; x < width; x++ ) {
+				final int alpha = row[x] >>> 24;
+				if ( 0 == alpha ) {
+					transparent = true;
+				} else if ( 0xff != alpha ) {
+					//Nothing smaller can hold it, so stop looking.
+					return ALPHA_TRANSLUCENT;
+				}
+			}
+		}
+		return transparent ? ALPHA_CUTOUT : ALPHA_OPAQUE;
+	}
+
+	/**
+	 * @param alphaClass int ALPHA_ constant, not ALPHA_UNKNOWN
+	 * @return Bitmap.Config to decode images of that class to
+	 */
+	public static Bitmap.Config getBitmapConfig(final int alphaClass) {
+		return ALPHA_OPAQUE == alphaClass
+			? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+	}
+
+	/**
+	 * @param alphaClass int ALPHA_ constant
+	 * @param bitmap Bitmap decoded by {@link #decode}
+	 * @return boolean true if the bitmap should be uploaded as RGBA 5551
+	 * from {@link #toRgba5551(Bitmap)} rather than as is
+	 */
+	public static boolean isRgba5551(final int alphaClass,
+			final Bitmap bitmap) {
+		return ALPHA_CUTOUT == alphaClass
+			&& Bitmap.Config.ARGB_8888 == bitmap.getConfig();
+	}
+
+	/**
+	 * Packs a cutout for glTexImage2D with GL_RGBA and
+	 * GL_UNSIGNED_SHORT_5_5_5_1.
+	 *
+	 * @param bitmap Bitmap ARGB 8888 image
+	 * @return ByteBuffer direct buffer of every pixel, row by row
+	 */
+	public static ByteBuffer toRgba5551(final Bitmap bitmap) {
+		final int width = bitmap.getWidth();
+		final int height = bitmap.getHeight();
+		final ByteBuffer bytes = ByteBuffer.allocateDirect(width * height * 2)
+			.order(ByteOrder.nativeOrder());
+		final ShortBuffer pixels = bytes.asShortBuffer();
+		final int[] row = new int[width];
+		for( int y = 0; y < height; y++ ) {
+			bitmap.getPixels(row, 0, width, 0, y, width, 1);
+			for( int x = 0; x < width; x++ ) {
+				final int argb = row[x];
+				pixels.put((short) ((argb >> 8 & 0xf800)
+						| (argb >> 5 & 0x07c0)
+						| (argb >> 2 & 0x003e)
+						| (argb >>> 31)));
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param alphaClass int ALPHA_ constant
+	 * @param bitmap Bitmap decoded by {@link #decode}
+	 * @return String short name of the format uploaded, for the results
+	 */
+	public static String getFormatName(final int alphaClass,
+			final Bitmap bitmap) {
+		final String format = isRgba5551(alphaClass, bitmap)
+			? "RGBA_5551" : String.valueOf(bitmap.getConfig());
+		return ALPHA_UNKNOWN == alphaClass ? format
+				: format + " " + ALPHA_NAMES[alphaClass];
+	}
+
+	/**
+	 * @param alphaClass int ALPHA_ constant
+	 * @param bitmap Bitmap decoded by {@link #decode}
+	 * @return int bytes per pixel of the uploaded texture
+	 */
+	public static int getBytesPerPixel(final int alphaClass,
+			final Bitmap bitmap) {
+		return isRgba5551(alphaClass, bitmap)
+			? 2 : getBytesPerPixel(bitmap.getConfig());
+	}
+
+	/**
+	 * @return int bytes per pixel GLUtils uploads a bitmap of this config
+	 * with
+	 */
+	public static int getBytesPerPixel(final Bitmap.Config config) {
+		if ( null == config ) {
+			return 4;
+		}
+		switch ( config ) {
+			case ALPHA_8:
+				return 1;
+			case RGB_565:
+			case ARGB_4444:
+				return 2;
+			default:
+				return 4;
+		}
+	}
+}
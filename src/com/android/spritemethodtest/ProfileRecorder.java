@@ -16,13 +16,17 @@
 
 package com.android.spritemethodtest;
 
+import java.util.ArrayList;
+
 import android.os.SystemClock;
 
 /** 
  * Implements a simple runtime profiler.  The profiler records start and stop
  * times for several different types of profiles and can then return min, max
  * and average execution times per type.  Profile types are independent and may
- * be nested in calling code. This object is a singleton for convenience.
+ * be nested in calling code. It also keeps per-frame counters for things that
+ * are not times, like the number of bytes uploaded.  This object is a 
+ * singleton for convenience.
  */
 public class ProfileRecorder {
     // A type for recording actual draw command time.
@@ -33,10 +37,115 @@ public class ProfileRecorder {
     public static final int PROFILE_SIM = 2;
     // A type for recording the total amount of time spent rendering a frame.
     public static final int PROFILE_FRAME = 3;
-    private static final int PROFILE_COUNT = PROFILE_FRAME + 1;
+    // A type for recording the time spent writing the batched sprite quads 
+    // on the rendering thread alone.
+    public static final int PROFILE_WRITE_SERIAL = 4;
+    // A type for recording the time spent writing the batched sprite quads 
+    // with the parallel sprite writer, including waiting for its threads.
+    public static final int PROFILE_WRITE_PARALLEL = 5;
+    private static final int PROFILE_COUNT = PROFILE_WRITE_PARALLEL + 1;
+    
+    // A startup type for the time from starting an OpenGL context, as on 
+    // resume, to displaying the first frame drawn with it.
+    public static final int STARTUP_FIRST_FRAME = 0;
+    // A startup type for the time from starting an OpenGL context to having 
+    // every texture uploaded to it.
+    public static final int STARTUP_TEXTURES_LOADED = 1;
+    // The rest are single phases of starting up, each timed from its own 
+    // start, so it's clear which to work on. Creating the test activity 
+    // happens before any context is started.
+    public static final int STARTUP_ACTIVITY_CREATE = 2;
+    // Setting up the sprites and their draw data, part of the above.
+    public static final int STARTUP_SPRITE_SETUP = 3;
+    // Starting EGL and creating the window surface, the first part of 
+    // both of the context startup types.
+    public static final int STARTUP_EGL_INIT = 4;
+    // Loading the textures into a new context, along with anything else 
+    // the renderer creates in it, until the last texture is uploaded. The 
+    // last part of STARTUP_TEXTURES_LOADED.
+    public static final int STARTUP_TEXTURE_LOAD = 5;
+    // Drawing and displaying the first frame, the last part of 
+    // STARTUP_FIRST_FRAME.
+    public static final int STARTUP_FIRST_DRAW = 6;
+    private static final int STARTUP_COUNT = STARTUP_FIRST_DRAW + 1;
+    
+    private static final String[] STARTUP_NAMES = {
+        "Start to First Frame",
+        "Start to All Textures",
+        "Activity Create",
+        "Sprite Setup",
+        "EGL Init",
+        "Texture Load",
+        "First Draw",
+    };
+    
+    // A counter for bytes written into batch buffers for static layers.
+    public static final int COUNTER_STATIC_LAYER_BYTES = 0;
+    // A counter for bytes written into batch buffers for dynamic layers.
+    public static final int COUNTER_DYNAMIC_LAYER_BYTES = 1;
+    // A counter for bytes sent to vertex buffer objects.
+    public static final int COUNTER_HARDWARE_UPLOAD_BYTES = 2;
+    // A counter for newly allocated direct buffers.
+    public static final int COUNTER_BUFFER_ALLOCATIONS = 3;
+    // A counter for direct buffers reused from the pool.
+    public static final int COUNTER_BUFFER_REUSES = 4;
+    // A counter for retained sprite quads that changed and were copied.
+    public static final int COUNTER_DIRTY_QUADS = 5;
+    // A counter for bytes of indices read by batched draw calls.
+    public static final int COUNTER_INDEX_BYTES = 6;
+    // A counter for bytes of vertex data read by batched draw calls.
+    public static final int COUNTER_VERTEX_BYTES = 7;
+    // A counter for draw calls made by batched drawing.
+    public static final int COUNTER_DRAW_CALLS = 8;
+    // A counter for textures bound by batched drawing.
+    public static final int COUNTER_TEXTURE_BINDS = 9;
+    // A counter for redundant OpenGL calls dropped by the state cache.
+    public static final int COUNTER_ELIDED_GL_CALLS = 10;
+    // A counter for sprites skipped for being outside the view.
+    public static final int COUNTER_CULLED_SPRITES = 11;
+    // A counter for sprites drawn clipped to the view.
+    public static final int COUNTER_CLIPPED_SPRITES = 12;
+    // A counter for images found already in the runtime atlas.
+    public static final int COUNTER_ATLAS_HITS = 13;
+    // A counter for images that had to be added to the runtime atlas.
+    public static final int COUNTER_ATLAS_MISSES = 14;
+    // A counter for images evicted from the runtime atlas to make room.
+    public static final int COUNTER_ATLAS_EVICTIONS = 15;
+    private static final int COUNTER_COUNT = COUNTER_ATLAS_EVICTIONS + 1;
+    
+    // Names used when displaying counters, indexed by counter type.
+    private static final String[] COUNTER_NAMES = {
+        "Static Layer Bytes",
+        "Dynamic Layer Bytes",
+        "VBO Upload Bytes",
+        "Buffer Allocations",
+        "Buffer Reuses",
+        "Dirty Quads",
+        "Index Bytes",
+        "Vertex Bytes",
+        "Draw Calls",
+        "Texture Binds",
+        "Elided GL Calls",
+        "Culled Sprites",
+        "Clipped Sprites",
+        "Atlas Hits",
+        "Atlas Misses",
+        "Atlas Evictions",
+    };
     
     private ProfileRecord[] mProfiles;
+    private CounterRecord[] mCounters;
     private int mFrameCount;
+    private ProfileRecord[] mStartups;
+    private int[] mStartupCounts;
+    private long mContextStartTime;
+    // Each texture loaded, by name, with its format, bytes, load time and 
+    // whether it came from the decoded texture cache.
+    private ArrayList<String> mTextureNames = new ArrayList<String>();
+    private ArrayList<String> mTextureFormats = new ArrayList<String>();
+    private ArrayList<Integer> mTextureBytes = new ArrayList<Integer>();
+    private ArrayList<Long> mTextureLoadTimes = new ArrayList<Long>();
+    private ArrayList<Boolean> mTextureCached = new ArrayList<Boolean>();
     
     public static ProfileRecorder sSingleton = new ProfileRecorder();
     
@@ -45,6 +154,15 @@ public class ProfileRecorder {
         for (int x = 0; x < PROFILE_COUNT; x++) {
             mProfiles[x] = new ProfileRecord();
         }
+        mCounters = new CounterRecord[COUNTER_COUNT];
+        for (int x = 0; x < COUNTER_COUNT; x++) {
+            mCounters[x] = new CounterRecord();
+        }
+        mStartups = new ProfileRecord[STARTUP_COUNT];
+        mStartupCounts = new int[STARTUP_COUNT];
+        for (int x = 0; x < STARTUP_COUNT; x++) {
+            mStartups[x] = new ProfileRecord();
+        }
     }
     
     /** Starts recording execution time for a specific profile type.*/
@@ -61,17 +179,182 @@ public class ProfileRecorder {
         }
     }
     
+    /** Adds to the value of a counter for the current frame. */
+    public void count(int counterType, int amount) {
+        if (counterType < COUNTER_COUNT) {
+            mCounters[counterType].add(amount);
+        }
+    }
+    
     /** Indicates the end of the frame.*/
     public void endFrame() {
         mFrameCount++;
+        for (int x = 0; x < COUNTER_COUNT; x++) {
+            mCounters[x].endFrame();
+        }
     }
     
-    /* Flushes all recorded timings from the profiler. */
+    /* Flushes all recorded timings and counts from the profiler. */
     public void resetAll() {
         for (int x = 0; x < PROFILE_COUNT; x++) {
             mProfiles[x].reset();
         }
+        for (int x = 0; x < COUNTER_COUNT; x++) {
+            mCounters[x].reset();
+        }
         mFrameCount = 0;
+        for (int x = 0; x < STARTUP_COUNT; x++) {
+            mStartups[x].reset();
+            mStartupCounts[x] = 0;
+        }
+        mTextureNames.clear();
+        mTextureFormats.clear();
+        mTextureBytes.clear();
+        mTextureLoadTimes.clear();
+        mTextureCached.clear();
+    }
+    
+    /** 
+     * Records a texture being loaded. Loading one with the same name again,
+     * as after the context was lost, replaces the earlier record.
+     */
+    public void recordTexture(String name, String format, int bytes, 
+            long loadTime, boolean cached) {
+        int index = mTextureNames.indexOf(name);
+        if (index < 0) {
+            index = mTextureNames.size();
+            mTextureNames.add(name);
+            mTextureFormats.add(format);
+            mTextureBytes.add(bytes);
+            mTextureLoadTimes.add(loadTime);
+            mTextureCached.add(cached);
+        } else {
+            mTextureFormats.set(index, format);
+            mTextureBytes.set(index, bytes);
+            mTextureLoadTimes.set(index, loadTime);
+            mTextureCached.set(index, cached);
+        }
+    }
+    
+    /* Returns the number of different textures recorded. */
+    public int getTextureCount() {
+        return mTextureNames.size();
+    }
+    
+    /* Returns the resource name of a recorded texture. */
+    public String getTextureName(int texture) {
+        return mTextureNames.get(texture);
+    }
+    
+    /* Returns the format a recorded texture was uploaded in. */
+    public String getTextureFormat(int texture) {
+        return mTextureFormats.get(texture);
+    }
+    
+    /* Returns the estimated bytes of texture memory a texture takes up. */
+    public int getTextureBytes(int texture) {
+        return mTextureBytes.get(texture);
+    }
+    
+    /* Returns the time in milliseconds it took to load a texture. */
+    public long getTextureLoadTime(int texture) {
+        return mTextureLoadTimes.get(texture);
+    }
+    
+    /* 
+     * Returns true if a texture was warm, mapped already decoded from local 
+     * storage, false if it was cold and had to be read from its resource. 
+     */
+    public boolean isTextureCached(int texture) {
+        return mTextureCached.get(texture);
+    }
+    
+    /* Returns how many textures were loaded warm, or cold. */
+    public int getTextureCount(boolean cached) {
+        int count = 0;
+        for (int x = 0; x < mTextureCached.size(); x++) {
+            if (mTextureCached.get(x) == cached) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /* Returns the total time in milliseconds of warm, or cold, loads. */
+    public long getTotalTextureLoadTime(boolean cached) {
+        long total = 0;
+        for (int x = 0; x < mTextureCached.size(); x++) {
+            if (mTextureCached.get(x) == cached) {
+                total += mTextureLoadTimes.get(x);
+            }
+        }
+        return total;
+    }
+    
+    /** Indicates an OpenGL context is being started, as on resume. */
+    public void startContext() {
+        mContextStartTime = SystemClock.uptimeMillis();
+    }
+    
+    /** Records the time since the context was started for a startup type. */
+    public void recordStartup(int startupType) {
+        recordStartup(startupType, mContextStartTime);
+    }
+    
+    /** 
+     * Records the time from the given SystemClock.uptimeMillis() time until 
+     * now for a startup type, for the phases that don't start with the 
+     * context.
+     */
+    public void recordStartup(int startupType, long startTime) {
+        if (startupType < STARTUP_COUNT) {
+            mStartups[startupType].start(startTime);
+            mStartups[startupType].stop(SystemClock.uptimeMillis());
+            mStartupCounts[startupType]++;
+        }
+    }
+    
+    /* Returns the number of startup types the profiler keeps. */
+    public int getStartupTypeCount() {
+        return STARTUP_COUNT;
+    }
+    
+    /* Returns a displayable name for a given startup type. */
+    public String getStartupName(int startupType) {
+        return startupType < STARTUP_COUNT ? STARTUP_NAMES[startupType] : null;
+    }
+    
+    /* Returns the number of times a given startup type was recorded. */
+    public int getStartupCount(int startupType) {
+        return startupType < STARTUP_COUNT ? mStartupCounts[startupType] : 0;
+    }
+    
+    /* Returns the average time in milliseconds for a given startup type. */
+    public long getAverageStartupTime(int startupType) {
+        long time = 0;
+        if (startupType < STARTUP_COUNT) {
+            time = mStartups[startupType].getAverageTime(
+                    mStartupCounts[startupType]);
+        }
+        return time;
+    }
+    
+    /* Returns the minimum time in milliseconds for a given startup type. */
+    public long getMinStartupTime(int startupType) {
+        long time = 0;
+        if (startupType < STARTUP_COUNT) {
+            time = mStartups[startupType].getMinTime();
+        }
+        return time;
+    }
+    
+    /* Returns the maximum time in milliseconds for a given startup type. */
+    public long getMaxStartupTime(int startupType) {
+        long time = 0;
+        if (startupType < STARTUP_COUNT) {
+            time = mStartups[startupType].getMaxTime();
+        }
+        return time;
     }
     
     /* Returns the average execution time, in milliseconds, for a given type. */
@@ -101,6 +384,53 @@ public class ProfileRecorder {
         return time;
     }
     
+    /* Returns true if a given type was ever stopped, even at 0ms. */
+    public boolean isProfileUsed(int profileType) {
+        return profileType < PROFILE_COUNT && mProfiles[profileType].isUsed();
+    }
+    
+    /* Returns the number of counter types the profiler keeps. */
+    public int getCounterCount() {
+        return COUNTER_COUNT;
+    }
+    
+    /* Returns a displayable name for a given counter type. */
+    public String getCounterName(int counterType) {
+        return counterType < COUNTER_COUNT ? COUNTER_NAMES[counterType] : null;
+    }
+    
+    /* Returns true if anything was ever counted for a given type. */
+    public boolean isCounterUsed(int counterType) {
+        return counterType < COUNTER_COUNT && mCounters[counterType].isUsed();
+    }
+    
+    /* Returns the average value per frame for a given counter type. */
+    public long getAverageCount(int counterType) {
+        long count = 0;
+        if (counterType < COUNTER_COUNT) {
+            count = mCounters[counterType].getAverage(mFrameCount);
+        }
+        return count;
+    }
+    
+    /* Returns the minimum value in a single frame for a given counter type. */
+    public long getMinCount(int counterType) {
+        long count = 0;
+        if (counterType < COUNTER_COUNT) {
+            count = mCounters[counterType].getMin();
+        }
+        return count;
+    }
+    
+    /* Returns the maximum value in a single frame for a given counter type. */
+    public long getMaxCount(int counterType) {
+        long count = 0;
+        if (counterType < COUNTER_COUNT) {
+            count = mCounters[counterType].getMax();
+        }
+        return count;
+    }
+    
     /** 
      * A simple class for storing timing information about a single profile
      * type.
@@ -110,12 +440,14 @@ public class ProfileRecorder {
         private long mTotalTime;
         private long mMinTime;
         private long mMaxTime;
+        private boolean mUsed;
         
         public void start(long time) {
             mStartTime = time;
         }
         
         public void stop(long time) {
+            mUsed = true;
             final long timeDelta = time - mStartTime;
             mTotalTime += timeDelta;
             if (mMinTime == 0 || timeDelta < mMinTime) {
@@ -139,6 +471,10 @@ public class ProfileRecorder {
             return mMaxTime;
         }
         
+        public boolean isUsed() {
+            return mUsed;
+        }
+        
         public void startNewProfilePeriod() {
             mTotalTime = 0;
         }
@@ -148,6 +484,63 @@ public class ProfileRecorder {
             mStartTime = 0;
             mMinTime = 0;
             mMaxTime = 0;
+            mUsed = false;
+        }
+    }
+    
+    /** 
+     * A simple class for storing a per-frame count, like a number of bytes, 
+     * for a single counter type.
+     */
+    protected class CounterRecord {
+        private long mFrameCount;
+        private long mTotalCount;
+        private long mMinCount;
+        private long mMaxCount;
+        private boolean mFirstFrame = true;
+        private boolean mUsed;
+        
+        public void add(int amount) {
+            mFrameCount += amount;
+            mUsed = true;
+        }
+        
+        public void endFrame() {
+            mTotalCount += mFrameCount;
+            if (mFirstFrame || mFrameCount < mMinCount) {
+                mMinCount = mFrameCount;
+            }
+            if (mFirstFrame || mFrameCount > mMaxCount) {
+                mMaxCount = mFrameCount;
+            }
+            mFirstFrame = false;
+            mFrameCount = 0;
+        }
+        
+        public long getAverage(int frameCount) {
+            long count = frameCount > 0 ? mTotalCount / frameCount : 0;
+            return count;
+        }
+        
+        public long getMin() {
+            return mMinCount;
+        }
+        
+        public long getMax() {
+            return mMaxCount;
+        }
+        
+        public boolean isUsed() {
+            return mUsed;
+        }
+        
+        public void reset() {
+            mFrameCount = 0;
+            mTotalCount = 0;
+            mMinCount = 0;
+            mMaxCount = 0;
+            mFirstFrame = true;
+            mUsed = false;
         }
     }
 }
@@ -54,9 +54,16 @@ public abstract class Renderable {
     protected int widthFP;
     protected int heightFP;
     
+    // Set when the position or size changes, so batched drawing that keeps
+    // sprites between frames knows which ones need to be written again.
+    private boolean dirty = true;
+    
 	public void setX(final float x) {
-		this.x = x;
-		xFP = fix(x);
+		if (this.x != x) {
+			this.x = x;
+			xFP = fix(x);
+			dirty = true;
+		}
 	}
 	
 	public float getX() {
@@ -64,8 +71,11 @@ public abstract class Renderable {
 	}
 	
 	public void setY(final float y) {
-		this.y = y;
-		yFP = fix(y);
+		if (this.y != y) {
+			this.y = y;
+			yFP = fix(y);
+			dirty = true;
+		}
 	}
 	
 	public float getY() {
@@ -73,8 +83,11 @@ public abstract class Renderable {
 	}
 	
 	public void setZ(final float z) {
-		this.z = z;
-		zFP = fix(z);
+		if (this.z != z) {
+			this.z = z;
+			zFP = fix(z);
+			dirty = true;
+		}
 	}
 	
 	public float getZ() {
@@ -82,8 +95,11 @@ public abstract class Renderable {
 	}
 
 	public void setWidth(final float width) {
-		this.width = width;
-		widthFP = fix(width);
+		if (this.width != width) {
+			this.width = width;
+			widthFP = fix(width);
+			dirty = true;
+		}
 	}
 
 	public float getWidth() {
@@ -91,11 +107,23 @@ public abstract class Renderable {
 	}
 
 	public void setHeight(final float height) {
-		this.height = height;
-		heightFP = fix(height);
+		if (this.height != height) {
+			this.height = height;
+			heightFP = fix(height);
+			dirty = true;
+		}
 	}
 
 	public float getHeight() {
 		return height;
 	}
+
+	/** Returns true if the position or size changed since the last clean. */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	public void clean() {
+		dirty = false;
+	}
 }
@@ -29,6 +29,7 @@ import android.widget.EditText;
 import android.widget.RadioGroup;
 
 import com.android.spritemethodtest.canvas.CanvasTestActivity;
+import com.android.spritemethodtest.opengl.CompressedTexture;
 import com.android.spritemethodtest.opengl.DrawMethod;
 import com.android.spritemethodtest.opengl.OpenGLTestActivity;
 
@@ -69,11 +70,58 @@ public class SpriteMethodTest extends Activity {
     protected void initializeIntent(Intent i) {
         final CheckBox checkBox = (CheckBox) findViewById(R.id.animateSprites);
         final boolean animate = checkBox.isChecked();
+        final CheckBox retainTexCoordsBox = 
+            (CheckBox) findViewById(R.id.retainTexCoords);
+        final boolean retainTexCoords = retainTexCoordsBox.isChecked();
+        final CheckBox retainSpritesBox = 
+            (CheckBox) findViewById(R.id.retainSprites);
+        final boolean retainSprites = retainSpritesBox.isChecked();
+        final CheckBox cacheGLStateBox = 
+            (CheckBox) findViewById(R.id.cacheGLState);
+        final boolean cacheGLState = cacheGLStateBox.isChecked();
+        final CheckBox parallelSpritesBox = 
+            (CheckBox) findViewById(R.id.parallelSprites);
+        final boolean parallelSprites = parallelSpritesBox.isChecked();
+        final CheckBox calibrateChunksBox = 
+            (CheckBox) findViewById(R.id.calibrateChunks);
+        final boolean calibrateChunks = calibrateChunksBox.isChecked();
+        final CheckBox spatialSortBox = 
+            (CheckBox) findViewById(R.id.spatialSort);
+        final boolean spatialSort = spatialSortBox.isChecked();
+        final CheckBox dynamicAtlasBox = 
+            (CheckBox) findViewById(R.id.dynamicAtlas);
+        final boolean dynamicAtlas = dynamicAtlasBox.isChecked();
+        final CheckBox asyncDecodeBox = 
+            (CheckBox) findViewById(R.id.asyncDecode);
+        final boolean asyncDecode = asyncDecodeBox.isChecked();
+        final CheckBox fileCacheBox = 
+            (CheckBox) findViewById(R.id.fileCache);
+        final boolean fileCache = fileCacheBox.isChecked();
+        final CheckBox etc1TexturesBox = 
+            (CheckBox) findViewById(R.id.etc1Textures);
+        final CheckBox paletteTexturesBox = 
+            (CheckBox) findViewById(R.id.paletteTextures);
+        // ETC1 takes priority, it is half the size.
+        final int compression = etc1TexturesBox.isChecked() 
+        	? CompressedTexture.COMPRESSION_ETC1 
+        	: paletteTexturesBox.isChecked() 
+        		? CompressedTexture.COMPRESSION_PALETTE8 
+        		: CompressedTexture.COMPRESSION_NONE;
         final EditText editText = (EditText) findViewById(R.id.spriteCount);
         final String spriteCountText = editText.getText().toString(); 
         final int stringCount = Integer.parseInt(spriteCountText);
         
         i.putExtra("animate", animate);
+        i.putExtra("retainTexCoords", retainTexCoords);
+        i.putExtra("retainSprites", retainSprites);
+        i.putExtra("cacheGLState", cacheGLState);
+        i.putExtra("parallelSprites", parallelSprites);
+        i.putExtra("calibrateChunks", calibrateChunks);
+        i.putExtra("spatialSort", spatialSort);
+        i.putExtra("dynamicAtlas", dynamicAtlas);
+        i.putExtra("asyncDecode", asyncDecode);
+        i.putExtra("fileCache", fileCache);
+        i.putExtra("compression", compression);
         i.putExtra("spriteCount", stringCount);
     }
     
@@ -111,10 +159,32 @@ public class SpriteMethodTest extends Activity {
 	       		for ( DrawMethod method : DrawMethod.values() ) {
 	       			findViewById(method.mRadioButtonID).setEnabled(false);
 	    		}
+	       		findViewById(R.id.retainTexCoords).setEnabled(false);
+	       		findViewById(R.id.retainSprites).setEnabled(false);
+	       		findViewById(R.id.cacheGLState).setEnabled(false);
+	       		findViewById(R.id.parallelSprites).setEnabled(false);
+	       		findViewById(R.id.calibrateChunks).setEnabled(false);
+	       		findViewById(R.id.spatialSort).setEnabled(false);
+	       		findViewById(R.id.dynamicAtlas).setEnabled(false);
+	       		findViewById(R.id.asyncDecode).setEnabled(false);
+	       		findViewById(R.id.fileCache).setEnabled(false);
+	       		findViewById(R.id.etc1Textures).setEnabled(false);
+	       		findViewById(R.id.paletteTextures).setEnabled(false);
            } else {
 	       		for ( DrawMethod method : DrawMethod.values() ) {
 	       			findViewById(method.mRadioButtonID).setEnabled(true);
 	    		}
+	       		findViewById(R.id.retainTexCoords).setEnabled(true);
+	       		findViewById(R.id.retainSprites).setEnabled(true);
+	       		findViewById(R.id.cacheGLState).setEnabled(true);
+	       		findViewById(R.id.parallelSprites).setEnabled(true);
+	       		findViewById(R.id.calibrateChunks).setEnabled(true);
+	       		findViewById(R.id.spatialSort).setEnabled(true);
+	       		findViewById(R.id.dynamicAtlas).setEnabled(true);
+	       		findViewById(R.id.asyncDecode).setEnabled(true);
+	       		findViewById(R.id.fileCache).setEnabled(true);
+	       		findViewById(R.id.etc1Textures).setEnabled(true);
+	       		findViewById(R.id.paletteTextures).setEnabled(true);
            }
         }
     };
@@ -183,12 +253,69 @@ public class SpriteMethodTest extends Activity {
                 + "\t\tMin: " + flipMin + "ms\t\tMax: " + flipMax + "\n"
                 + "Sim: " + simTime + "ms\n"
                 + "\t\tMin: " + simMin + "ms\t\tMax: " + simMax + "\n";
+            
+            // Batched tests write with one of these, run with and without 
+            // parallel sprites at each sprite count to compare them.
+            result += describeProfile(profiler, 
+                    ProfileRecorder.PROFILE_WRITE_SERIAL, "Serial Write");
+            result += describeProfile(profiler, 
+                    ProfileRecorder.PROFILE_WRITE_PARALLEL, "Parallel Write");
+            
+            // Includes the first start and every resume after, then how 
+            // long each part of starting up took.
+            for (int x = 0; x < profiler.getStartupTypeCount(); x++) {
+                if (profiler.getStartupCount(x) > 0) {
+                    result += profiler.getStartupName(x) + ": " 
+                        + profiler.getAverageStartupTime(x) + "ms ("
+                        + profiler.getStartupCount(x) + " starts)\n"
+                        + "\t\tMin: " + profiler.getMinStartupTime(x) 
+                        + "ms\t\tMax: " + profiler.getMaxStartupTime(x) 
+                        + "\n";
+                }
+            }
+            
+            for (int x = 0; x < profiler.getTextureCount(); x++) {
+                result += "Texture " + profiler.getTextureName(x) + ": " 
+                    + profiler.getTextureBytes(x) + " bytes "
+                    + profiler.getTextureFormat(x) + "\n"
+                    + "\t\tLoad: " + profiler.getTextureLoadTime(x) + "ms "
+                    + (profiler.isTextureCached(x) ? "warm" : "cold") + "\n";
+            }
+            if (profiler.getTextureCount() > 0) {
+                result += "Cold Texture Loads: " 
+                    + profiler.getTotalTextureLoadTime(false) + "ms ("
+                    + profiler.getTextureCount(false) + " textures)\n"
+                    + "Warm Texture Loads: " 
+                    + profiler.getTotalTextureLoadTime(true) + "ms ("
+                    + profiler.getTextureCount(true) + " textures)\n";
+            }
+            
+            // Counters are only listed if the test used them.
+            for (int x = 0; x < profiler.getCounterCount(); x++) {
+                if (profiler.isCounterUsed(x)) {
+                    result += profiler.getCounterName(x) + ": " 
+                        + profiler.getAverageCount(x) + " per frame\n"
+                        + "\t\tMin: " + profiler.getMinCount(x) 
+                        + "\t\tMax: " + profiler.getMaxCount(x) + "\n";
+                }
+            }
             CharSequence sequence = result.subSequence(0, result.length() -1);
             AlertDialog alertDialog = (AlertDialog)dialog;
             alertDialog.setMessage(sequence);
         }
     }
     
+    /** Returns the results lines for a profile type, if the test used it. */
+    private static String describeProfile(ProfileRecorder profiler, 
+            int profileType, String name) {
+        if (!profiler.isProfileUsed(profileType)) {
+            return "";
+        }
+        return name + ": " + profiler.getAverageTime(profileType) + "ms\n"
+            + "\t\tMin: " + profiler.getMinTime(profileType) 
+            + "ms\t\tMax: " + profiler.getMaxTime(profileType) + "\n";
+    }
+    
     /** Shows the results dialog when the test activity closes. */
     @Override
     protected void onActivityResult(int requestCode, int resultCode, 
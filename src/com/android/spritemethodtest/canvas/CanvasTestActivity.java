@@ -16,9 +16,6 @@
 
 package com.android.spritemethodtest.canvas;
 
-import java.io.IOException;
-import java.io.InputStream;
-
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
@@ -28,6 +25,7 @@ import android.os.Bundle;
 import android.util.DisplayMetrics;
 
 import com.android.spritemethodtest.Mover;
+import com.android.spritemethodtest.PixelFormatPolicy;
 import com.android.spritemethodtest.ProfileRecorder;
 import com.android.spritemethodtest.R;
 import com.android.spritemethodtest.Renderable;
@@ -40,7 +38,8 @@ import com.android.spritemethodtest.Renderable;
  */
 public class CanvasTestActivity extends Activity {
     private CanvasSurfaceView mCanvasSurfaceView;
-    // Describes the image format our bitmaps should be converted to.
+    // Decoding options, the format is picked per bitmap by the 
+    // PixelFormatPolicy.
     private static BitmapFactory.Options sBitmapOptions 
         = new BitmapFactory.Options();
     private Bitmap[] mBitmaps;
@@ -50,9 +49,6 @@ public class CanvasTestActivity extends Activity {
         super.onCreate(savedInstanceState);
         mCanvasSurfaceView = new CanvasSurfaceView(this);
         SimpleCanvasRenderer spriteRenderer = new SimpleCanvasRenderer();
-       
-        // Sets our preferred image format to 16-bit, 565 format.
-        sBitmapOptions.inPreferredConfig = Bitmap.Config.RGB_565;
 
         // Clear out any old profile results.
         ProfileRecorder.sSingleton.resetAll();
@@ -150,9 +146,9 @@ public class CanvasTestActivity extends Activity {
 
 
     /**
-     * Loads a bitmap from a resource and converts it to a bitmap.  This is
-     * a much-simplified version of the loadBitmap() that appears in
-     * SimpleGLRenderer.
+     * Loads a bitmap from a resource and converts it to a bitmap.  Opaque
+     * images are 16-bit, 565 format, others keep their alpha in 8888 
+     * format, since Canvas draws those without converting.
      * @param context  The application context.
      * @param resourceId  The id of the resource to load.
      * @return  A bitmap containing the image contents of the resource, or null
@@ -161,17 +157,8 @@ public class CanvasTestActivity extends Activity {
     protected Bitmap loadBitmap(Context context, int resourceId) {
         Bitmap bitmap = null;
         if (context != null) {
-          
-            InputStream is = context.getResources().openRawResource(resourceId);
-            try {
-                bitmap = BitmapFactory.decodeStream(is, null, sBitmapOptions);
-            } finally {
-                try {
-                    is.close();
-                } catch (IOException e) {
-                    // Ignore.
-                }
-            }
+            bitmap = PixelFormatPolicy.sSingleton.decode(
+                    context.getResources(), resourceId, sBitmapOptions);
         }
 
         return bitmap;
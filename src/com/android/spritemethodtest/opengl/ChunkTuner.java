@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import com.android.spritemethodtest.opengl.batched.Draw;
+
+/**
+ * Finds the fastest number of quads per draw call for the batched methods
+ * on this device. Each candidate chunk size is used for a number of frames
+ * and the average time between frames is recorded. When every candidate
+ * has been tried, the fastest is saved to be used by default from then on.
+ * <p>
+ * Results are only used on the build of the device they were measured on,
+ * since a different driver may prefer something else.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class ChunkTuner {
+
+	/**
+	 * Told about the results when calibration is done.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called on the rendering thread.
+		 *
+		 * @param chunkQuads int fastest chunk size, zero for no limit
+		 * @param results String comma separated chunk sizes and average
+		 * frame times, one per line, for export
+		 */
+		void onCalibrated(int chunkQuads, String results);
+	}
+
+	//Chunk sizes tried, in quads. Zero is one draw call for everything.
+	public static final int[] CANDIDATES = new int[] {
+		0, 16, 32, 64, 128, 256, 512, 1024, 2048,
+	};
+
+	//Frames ignored after switching, while caches and clocks settle.
+	private static final int WARMUP_FRAMES = 30;
+
+	private static final int MEASURED_FRAMES = 120;
+
+	private static final String PREFERENCES = "ChunkTuner";
+
+	private static final String KEY_CHUNK_QUADS = "chunkQuads";
+
+	private static final String KEY_FINGERPRINT = "fingerprint";
+
+	private static final String KEY_RESULTS = "results";
+
+	private final SharedPreferences mPreferences;
+
+	private final Listener mListener;
+
+	private final long[] mTotalNanos = new long[CANDIDATES.length];
+
+	private int mCandidate;
+
+	private int mFrame;
+
+	private long mLastFrameNanos;
+
+	private boolean mDone;
+
+	/**
+	 * Creates a ChunkTuner instance and starts with the first candidate.
+	 *
+	 * @param context Context to save the results in
+	 * @param listener Listener to tell when done, or null
+	 */
+	public ChunkTuner(final Context context, final Listener listener) {
+		mPreferences = context.getSharedPreferences(
+				PREFERENCES, Context.MODE_PRIVATE);
+		mListener = listener;
+		Draw.setChunkQuads(CANDIDATES[0]);
+	}
+
+	/**
+	 * @param context Context the results were saved in
+	 * @return int chunk size saved by the last calibration on this device,
+	 * or zero for no limit if there wasn't one
+	 */
+	public static int loadChunkQuads(final Context context) {
+		final SharedPreferences preferences = context.getSharedPreferences(
+				PREFERENCES, Context.MODE_PRIVATE);
+		if ( !Build.FINGERPRINT.equals(
+				preferences.getString(KEY_FINGERPRINT, null)) ) {
+			return 0;
+		}
+		return preferences.getInt(KEY_CHUNK_QUADS, 0);
+	}
+
+	/**
+	 * @param context Context the results were saved in
+	 * @return String results of the last calibration, in the format passed
+	 * to {@link Listener#onCalibrated(int, String)}, or null if there
+	 * wasn't one
+	 */
+	public static String loadResults(final Context context) {
+		return context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE)
+			.getString(KEY_RESULTS, null);
+	}
+
+	public boolean isDone() {
+		return mDone;
+	}
+
+	/**
+	 * Records the time since the last call and moves on to the next
+	 * candidate once enough frames have been measured. Call at the start
+	 * of every frame from the rendering thread.
+	 */
+	public void frame() {
+		if ( mDone ) {
+			return;
+		}
+
+		final long now = System.nanoTime();
+		if ( mFrame > WARMUP_FRAMES ) {
+			mTotalNanos[mCandidate] += now - mLastFrameNanos;
+		}
+		mLastFrameNanos = now;
+
+		if ( ++mFrame <= WARMUP_FRAMES + MEASURED_FRAMES ) {
+			return;
+		}
+		mFrame = 0;
+		if ( ++mCandidate < CANDIDATES.length ) {
+			Draw.setChunkQuads(CANDIDATES[mCandidate]);
+			return;
+		}
+
+		finish();
+	}
+
+	private void finish() {
+		mDone = true;
+
+		int best = 0;
+		final StringBuilder results = new StringBuilder();
+		results.append("# ").append(Build.MODEL).append(", ")
+			.append(Build.FINGERPRINT).append('\n');
+		results.append("chunkQuads,averageFrameMs\n");
+		for( int i = 0; i < CANDIDATES.length; i++ ) {
+			if ( mTotalNanos[i] < mTotalNanos[best] ) {
+				best = i;
+			}
+			results.append(CANDIDATES[i]).append(',')
+				.append(mTotalNanos[i] / (MEASURED_FRAMES * 1000000f))
+				.append('\n');
+		}
+
+		final int chunkQuads = CANDIDATES[best];
+		Draw.setChunkQuads(chunkQuads);
+		final String exported = results.toString();
+		mPreferences.edit()
+			.putInt(KEY_CHUNK_QUADS, chunkQuads)
+			.putString(KEY_FINGERPRINT, Build.FINGERPRINT)
+			.putString(KEY_RESULTS, exported)
+			.commit();
+
+		if ( null != mListener ) {
+			mListener.onCalibrated(chunkQuads, exported);
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.content.res.Resources;
+
+/**
+ * Image data pre-encoded by tools/TextureCompressor, ready to hand to
+ * glCompressedTexImage2D without decoding anything. The encoded versions
+ * of an image are raw resources named after it with a suffix, so R.drawable
+ * .background is found as R.raw.background_etc1 and so on.
+ * <p>
+ * ETC1 has no alpha. Images that aren't opaque have a second ETC1 image
+ * with the alpha as gray, which only a shader can combine with the color.
+ * The paletted version keeps alpha, so the fixed function pipeline uses it
+ * for those images instead.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class CompressedTexture {
+
+	public static final int COMPRESSION_NONE = 0;
+
+	public static final int COMPRESSION_ETC1 = 1;
+
+	public static final int COMPRESSION_PALETTE8 = 2;
+
+	public static final int GL_ETC1_RGB8_OES = 0x8D64;
+
+	public static final String SUFFIX_ETC1 = "_etc1";
+
+	public static final String SUFFIX_ALPHA_ETC1 = "_alpha_etc1";
+
+	public static final String SUFFIX_PALETTE8 = "_pal8";
+
+	private static final String EXTENSION_ETC1 =
+		"GL_OES_compressed_ETC1_RGB8_texture";
+
+	private static final String EXTENSION_PALETTE =
+		"GL_OES_compressed_paletted_texture";
+
+	//Both formats have a 16 byte header.
+	private static final int HEADER_BYTES = 16;
+
+	private static final int ETC1_BLOCK_BYTES = 8;
+
+	//Entry name of the raw resource it was read from.
+	public final String name;
+
+	public final int internalFormat;
+
+	public final int width;
+
+	public final int height;
+
+	public final ByteBuffer data;
+
+	private CompressedTexture(final String name, final int internalFormat,
+			final int width, final int height, final ByteBuffer data) {
+		this.name = name;
+		this.internalFormat = internalFormat;
+		this.width = width;
+		this.height = height;
+		this.data = data;
+	}
+
+	/**
+	 * @param resources Resources the image is in
+	 * @param resourceId int ID of the original image
+	 * @param suffix String one of the SUFFIX_ constants
+	 * @return int raw resource ID of the encoded version, or 0 if there
+	 * isn't one
+	 */
+	public static int findResource(final Resources resources,
+			final int resourceId, final String suffix) {
+		return resources.getIdentifier(
+				resources.getResourceEntryName(resourceId) + suffix, "raw",
+				resources.getResourcePackageName(resourceId));
+	}
+
+	/**
+	 * @param extensions String from glGetString(GL_EXTENSIONS)
+	 * @param internalFormat int format to check
+	 * @param palettesInCore boolean true for OpenGL ES 1.x, where
+	 * paletted textures are always supported, false for 2.0
+	 * @return boolean true if textures of the format can be loaded
+	 */
+	public static boolean isSupported(final String extensions,
+			final int internalFormat, final boolean palettesInCore) {
+		if ( GL_ETC1_RGB8_OES == internalFormat ) {
+			return null != extensions && extensions.contains(EXTENSION_ETC1);
+		}
+		return palettesInCore || (null != extensions
+			&& extensions.contains(EXTENSION_PALETTE));
+	}
+
+	/**
+	 * Reads an encoded image, either an ETC1 PKM file or a paletted file.
+	 *
+	 * @param resources Resources the image is in
+	 * @param rawResourceId int ID from {@link #findResource}
+	 * @return CompressedTexture the image data in a direct buffer
+	 */
+	public static CompressedTexture load(final Resources resources,
+			final int rawResourceId) throws IOException {
+		final InputStream is = resources.openRawResource(rawResourceId);
+		try {
+			final DataInputStream in = new DataInputStream(is);
+			final byte[] header = new byte[HEADER_BYTES];
+			in.readFully(header);
+
+			final int internalFormat;
+			final int width;
+			final int height;
+			final int bytes;
+			if ( 'P' == header[0] && 'K' == header[1] && 'M' == header[2] ) {
+				//Big endian shorts, the size padded to whole blocks, then
+				//the size of the image.
+				internalFormat = GL_ETC1_RGB8_OES;
+				final int encodedWidth = readShort(header, 8);
+				final int encodedHeight = readShort(header, 10);
+				width = readShort(header, 12);
+				height = readShort(header, 14);
+				bytes = (encodedWidth / 4) * (encodedHeight / 4)
+					* ETC1_BLOCK_BYTES;
+			} else if ( 'P' == header[0] && 'A' == header[1]
+					&& 'L' == header[2] && '8' == header[3] ) {
+				internalFormat = readInt(header, 4);
+				width = readInt(header, 8);
+				height = readInt(header, 12);
+				bytes = getPaletteBytes(internalFormat) + width * height;
+			} else {
+				throw new IOException("Unknown texture format: "
+						+ resources.getResourceEntryName(rawResourceId));
+			}
+
+			final byte[] encoded = new byte[bytes];
+			in.readFully(encoded);
+			final ByteBuffer data = ByteBuffer.allocateDirect(bytes);
+			data.put(encoded);
+			data.position(0);
+			return new CompressedTexture(
+					resources.getResourceEntryName(rawResourceId),
+					internalFormat, width, height, data);
+		} finally {
+			is.close();
+		}
+	}
+
+	private static int readShort(final byte[] bytes, final int offset) {
+		return (bytes[offset] & 0xff) << 8 | (bytes[offset + 1] & 0xff);
+	}
+
+	private static int readInt(final byte[] bytes, final int offset) {
+		return readShort(bytes, offset) << 16 | readShort(bytes, offset + 2);
+	}
+
+	//256 entries of the format's color type.
+	private static int getPaletteBytes(final int internalFormat) {
+		switch ( internalFormat ) {
+			case GL10.GL_PALETTE8_RGBA8_OES:
+				return 256 * 4;
+			case GL10.GL_PALETTE8_RGB8_OES:
+				return 256 * 3;
+			default:
+				return 256 * 2;
+		}
+	}
+
+	/**
+	 * @return String short name of the format for the results
+	 */
+	public String getFormatName() {
+		return GL_ETC1_RGB8_OES == internalFormat ? "ETC1" : "PALETTE8";
+	}
+}
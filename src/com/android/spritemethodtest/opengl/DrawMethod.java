@@ -29,8 +29,21 @@ public enum DrawMethod {
 	 BASIC_VERT(R.id.settingVerts),
 	 BATCHED_VERT_FLOAT(R.id.settingBatchedVertsFloat),
 	 BATCHED_VERT_FIXED(R.id.settingBatchedVertsFixed),
+	 BATCHED_VBO_ORPHAN_FLOAT(R.id.settingBatchedVboOrphanFloat),
+	 BATCHED_VBO_ORPHAN_FIXED(R.id.settingBatchedVboOrphanFixed),
+	 BATCHED_VBO_SUB_DATA_FLOAT(R.id.settingBatchedVboSubDataFloat),
+	 BATCHED_VBO_SUB_DATA_FIXED(R.id.settingBatchedVboSubDataFixed),
+	 BATCHED_STRIP_FLOAT(R.id.settingBatchedStripFloat),
+	 BATCHED_STRIP_FIXED(R.id.settingBatchedStripFixed),
+	 BATCHED_ARRAYS_FLOAT(R.id.settingBatchedArraysFloat),
+	 BATCHED_ARRAYS_FIXED(R.id.settingBatchedArraysFixed),
+	 SORTED_BATCH(R.id.settingSortedBatch),
 	 DRAW_TEXTURE_FLOAT(R.id.settingDrawTextureFloat),
 	 DRAW_TEXTURE_FIXED(R.id.settingDrawTextureFixed),
+	 MATRIX_PALETTE(R.id.settingMatrixPalette),
+	 SHADER_ES2(R.id.settingShaderEs2),
+	 POINT_SPRITE_FLOAT(R.id.settingPointSpriteFloat),
+	 POINT_SPRITE_FIXED(R.id.settingPointSpriteFixed),
 	 VBO(R.id.settingVBO);
 	
 	public final int mRadioButtonID;
@@ -39,6 +52,37 @@ public enum DrawMethod {
 		mRadioButtonID = radioButtonID;
 	}
 	
+	/**
+	 * @return true if this method collects many sprites into shared buffers 
+	 * and draws them with a few draw calls
+	 */
+	public boolean isBatched() {
+		switch ( this ) {
+			case BATCHED_VERT_FLOAT:
+			case BATCHED_VERT_FIXED:
+			case BATCHED_VBO_ORPHAN_FLOAT:
+			case BATCHED_VBO_ORPHAN_FIXED:
+			case BATCHED_VBO_SUB_DATA_FLOAT:
+			case BATCHED_VBO_SUB_DATA_FIXED:
+			case BATCHED_STRIP_FLOAT:
+			case BATCHED_STRIP_FIXED:
+			case BATCHED_ARRAYS_FLOAT:
+			case BATCHED_ARRAYS_FIXED:
+				return true;
+			default:
+				return false;
+		}
+	}
+	
+	/**
+	 * @return true if this method writes every sprite's vertexes each 
+	 * frame, so the order sprites are drawn in decides where their quads 
+	 * end up in the batch
+	 */
+	public boolean supportsSpatialSort() {
+		return isBatched() || SORTED_BATCH == this;
+	}
+	
 	public static DrawMethod forRadio(final int selectedRadioButtonID) {
 		for ( DrawMethod method : values() ) {
 			if ( method.mRadioButtonID == selectedRadioButtonID ) {
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl;
+
+import java.util.ArrayList;
+
+/**
+ * Keeps track of which OpenGL context the textures and buffer objects of a
+ * renderer were created in. Every context started is a new generation.
+ * Resources only have to be created again when the generation changes,
+ * after the old context was lost, not every time the surface changes size,
+ * as when rotating.
+ * <p>
+ * Registered resources are told to forget their object names when a new
+ * context starts, since the old ones went away with the old context and
+ * must not be deleted or used.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class GLResources {
+
+	/**
+	 * Something holding the names of OpenGL objects.
+	 */
+	public interface Resource {
+
+		/**
+		 * Forgets object names from a context that was lost, without
+		 * deleting them, so they are created again when next needed.
+		 */
+		void invalidate();
+	}
+
+	private final ArrayList<Resource> mResources = new ArrayList<Resource>();
+
+	private int mGeneration;
+
+	//Generation the resources were last created in, -1 for none.
+	private int mCreatedGeneration = -1;
+
+	public void register(final Resource resource) {
+		mResources.add(resource);
+	}
+
+	/**
+	 * Starts a new generation and invalidates every registered resource.
+	 * Call from the rendering thread whenever a new context is started.
+	 */
+	public void contextStarted() {
+		mGeneration++;
+		for( int i = 0; i < mResources.size(); i++ ) {
+			mResources.get(i).invalidate();
+		}
+	}
+
+	/**
+	 * @return boolean true if the resources were created in the current
+	 * context and don't need creating again
+	 */
+	public boolean isCreated() {
+		return mCreatedGeneration == mGeneration;
+	}
+
+	/**
+	 * Marks the resources created in the current context.
+	 */
+	public void setCreated() {
+		mCreatedGeneration = mGeneration;
+	}
+
+	/**
+	 * Marks the resources released, so they are created again even if the
+	 * context stays the same.
+	 */
+	public void setReleased() {
+		mCreatedGeneration = -1;
+	}
+
+	/**
+	 * @return int number of contexts started so far
+	 */
+	public int getGeneration() {
+		return mGeneration;
+	}
+}
@@ -15,14 +15,21 @@
  */
 
 package com.android.spritemethodtest.opengl;
+import static com.android.spritemethodtest.opengl.batched.FixedPointUtil.*;
 import static javax.microedition.khronos.opengles.GL10.*;
 import javax.microedition.khronos.opengles.GL10;
 import javax.microedition.khronos.opengles.GL11Ext;
 
+import com.android.spritemethodtest.ProfileRecorder;
 import com.android.spritemethodtest.Renderable;
 import com.android.spritemethodtest.opengl.batched.DrawData;
+import com.android.spritemethodtest.opengl.batched.DynamicAtlas;
 import com.android.spritemethodtest.opengl.batched.FloatDrawData;
+import com.android.spritemethodtest.opengl.batched.PaletteSprites;
+import com.android.spritemethodtest.opengl.batched.PointSprites;
+import com.android.spritemethodtest.opengl.batched.SpriteBatcher;
 import com.android.spritemethodtest.opengl.batched.TextureAtlas;
+import com.android.spritemethodtest.opengl.shader.SpriteRecords;
 
 
 /**
@@ -47,8 +54,45 @@ public class GLSprite extends Renderable {
     private DrawData mDrawData;
     private int[] mFixedAtlasCoords;
     private float[] mFloatAtlasCoords;
+    // Set when the atlas coordinates come from a runtime atlas instead.
+    private DynamicAtlas.Region mAtlasRegion;
     private DrawMethod mDrawMethod;
 	private FloatDrawData mFloatDrawData;
+	// If the batched data keeps sprites in slots, which one this sprite owns.
+	private int mDrawSlot = -1;
+	// If drawing point sprites, the batch for this sprite's texture.
+	private PointSprites mPointSprites;
+	
+	private PaletteSprites mPaletteSprites;
+	// If drawing with OpenGL ES 2.0 shaders, the records for this sprite's
+	// layer.
+	private SpriteRecords mSpriteRecords;
+	// If drawing with the sorted batcher, the batcher and this sprite's 
+	// state in it.
+	private SpriteBatcher mSpriteBatcher;
+	private int mBatchLayer;
+	private int mBatchBlend;
+	private int mBatchPage;
+	// Size of the view, for culling sprites outside it.
+	private int mViewWidth;
+	private int mViewHeight;
+	// If set, the part of this sprite outside the view isn't drawn when 
+	// drawing with quads.
+	private boolean mClipToView;
+	// The clipped quad and what it was clipped from, so it is only 
+	// recalculated when the sprite or view changes.
+	private float mClipX;
+	private float mClipY;
+	private float mClipWidth;
+	private float mClipHeight;
+	private float[] mClipFloatCoords;
+	private int[] mClipFixedCoords;
+	private float mClippedX = Float.NaN;
+	private float mClippedY;
+	private float mClippedWidth;
+	private float mClippedHeight;
+	private int mClippedViewWidth;
+	private int mClippedViewHeight;
     
     public GLSprite(int resourceId, DrawMethod drawMethod) {
         mDrawMethod = drawMethod;
@@ -57,6 +101,22 @@ public class GLSprite extends Renderable {
         mFloatAtlasCoords = TextureAtlas.getFloatCoords(resourceId);
     }
     
+    /**
+     * Draws from a region of a runtime atlas instead of the packed atlas. 
+     * The region is marked drawn each time this sprite is.
+     */
+    public DynamicAtlas.Region getAtlasRegion() {
+        return mAtlasRegion;
+    }
+    
+    public void setAtlasRegion(DynamicAtlas.Region region) {
+        mAtlasRegion = region;
+        mFloatAtlasCoords = region.floatCoords;
+        mFixedAtlasCoords = region.fixedCoords;
+        // Any clipped coordinates were made from the old ones.
+        mClippedX = Float.NaN;
+    }
+    
     public void setTextureName(int name) {
         mTextureName = name;
     }
@@ -86,30 +146,106 @@ public class GLSprite extends Renderable {
 		mFloatDrawData = floatDrawData;
     }
     
+    public void setDrawSlot(int slot) {
+    	mDrawSlot = slot;
+    }
+    
+    public void setPointSprites(PointSprites pointSprites) {
+    	mPointSprites = pointSprites;
+    }
+    
+    public void setPaletteSprites(PaletteSprites paletteSprites) {
+    	mPaletteSprites = paletteSprites;
+    }
+    
+    public void setSpriteRecords(SpriteRecords spriteRecords) {
+    	mSpriteRecords = spriteRecords;
+    }
+    
+    public void setSpriteBatcher(SpriteBatcher batcher, int layer, int blend, 
+    		int page) {
+    	mSpriteBatcher = batcher;
+    	mBatchLayer = layer;
+    	mBatchBlend = blend;
+    	mBatchPage = page;
+    }
+    
+    public void setViewSize(int width, int height) {
+    	mViewWidth = width;
+    	mViewHeight = height;
+    }
+    
+    /**
+     * Draws only the part of this sprite inside the view, by shrinking its 
+     * quad and adjusting the texture coordinates to match. This saves fill 
+     * for large sprites like the background. Only works for the methods 
+     * that submit quads every frame, and not for sprites in draw slots.
+     */
+    public void setClipToView(boolean clip) {
+    	mClipToView = clip;
+    }
+    
+    /**
+     * @return true if this sprite is entirely outside the view and can be 
+     * skipped. Sprites in draw slots are never skipped, their quads stay in 
+     * the batch until written again.
+     */
+    public boolean isOutsideView() {
+    	if ( mDrawSlot >= 0 || 0 == mViewWidth ) {
+    		return false;
+    	}
+    	return x >= mViewWidth || y >= mViewHeight 
+    		|| x + width <= 0 || y + height <= 0;
+    }
+    
     public void draw(GL10 gl) {
     	
+    	if ( null != mAtlasRegion ) {
+    		mAtlasRegion.touch();
+    	}
+    	
+    	if ( mClipToView && clip() ) {
+    		drawClipped();
+    		return;
+    	}
+    	
         switch ( mDrawMethod ) {
 	    	case BASIC_VERT:
 	    	case VBO:
-	            // Draw using verts or VBO verts.
-	            gl.glBindTexture(GL_TEXTURE_2D, mTextureName);
-	            gl.glPushMatrix();
-	            gl.glLoadIdentity();
-	            gl.glTranslatef(x, y, z);
-	            
-	            mGrid.draw(gl, true, false);
-	            
-	            gl.glPopMatrix();
+	            drawGrid(gl);
 	            break;
 	            
 	    	case BATCHED_VERT_FLOAT:
+	    	case BATCHED_VBO_ORPHAN_FLOAT:
+	    	case BATCHED_VBO_SUB_DATA_FLOAT:
+	    	case BATCHED_STRIP_FLOAT:
+	    	case BATCHED_ARRAYS_FLOAT:
 	    		//Set the data to draw using batched verts.
-	    		mFloatDrawData.quad(x, y, width, height, z, mFloatAtlasCoords);
+	    		if ( mDrawSlot < 0 ) {
+	    			mFloatDrawData.quad(x, y, width, height, z, mFloatAtlasCoords);
+	    		} else if ( isDirty() ) {
+	    			//Only sprites that changed need their slot written again.
+	    			mFloatDrawData.quad(mDrawSlot, 
+	    					x, y, width, height, z, mFloatAtlasCoords);
+	    			clean();
+	    		}
 	        	break;
 	        	
 	    	case BATCHED_VERT_FIXED:
+	    	case BATCHED_VBO_ORPHAN_FIXED:
+	    	case BATCHED_VBO_SUB_DATA_FIXED:
+	    	case BATCHED_STRIP_FIXED:
+	    	case BATCHED_ARRAYS_FIXED:
 	    		//Set the data to draw using batched verts.
-	    		mDrawData.quad(xFP, yFP, widthFP, heightFP, zFP, mFixedAtlasCoords);
+	    		if ( mDrawSlot < 0 ) {
+	    			mDrawData.quad(
+	    					xFP, yFP, widthFP, heightFP, zFP, mFixedAtlasCoords);
+	    		} else if ( isDirty() ) {
+	    			//Only sprites that changed need their slot written again.
+	    			mDrawData.quad(mDrawSlot, 
+	    					xFP, yFP, widthFP, heightFP, zFP, mFixedAtlasCoords);
+	    			clean();
+	    		}
 	        	break;
 	        	
 	    	case DRAW_TEXTURE_FLOAT:
@@ -123,6 +259,209 @@ public class GLSprite extends Renderable {
 	            gl.glBindTexture(GL_TEXTURE_2D, mTextureName);
 	            ((GL11Ext) gl).glDrawTexxOES(xFP, yFP, zFP, widthFP, heightFP);    	
 	            break;        	
+	            
+	    	case SORTED_BATCH:
+	    		// Each sprite's texture is its own page in the batcher.
+	    		mSpriteBatcher.sprite(mBatchLayer, mBatchBlend, mBatchPage, 
+	    				x, y, width, height, z, SpriteBatcher.WHOLE_PAGE);
+	    		break;
+	    		
+	    	case SHADER_ES2:
+	    		// The shader expands this into a quad.
+	    		mSpriteRecords.sprite(x, y, width, height, mFloatAtlasCoords);
+	    		break;
+	    		
+	    	case MATRIX_PALETTE:
+	    		// The background, or everything if matrix palettes aren't 
+	    		// supported, is drawn using verts instead.
+	    		if ( null == mPaletteSprites ) {
+	    			drawGrid(gl);
+	    		} else {
+	    			mPaletteSprites.sprite(x, y, z);
+	    		}
+	    		break;
+	    		
+	    	case POINT_SPRITE_FLOAT:
+	    		// The background, or everything if point sprites aren't 
+	    		// supported, is drawn using verts instead.
+	    		if ( null == mPointSprites ) {
+	    			drawGrid(gl);
+	    		} else {
+	    			mPointSprites.point(x + width / 2, y + height / 2, z);
+	    		}
+	    		break;
+	    		
+	    	case POINT_SPRITE_FIXED:
+	    		if ( null == mPointSprites ) {
+	    			drawGrid(gl);
+	    		} else {
+	    			mPointSprites.point(
+	    					xFP + (widthFP >> 1), yFP + (heightFP >> 1), zFP);
+	    		}
+	    		break;
 		}
     }
+    
+    /**
+     * Works out the part of this sprite inside the view, if it is only 
+     * partly inside.
+     * 
+     * @return true if the clipped quad should be drawn instead
+     */
+    private boolean clip() {
+    	switch ( mDrawMethod ) {
+    		case BATCHED_VERT_FLOAT:
+    		case BATCHED_VBO_ORPHAN_FLOAT:
+    		case BATCHED_VBO_SUB_DATA_FLOAT:
+    		case BATCHED_STRIP_FLOAT:
+    		case BATCHED_ARRAYS_FLOAT:
+    		case BATCHED_VERT_FIXED:
+    		case BATCHED_VBO_ORPHAN_FIXED:
+    		case BATCHED_VBO_SUB_DATA_FIXED:
+    		case BATCHED_STRIP_FIXED:
+    		case BATCHED_ARRAYS_FIXED:
+    		case SORTED_BATCH:
+    		case SHADER_ES2:
+    			break;
+    		default:
+    			return false;
+    	}
+    	if ( mDrawSlot >= 0 || 0 == mViewWidth ) {
+    		return false;
+    	}
+    	
+    	final float right = x + width;
+    	final float bottom = y + height;
+    	if ( x >= 0 && y >= 0 && right <= mViewWidth && bottom <= mViewHeight ) {
+    		return false;
+    	}
+    	
+    	if ( x == mClippedX && y == mClippedY && width == mClippedWidth 
+    			&& height == mClippedHeight && mViewWidth == mClippedViewWidth 
+    			&& mViewHeight == mClippedViewHeight ) {
+    		return true;
+    	}
+    	
+    	mClipX = Math.max(x, 0);
+    	mClipY = Math.max(y, 0);
+    	mClipWidth = Math.min(right, mViewWidth) - mClipX;
+    	mClipHeight = Math.min(bottom, mViewHeight) - mClipY;
+    	
+    	// The corners are left top, left bottom, right top, right bottom.
+    	final float[] source = DrawMethod.SORTED_BATCH == mDrawMethod 
+    		? SpriteBatcher.WHOLE_PAGE : mFloatAtlasCoords;
+    	final float leftU = source[0];
+    	final float rightU = source[4];
+    	final float topV = source[1];
+    	final float bottomV = source[3];
+    	final float clipLeftU = 
+    		leftU + (rightU - leftU) * (mClipX - x) / width;
+    	final float clipRightU = 
+    		leftU + (rightU - leftU) * (mClipX + mClipWidth - x) / width;
+    	final float clipTopV = 
+    		topV + (bottomV - topV) * (mClipY - y) / height;
+    	final float clipBottomV = 
+    		topV + (bottomV - topV) * (mClipY + mClipHeight - y) / height;
+    	
+    	// New arrays, since batched data only copies texture coordinates 
+    	// when it is handed a different array.
+    	mClipFloatCoords = new float[] {
+    			clipLeftU, clipTopV,
+    			clipLeftU, clipBottomV,
+    			clipRightU, clipTopV,
+    			clipRightU, clipBottomV,
+    	};
+    	mClipFixedCoords = new int[mClipFloatCoords.length];
+    	for (int i = 0; i < mClipFloatCoords.length; i++) {
+    		mClipFixedCoords[i] = fix(mClipFloatCoords[i]);
+    	}
+    	
+    	mClippedX = x;
+    	mClippedY = y;
+    	mClippedWidth = width;
+    	mClippedHeight = height;
+    	mClippedViewWidth = mViewWidth;
+    	mClippedViewHeight = mViewHeight;
+    	return true;
+    }
+    
+    private void drawClipped() {
+    	ProfileRecorder.sSingleton.count(
+    			ProfileRecorder.COUNTER_CLIPPED_SPRITES, 1);
+    	
+        switch ( mDrawMethod ) {
+	    	case BATCHED_VERT_FLOAT:
+	    	case BATCHED_VBO_ORPHAN_FLOAT:
+	    	case BATCHED_VBO_SUB_DATA_FLOAT:
+	    	case BATCHED_STRIP_FLOAT:
+	    	case BATCHED_ARRAYS_FLOAT:
+	    		mFloatDrawData.quad(mClipX, mClipY, mClipWidth, mClipHeight, 
+	    				z, mClipFloatCoords);
+	        	break;
+	        	
+	    	case BATCHED_VERT_FIXED:
+	    	case BATCHED_VBO_ORPHAN_FIXED:
+	    	case BATCHED_VBO_SUB_DATA_FIXED:
+	    	case BATCHED_STRIP_FIXED:
+	    	case BATCHED_ARRAYS_FIXED:
+	    		mDrawData.quad(fix(mClipX), fix(mClipY), fix(mClipWidth), 
+	    				fix(mClipHeight), zFP, mClipFixedCoords);
+	        	break;
+	        	
+	    	case SORTED_BATCH:
+	    		mSpriteBatcher.sprite(mBatchLayer, mBatchBlend, mBatchPage, 
+	    				mClipX, mClipY, mClipWidth, mClipHeight, z, 
+	    				mClipFloatCoords);
+	    		break;
+	    		
+	    	case SHADER_ES2:
+	    		mSpriteRecords.sprite(
+	    				mClipX, mClipY, mClipWidth, mClipHeight, mClipFloatCoords);
+	    		break;
+        }
+    }
+    
+    /**
+     * Sets this sprite's quad in batched data prepared by 
+     * {@link ParallelSpriteWriter}. Safe to call from several threads at 
+     * once for different quads.
+     * 
+     * @param quad int quad to set
+     * @return true if the texture coordinates changed
+     */
+    public boolean putBatchedQuad(int quad) {
+        if ( null != mAtlasRegion ) {
+            mAtlasRegion.touch();
+        }
+        switch ( mDrawMethod ) {
+	    	case BATCHED_VERT_FLOAT:
+	    	case BATCHED_VBO_ORPHAN_FLOAT:
+	    	case BATCHED_VBO_SUB_DATA_FLOAT:
+	    	case BATCHED_STRIP_FLOAT:
+	    	case BATCHED_ARRAYS_FLOAT:
+	    		return mFloatDrawData.putQuad(
+	    				quad, x, y, width, height, z, mFloatAtlasCoords);
+	        	
+	    	case BATCHED_VERT_FIXED:
+	    	case BATCHED_VBO_ORPHAN_FIXED:
+	    	case BATCHED_VBO_SUB_DATA_FIXED:
+	    	case BATCHED_STRIP_FIXED:
+	    	case BATCHED_ARRAYS_FIXED:
+	    		return mDrawData.putQuad(quad, 
+	    				xFP, yFP, widthFP, heightFP, zFP, mFixedAtlasCoords);
+        }
+        return false;
+    }
+    
+    private void drawGrid(GL10 gl) {
+        // Draw using verts or VBO verts.
+        gl.glBindTexture(GL_TEXTURE_2D, mTextureName);
+        gl.glPushMatrix();
+        gl.glLoadIdentity();
+        gl.glTranslatef(x, y, z);
+        
+        mGrid.draw(gl, true, false);
+        
+        gl.glPopMatrix();
+    }
 }
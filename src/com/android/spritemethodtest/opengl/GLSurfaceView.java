@@ -30,6 +30,7 @@ import javax.microedition.khronos.opengles.GL;
 import javax.microedition.khronos.opengles.GL10;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
@@ -72,6 +73,15 @@ public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback
         mGLWrapper = glWrapper;
     }
 
+    /**
+     * Picks the OpenGL ES version of the context to create, such as 2 for
+     * OpenGL ES 2.0. Must be called before {@link #setRenderer(Renderer)}.
+     * The renderer's config spec should ask for a matching renderable type.
+     */
+    public void setEGLContextClientVersion(int version) {
+        mEGLContextClientVersion = version;
+    }
+
     public void setRenderer(Renderer renderer) {
         mGLThread = new GLThread(renderer);
         mGLThread.start();
@@ -217,8 +227,13 @@ public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback
             * Create an OpenGL ES context. This must be done only once, an
             * OpenGL context is a somewhat heavy object.
             */
+            int[] contextAttribs = null;
+            if (mEGLContextClientVersion != 0) {
+                contextAttribs = new int[] { EGL_CONTEXT_CLIENT_VERSION,
+                        mEGLContextClientVersion, EGL10.EGL_NONE };
+            }
             mEglContext = mEgl.eglCreateContext(mEglDisplay, mEglConfig,
-                    EGL10.EGL_NO_CONTEXT, null);
+                    EGL10.EGL_NO_CONTEXT, contextAttribs);
 
             mEglSurface = null;
         }
@@ -351,11 +366,16 @@ public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback
              * and grab the first configuration that matches is
              */
             int[] configSpec = mRenderer.getConfigSpec();
+            ProfileRecorder.sSingleton.startContext();
+            // Runs until the window surface is created.
+            long eglStart = SystemClock.uptimeMillis();
             mEglHelper.start(configSpec);
 
             GL10 gl = null;
             boolean tellRendererSurfaceCreated = true;
             boolean tellRendererSurfaceChanged = true;
+            boolean recordFirstFrame = true;
+            boolean contextLost = false;
 
             /*
              * This is our main activity thread's loop, we go until
@@ -392,14 +412,23 @@ public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback
                     h = mHeight;
                     mSizeChanged = false;
                 }
-                if (needStart) {
+                if (needStart || contextLost) {
+                    ProfileRecorder.sSingleton.startContext();
+                    eglStart = SystemClock.uptimeMillis();
                     mEglHelper.start(configSpec);
                     tellRendererSurfaceCreated = true;
+                    recordFirstFrame = true;
+                    contextLost = false;
                     changed = true;
                 }
                 if (changed) {
                     gl = (GL10) mEglHelper.createSurface(mHolder);
                     tellRendererSurfaceChanged = true;
+                    if (0 != eglStart) {
+                        ProfileRecorder.sSingleton.recordStartup(
+                                ProfileRecorder.STARTUP_EGL_INIT, eglStart);
+                        eglStart = 0;
+                    }
                 }
                 if (tellRendererSurfaceCreated) {
                     mRenderer.surfaceCreated(gl);
@@ -410,6 +439,8 @@ public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback
                     tellRendererSurfaceChanged = false;
                 }
                 if ((w > 0) && (h > 0)) {
+                    final long firstFrameStart = 
+                        recordFirstFrame ? SystemClock.uptimeMillis() : 0;
                     ProfileRecorder.sSingleton.start(ProfileRecorder.PROFILE_DRAW);
                     /* draw a frame here */
                     mRenderer.drawFrame(gl);
@@ -420,8 +451,24 @@ public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback
                      * to instruct the system to display the rendered frame
                      */
                     ProfileRecorder.sSingleton.start(ProfileRecorder.PROFILE_PAGE_FLIP);
-                    mEglHelper.swap();
+                    if (!mEglHelper.swap()) {
+                        /*
+                         * Everything in the context is gone. Start a new
+                         * one and have the renderer load it again.
+                         */
+                        mEglHelper.finish();
+                        contextLost = true;
+                    }
                     ProfileRecorder.sSingleton.stop(ProfileRecorder.PROFILE_PAGE_FLIP);
+                    
+                    if (recordFirstFrame) {
+                        ProfileRecorder.sSingleton.recordStartup(
+                                ProfileRecorder.STARTUP_FIRST_FRAME);
+                        ProfileRecorder.sSingleton.recordStartup(
+                                ProfileRecorder.STARTUP_FIRST_DRAW, 
+                                firstFrameStart);
+                        recordFirstFrame = false;
+                    }
                 }
                 ProfileRecorder.sSingleton.stop(ProfileRecorder.PROFILE_FRAME);
                 ProfileRecorder.sSingleton.endFrame();
@@ -536,4 +583,8 @@ public class GLSurfaceView extends SurfaceView implements SurfaceHolder.Callback
     private SurfaceHolder mHolder;
     private GLThread mGLThread;
     private GLWrapper mGLWrapper;
+    // Context version to request, 0 for the default OpenGL ES 1.x.
+    private int mEGLContextClientVersion;
+    // Not defined by EGL10, only by EGL 1.3 and later.
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
 }
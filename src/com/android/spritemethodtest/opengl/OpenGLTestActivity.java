@@ -17,18 +17,27 @@
 package com.android.spritemethodtest.opengl;
 
 import android.app.Activity;
+import android.app.ActivityManager;
+import android.content.Context;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.drawable.BitmapDrawable;
+import android.content.pm.ConfigurationInfo;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
+import android.util.Log;
 
+import com.android.spritemethodtest.ImageMetadata;
 import com.android.spritemethodtest.Mover;
 import com.android.spritemethodtest.ProfileRecorder;
 import com.android.spritemethodtest.R;
 import com.android.spritemethodtest.Renderable;
+import com.android.spritemethodtest.opengl.batched.Draw;
 import com.android.spritemethodtest.opengl.batched.DrawData;
 import com.android.spritemethodtest.opengl.batched.FloatDrawData;
+import com.android.spritemethodtest.opengl.batched.TextureAtlas;
+import com.android.spritemethodtest.opengl.shader.AndroidShaderGL;
+import com.android.spritemethodtest.opengl.shader.ShaderRenderer;
+import com.android.spritemethodtest.opengl.shader.SpriteRecords;
 
 /**
  * Activity for testing OpenGL ES drawing speed.  This activity sets up sprites 
@@ -44,6 +53,7 @@ public class OpenGLTestActivity extends Activity {
     
     @Override
     public void onCreate(Bundle savedInstanceState) {
+        final long createStart = SystemClock.uptimeMillis();
         super.onCreate(savedInstanceState);
         mGLSurfaceView = new GLSurfaceView(this);
         setContentView(mGLSurfaceView);
@@ -54,30 +64,106 @@ public class OpenGLTestActivity extends Activity {
         final Intent callingIntent = getIntent();
         final int robotCount = callingIntent.getIntExtra("spriteCount", 10);
         final boolean animate = callingIntent.getBooleanExtra("animate", true);
-        final DrawMethod method = 
+        final boolean retainTexCoords = 
+        	callingIntent.getBooleanExtra("retainTexCoords", false);
+        final boolean retainSprites = 
+        	callingIntent.getBooleanExtra("retainSprites", false);
+        final boolean cacheGLState = 
+        	callingIntent.getBooleanExtra("cacheGLState", false);
+        final boolean parallelSprites = 
+        	callingIntent.getBooleanExtra("parallelSprites", false);
+        final boolean calibrateChunks = 
+        	callingIntent.getBooleanExtra("calibrateChunks", false);
+        final boolean spatialSort = 
+        	callingIntent.getBooleanExtra("spatialSort", false);
+        final boolean dynamicAtlas = 
+        	callingIntent.getBooleanExtra("dynamicAtlas", false);
+        final boolean asyncDecode = 
+        	callingIntent.getBooleanExtra("asyncDecode", false);
+        final boolean fileCache = 
+        	callingIntent.getBooleanExtra("fileCache", false);
+        final int compression = 
+        	callingIntent.getIntExtra("compression", 
+        			CompressedTexture.COMPRESSION_NONE);
+        DrawMethod method = 
         	DrawMethod.values()[callingIntent.getIntExtra("drawMethod", 0)];
+        if (DrawMethod.SHADER_ES2 == method && !supportsEs2()) {
+        	Log.w("SpriteMethodTest", 
+        			"OpenGL ES 2.0 unsupported, using batched verts.");
+        	method = DrawMethod.BATCHED_VERT_FLOAT;
+        }
 
         // Allocate space for the robot sprites + one background sprite.
         GLSprite[] sprites = new GLSprite[robotCount + 1];    
-        SimpleGLRenderer spriteRenderer = 
-        	new SimpleGLRenderer(this, sprites, method);
-        mGLSurfaceView.setRenderer(spriteRenderer);
+        SimpleGLRenderer spriteRenderer = null;
+        ShaderRenderer shaderRenderer = null;
+        if (DrawMethod.SHADER_ES2 == method) {
+        	shaderRenderer = 
+        		new ShaderRenderer(this, sprites, new AndroidShaderGL());
+        	shaderRenderer.setCompression(compression);
+        	if (fileCache) {
+        		shaderRenderer.setFileCache(new TextureFileCache(this));
+        	}
+        	mGLSurfaceView.setEGLContextClientVersion(2);
+        	mGLSurfaceView.setRenderer(shaderRenderer);
+        } else {
+	        spriteRenderer = new SimpleGLRenderer(this, sprites, method);
+	        spriteRenderer.setRetainTexCoords(retainTexCoords);
+	        // Sprites in draw slots are written one at a time.
+	        spriteRenderer.setParallelSprites(parallelSprites && !retainSprites);
+	        spriteRenderer.setSpatialSort(spatialSort && !retainSprites);
+	        spriteRenderer.setDynamicAtlas(dynamicAtlas);
+	        spriteRenderer.setAsyncDecode(asyncDecode);
+	        if (fileCache) {
+	        	spriteRenderer.setFileCache(new TextureFileCache(this));
+	        }
+	        spriteRenderer.setCompression(compression);
+	        // Batched draws use the chunk size calibrated on this device.
+	        Draw.setChunkQuads(ChunkTuner.loadChunkQuads(this));
+	        if (calibrateChunks && method.isBatched()) {
+	        	spriteRenderer.setChunkTuner(
+	        			new ChunkTuner(this, mCalibratedListener));
+	        }
+	        if (cacheGLState) {
+	        	mGLSurfaceView.setGLWrapper(new StateCachingGL.Wrapper());
+	        }
+	        mGLSurfaceView.setRenderer(spriteRenderer);
+        }
         
+        final long spriteSetupStart = SystemClock.uptimeMillis();
         // We need to know the width and height of the display pretty soon,
         // so grab the information now.
         DisplayMetrics dm = new DisplayMetrics();
         getWindowManager().getDefaultDisplay().getMetrics(dm);
         final GLSprite background = new GLSprite(R.drawable.background, method);
         sprites[0] = background;
-        BitmapDrawable backgroundImage = (BitmapDrawable)getResources().getDrawable(R.drawable.background);
-        Bitmap backgoundBitmap = backgroundImage.getBitmap();
-        background.setWidth(backgoundBitmap.getWidth());
-        background.setHeight(backgoundBitmap.getHeight());
+        if (method.isBatched() || DrawMethod.SHADER_ES2 == method) {
+        	// Drawn from the packed atlas, which only has the default 
+        	// density's background, whatever size this density's is.
+        	background.setWidth(
+        			TextureAtlas.getWidth(R.drawable.background));
+        	background.setHeight(
+        			TextureAtlas.getHeight(R.drawable.background));
+        } else {
+        	// Only the size is needed here, the renderer decodes the image.
+        	background.setWidth(ImageMetadata.sSingleton.getWidth(
+        			getResources(), R.drawable.background));
+        	background.setHeight(ImageMetadata.sSingleton.getHeight(
+        			getResources(), R.drawable.background));
+        }
+        // The background is bigger than most screens, so only draw what shows.
+        background.setClipToView(true);
         
         Grid spriteGrid = null;
         DrawData spriteDrawData = null;
         FloatDrawData spriteFloatDrawData = null;
-        if ( DrawMethod.BASIC_VERT == method || DrawMethod.VBO == method ) {
+        SpriteRecords spriteRecords = null;
+        if ( DrawMethod.BASIC_VERT == method || DrawMethod.VBO == method 
+        		|| DrawMethod.MATRIX_PALETTE == method
+        		|| DrawMethod.POINT_SPRITE_FLOAT == method
+        		|| DrawMethod.POINT_SPRITE_FIXED == method ) {
+            // Matrix palettes and point sprites fall back to these grids if 
+            // they aren't supported.
             // Setup the background grid.  This is just a quad.
             Grid backgroundGrid = new Grid(2, 2, false);
             backgroundGrid.set(0, 0,  0.0f, 0.0f, 0.0f, 0.0f, 1.0f, null);
@@ -94,11 +180,14 @@ public class OpenGLTestActivity extends Activity {
             spriteGrid.set(1, 0, SPRITE_WIDTH, 0.0f, 0.0f, 1.0f, 1.0f, null);
             spriteGrid.set(0, 1, 0.0f, SPRITE_HEIGHT, 0.0f, 0.0f, 0.0f, null);
             spriteGrid.set(1, 1, SPRITE_WIDTH, SPRITE_HEIGHT, 0.0f, 1.0f, 0.0f, null);
-        } else if ( DrawMethod.BATCHED_VERT_FIXED == method 
-        		|| DrawMethod.BATCHED_VERT_FLOAT == method ) {
+        } else if ( method.isBatched() ) {
         	int backgroundVertCapacity = 4;
         	DrawData backgroundDrawData = new DrawData(4);
         	FloatDrawData backgroundFloatDrawData = new FloatDrawData(4);
+        	// The background never moves, so it only needs to be written into
+        	// the shared buffers once.
+        	backgroundDrawData.setStatic(true);
+        	backgroundFloatDrawData.setStatic(true);
         	int totalDrawDataCapacity = backgroundVertCapacity;
         	background.setDrawData(backgroundDrawData, backgroundFloatDrawData);
         	
@@ -107,12 +196,24 @@ public class OpenGLTestActivity extends Activity {
         	spriteFloatDrawData = new FloatDrawData(foregroundVertCapacity);
         	totalDrawDataCapacity += foregroundVertCapacity;
         	
+        	// Each robot can own a slot that is only rewritten when it moves.
+        	if (retainSprites) {
+        		spriteDrawData.useSlots(robotCount);
+        		spriteFloatDrawData.useSlots(robotCount);
+        	}
+        	
             DrawData[] drawDataArray = new DrawData[] 
                     {backgroundDrawData, spriteDrawData};
             FloatDrawData[] floatDrawDataArray = new FloatDrawData[] 
                     {backgroundFloatDrawData, spriteFloatDrawData};
             spriteRenderer.setDrawData(
             		drawDataArray, floatDrawDataArray, totalDrawDataCapacity);
+        } else if ( DrawMethod.SHADER_ES2 == method ) {
+        	SpriteRecords backgroundRecords = new SpriteRecords(1);
+        	background.setSpriteRecords(backgroundRecords);
+        	spriteRecords = new SpriteRecords(robotCount);
+        	shaderRenderer.setSpriteRecords(
+        			new SpriteRecords[] {backgroundRecords, spriteRecords});
         }  
         
         // Allocate our sprites and add them to an array.
@@ -144,12 +245,18 @@ public class OpenGLTestActivity extends Activity {
             // All sprites put their data into the same array to be processed 
             // all at once if we're running the batched verts tests.
             robot.setDrawData(spriteDrawData, spriteFloatDrawData);
+            robot.setSpriteRecords(spriteRecords);
+            if (retainSprites && method.isBatched()) {
+            	robot.setDrawSlot(x);
+            }
             
             // Add this robot to the spriteArray so it gets drawn and to the
             // renderableArray so that it gets moved.
             sprites[x + 1] = robot;
             renderableArray[x] = robot;
         }
+        ProfileRecorder.sSingleton.recordStartup(
+        		ProfileRecorder.STARTUP_SPRITE_SETUP, spriteSetupStart);
         
         if (animate) {
             Mover simulationRuntime = new Mover();
@@ -158,5 +265,35 @@ public class OpenGLTestActivity extends Activity {
             simulationRuntime.setViewSize(dm.widthPixels, dm.heightPixels);
             mGLSurfaceView.setEvent(simulationRuntime);
         }
+        ProfileRecorder.sSingleton.recordStartup(
+        		ProfileRecorder.STARTUP_ACTIVITY_CREATE, createStart);
+    }
+    
+    /** Offers the calibration results for export, then ends the test. */
+    private final ChunkTuner.Listener mCalibratedListener = 
+    		new ChunkTuner.Listener() {
+    	public void onCalibrated(int chunkQuads, final String results) {
+    		Log.i("SpriteMethodTest", "Calibrated chunk size: " + chunkQuads 
+    				+ " quads\n" + results);
+    		runOnUiThread(new Runnable() {
+    			public void run() {
+    				Intent send = new Intent(Intent.ACTION_SEND);
+    				send.setType("text/plain");
+    				send.putExtra(Intent.EXTRA_SUBJECT, 
+    						getString(R.string.CalibrationSubject));
+    				send.putExtra(Intent.EXTRA_TEXT, results);
+    				startActivity(Intent.createChooser(send, 
+    						getString(R.string.ExportCalibrationTitle)));
+    				finish();
+    			}
+    		});
+    	}
+    };
+    
+    private boolean supportsEs2() {
+    	ActivityManager activityManager = 
+    		(ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+    	ConfigurationInfo info = activityManager.getDeviceConfigurationInfo();
+    	return info.reqGlEsVersion >= 0x20000;
     }
 }
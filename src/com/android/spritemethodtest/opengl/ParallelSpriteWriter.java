@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl;
+
+import static com.android.spritemethodtest.opengl.batched.BufferUtil.*;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import com.android.spritemethodtest.opengl.batched.DrawData;
+import com.android.spritemethodtest.opengl.batched.FloatDrawData;
+
+/**
+ * Writes the batched quads for a range of sprites using several threads.
+ * The sprites are split into one range per thread and each range is
+ * written into its own part of the batched data, set aside ahead of time,
+ * so the threads never touch the same data. The rendering thread writes
+ * the last range itself and then waits for the others before the data is
+ * copied into the shared buffers and drawn.
+ * <p>
+ * Sprites are written in the same order as drawing them one by one, but
+ * none are culled, and sprites can't use draw slots or be clipped.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class ParallelSpriteWriter {
+
+	private final GLSprite[] mSprites;
+
+	private final int mFirst;
+
+	private final int mCount;
+
+	private final DrawData mData;
+
+	private final FloatDrawData mFloatData;
+
+	private final Thread[] mWorkers;
+
+	//Range of quads each thread writes, the rendering thread has the last.
+	private final int[] mRangeStarts;
+
+	private final int[] mRangeEnds;
+
+	//Range of quads each thread changed the texture coordinates of.
+	private final int[] mDirtyStarts;
+
+	private final int[] mDirtyEnds;
+
+	//Every thread waits at the first before writing and the second after.
+	private final CyclicBarrier mStart;
+
+	private final CyclicBarrier mFinish;
+
+	//Thrown while writing a range, rethrown on the rendering thread.
+	private volatile Throwable mFailure;
+
+	//Set by shutdown, after which the barriers would never trip.
+	private volatile boolean mShutdown;
+
+	/**
+	 * Creates a ParallelSpriteWriter instance and starts its threads.
+	 *
+	 * @param sprites GLSprite[] containing the sprites
+	 * @param first int first sprite to write
+	 * @param data DrawData the sprites add quads to, or null if they use
+	 * floatData
+	 * @param floatData FloatDrawData the sprites add quads to, or null if
+	 * they use data
+	 * @param threadCount int threads to write with, including the
+	 * rendering thread
+	 */
+	public ParallelSpriteWriter(final GLSprite[] sprites, final int first,
+			final DrawData data, final FloatDrawData floatData,
+			final int threadCount) {
+		mSprites = sprites;
+		mFirst = first;
+		mCount = Math.max(sprites.length - first, 0);
+		mData = data;
+		mFloatData = floatData;
+
+		final int ranges = Math.max(1, Math.min(threadCount, mCount));
+		mRangeStarts = new int[ranges];
+		mRangeEnds = new int[ranges];
+		mDirtyStarts = new int[ranges];
+		mDirtyEnds = new int[ranges];
+		for( int i = 0; i < ranges; i++ ) {
+			mRangeStarts[i] = mCount * i / ranges;
+			mRangeEnds[i] = mCount * (i + 1) / ranges;
+		}
+
+		mStart = new CyclicBarrier(ranges);
+		mFinish = new CyclicBarrier(ranges);
+		mWorkers = new Thread[ranges - 1];
+		for( int i = 0; i < mWorkers.length; i++ ) {
+			final int range = i;
+			mWorkers[i] = new Thread("SpriteWriter" + i) {
+				@Override
+				public void run() {
+					try {
+						while ( true ) {
+							mStart.await();
+							try {
+								writeRange(range);
+							} catch (Throwable t) {
+								mFailure = t;
+							}
+							mFinish.await();
+						}
+					} catch (InterruptedException e) {
+						//Shut down.
+					} catch (BrokenBarrierException e) {
+						//Another thread was shut down.
+					}
+				}
+			};
+			mWorkers[i].setDaemon(true);
+			mWorkers[i].start();
+		}
+	}
+
+	/**
+	 * @return int threads available to run on, for the threadCount of the
+	 * constructor
+	 */
+	public static int getDefaultThreadCount() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Writes the quads of all the sprites. Must be called from the
+	 * rendering thread, returns once all the quads are written.
+	 * <p>
+	 * A thread that throws still waits for the others, so nobody is left
+	 * parked on the barriers. The exception is then rethrown here, after
+	 * the threads are stopped.
+	 *
+	 * @throws IllegalStateException if called after {@link #shutdown()}
+	 */
+	public void write() {
+		if ( mShutdown ) {
+			throw new IllegalStateException("Already shut down");
+		}
+		if ( null != mData ) {
+			mData.prepareQuads(mCount);
+		}
+		if ( null != mFloatData ) {
+			mFloatData.prepareQuads(mCount);
+		}
+
+		final int last = mRangeStarts.length - 1;
+		try {
+			mStart.await();
+			try {
+				writeRange(last);
+			} catch (Throwable t) {
+				mFailure = t;
+			}
+			mFinish.await();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (BrokenBarrierException e) {
+			throw new RuntimeException(e);
+		}
+
+		final Throwable failure = mFailure;
+		if ( null != failure ) {
+			shutdown();
+			if ( failure instanceof RuntimeException ) {
+				throw (RuntimeException) failure;
+			}
+			if ( failure instanceof Error ) {
+				throw (Error) failure;
+			}
+			throw new RuntimeException(failure);
+		}
+
+		for( int i = 0; i <= last; i++ ) {
+			final int start = mDirtyStarts[i] * VERTS_PER_QUAD;
+			final int end = mDirtyEnds[i] * VERTS_PER_QUAD;
+			if ( null != mData ) {
+				mData.markTexCoordsDirty(start, end);
+			}
+			if ( null != mFloatData ) {
+				mFloatData.markTexCoordsDirty(start, end);
+			}
+		}
+	}
+
+	private void writeRange(final int range) {
+		final int end = mRangeEnds[range];
+		int dirtyStart = end;
+		int dirtyEnd = end;
+		for( int quad = mRangeStarts[range]; quad < end; quad++ ) {
+			if ( mSprites[mFirst + quad].putBatchedQuad(quad) ) {
+				if ( dirtyStart == end ) {
+					dirtyStart = quad;
+				}
+				dirtyEnd = quad + 1;
+			}
+		}
+		mDirtyStarts[range] = dirtyStart;
+		mDirtyEnds[range] = dirtyEnd;
+	}
+
+	/**
+	 * Stops the threads. This instance must not be used afterward.
+	 */
+	public void shutdown() {
+		mShutdown = true;
+		for( int i = 0; i < mWorkers.length; i++ ) {
+			mWorkers[i].interrupt();
+		}
+	}
+}
@@ -23,20 +23,24 @@ import java.io.InputStream;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.opengles.GL10;
-import javax.microedition.khronos.opengles.GL11;
-import javax.microedition.khronos.opengles.GL11Ext;
 
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.opengl.GLUtils;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.android.spritemethodtest.ProfileRecorder;
 import com.android.spritemethodtest.opengl.batched.Draw;
 import com.android.spritemethodtest.opengl.batched.DrawData;
+import com.android.spritemethodtest.opengl.batched.DynamicAtlas;
 import com.android.spritemethodtest.opengl.batched.FloatDrawData;
 import com.android.spritemethodtest.opengl.batched.FloatSharedBuffers;
+import com.android.spritemethodtest.opengl.batched.HardwareBuffer;
+import com.android.spritemethodtest.opengl.batched.PaletteSprites;
+import com.android.spritemethodtest.opengl.batched.PointSprites;
 import com.android.spritemethodtest.opengl.batched.SharedBuffers;
+import com.android.spritemethodtest.opengl.batched.SpriteBatcher;
 import com.android.spritemethodtest.opengl.batched.TextureAtlas;
 import com.android.spritemethodtest.opengl.batched.TextureDraw;
 
@@ -48,17 +52,17 @@ import com.android.spritemethodtest.opengl.batched.TextureDraw;
  */
 public class SimpleGLRenderer implements GLSurfaceView.Renderer {
 
-	// Specifies the format our textures should be converted to upon load.
-    private static BitmapFactory.Options sBitmapOptions
-        = new BitmapFactory.Options();
-    
+	// Texture memory to keep images no sprite uses loaded within.
+	private static final long TEXTURE_BUDGET_BYTES = 8 * 1024 * 1024;
+	
     // An array of things to draw every frame.
     private GLSprite[] mSprites;
     
-    // Pre-allocated arrays to use at runtime so that allocation during the
-    // test can be avoided.
-    private int[] mTextureNameWorkspace = new int[1];
-    private int[] mCropWorkspace = new int[4];
+    // Loads each image once, however the sprites using it are ordered.
+    private TextureCache mTextureCache;
+    
+    // Set while the sprites hold their textures from the cache.
+    private boolean mSpriteTexturesAcquired;
     
     // A reference to the application context.
     private Context mContext;
@@ -71,6 +75,8 @@ public class SimpleGLRenderer implements GLSurfaceView.Renderer {
 	
 	private int mVertCapacity;
 	
+	private boolean mRetainTexCoords;
+	
 	private Draw[] mDraws;
     
 	private DrawData[] mDrawData;
@@ -80,15 +86,70 @@ public class SimpleGLRenderer implements GLSurfaceView.Renderer {
 	private FloatDrawData[] mFloatDrawData;
 	
 	private FloatSharedBuffers mFloatSharedBuffers;
+	
+	// One batch per texture when drawing point sprites, null if unsupported.
+	private PointSprites[] mPointSprites;
+	
+	// One batch per texture when drawing with matrix palettes, null if 
+	// unsupported.
+	private PaletteSprites[] mPaletteSprites;
+	
+	// Sorts sprites from any number of textures into as few draws as it can.
+	private SpriteBatcher mSpriteBatcher;
+	
+	private boolean mParallelSprites;
+	
+	// Writes the batched robots using several threads, if enabled.
+	private ParallelSpriteWriter mParallelWriter;
+	
+	private ChunkTuner mChunkTuner;
+	
+	// Orders the robots by screen position each frame, if enabled.
+	private SpatialSorter mSpatialSorter;
+	
+	// Holds the robots instead of the packed atlas, if enabled.
+	private DynamicAtlas mDynamicAtlas;
+	
+	private DynamicAtlas.BitmapSource mAtlasSource;
+	
+	private static final int DYNAMIC_ATLAS_PAGE_SIZE = 256;
+	
+	// Knows whether the textures and buffers were loaded in this context.
+	private GLResources mResources = new GLResources();
+	
+	// Decodes textures in the background, if enabled.
+	private TextureDecoder mTextureDecoder;
+	
+	// Keeps decoded textures on local storage, if enabled.
+	private TextureFileCache mTextureFileCache;
+	
+	// Set until every texture of this context has been uploaded.
+	private boolean mTexturesLoading;
+	
+	// When loading started, for the texture load phase.
+	private long mTextureLoadStart;
     
     public SimpleGLRenderer(
     		Context context, GLSprite[] sprites, DrawMethod drawMethod) {
-        
-        // Set our bitmaps to 16-bit, 565 format.
-        sBitmapOptions.inPreferredConfig = Bitmap.Config.RGB_565;
         mContext = context;
+        mTextureCache = new TextureCache(context, TEXTURE_BUDGET_BYTES);
         mSprites = null != sprites ? sprites : new GLSprite[] {};
     	mDrawMethod = drawMethod;
+    	
+    	mResources.register(mTextureCache);
+    	mResources.register(new GLResources.Resource() {
+    		public void invalidate() {
+    			// The cache forgot the sprite textures along with the rest.
+    			mSpriteTexturesAcquired = false;
+    			// The buffer indexes recorded for the old context are 
+    			// invalid too.
+    			if ( DrawMethod.VBO == mDrawMethod ) {
+    				for (int x = 0; x < mSprites.length; x++) {
+    					mSprites[x].getGrid().invalidateHardwareBuffers();
+    				}
+    			}
+    		}
+    	});
     }
     
     public int[] getConfigSpec() {
@@ -104,9 +165,109 @@ public class SimpleGLRenderer implements GLSurfaceView.Renderer {
 		mFloatDrawData = floatDrawData;
 		mVertCapacity = vertCapacity;
 	}
+	
+	/** 
+	 * Keeps batched texture coordinates between frames and only rewrites 
+	 * the ones for sprites whose image changed.
+	 */
+	public void setRetainTexCoords(boolean retain) {
+		mRetainTexCoords = retain;
+	}
+	
+	/**
+	 * Writes the batched sprites after the background using one thread per 
+	 * core. Can't be combined with draw slots.
+	 */
+	public void setParallelSprites(boolean parallel) {
+		mParallelSprites = parallel;
+	}
+	
+	/**
+	 * Sweeps the number of quads per draw call while drawing, to find the 
+	 * fastest for the batched methods.
+	 */
+	public void setChunkTuner(ChunkTuner tuner) {
+		mChunkTuner = tuner;
+	}
+	
+	/**
+	 * Loads the robots into a runtime atlas instead of using the packed 
+	 * one, for the batched methods.
+	 */
+	public void setDynamicAtlas(boolean dynamic) {
+		mDynamicAtlas = dynamic && mDrawMethod.isBatched() 
+			? new DynamicAtlas(1, DYNAMIC_ATLAS_PAGE_SIZE) : null;
+	}
+	
+	/**
+	 * Decodes the textures on worker threads while the first frames are 
+	 * drawn, instead of before, uploading each one when it is ready. 
+	 * Sprites show a placeholder until then.
+	 */
+	public void setAsyncDecode(boolean async) {
+		if (null != mTextureDecoder) {
+			mTextureDecoder.shutdown();
+		}
+		mTextureDecoder = async ? new TextureDecoder(mContext.getResources(), 
+				TextureDecoder.getDefaultThreadCount()) : null;
+		if (null != mTextureDecoder) {
+			mTextureDecoder.setFileCache(mTextureFileCache);
+		}
+		mTextureCache.setDecoder(mTextureDecoder);
+	}
+	
+	/**
+	 * Loads textures pre-encoded in a compressed format where the device 
+	 * supports it, see CompressedTexture.
+	 */
+	public void setCompression(int compression) {
+		mTextureCache.setCompression(compression);
+	}
+	
+	/**
+	 * Keeps decoded textures on local storage and maps them from there on 
+	 * later loads, including in later launches, instead of decoding them 
+	 * again.
+	 */
+	public void setFileCache(TextureFileCache fileCache) {
+		mTextureFileCache = fileCache;
+		mTextureCache.setFileCache(fileCache);
+		if (null != mTextureDecoder) {
+			mTextureDecoder.setFileCache(fileCache);
+		}
+	}
+	
+	/**
+	 * Draws the robots in Z-order by screen position each frame instead of 
+	 * array order, for methods that support it. Can't be combined with 
+	 * draw slots.
+	 */
+	public void setSpatialSort(boolean sort) {
+		mSpatialSorter = sort && mDrawMethod.supportsSpatialSort() 
+			? new SpatialSorter(mSprites, 1) : null;
+	}
 
     /** Draws the sprites. */
     public void drawFrame(GL10 gl) {
+        if (mTexturesLoading) {
+            mTextureCache.uploadDecoded(gl);
+            if (!mTextureCache.isLoading()) {
+                ProfileRecorder.sSingleton.recordStartup(
+                        ProfileRecorder.STARTUP_TEXTURES_LOADED);
+                ProfileRecorder.sSingleton.recordStartup(
+                        ProfileRecorder.STARTUP_TEXTURE_LOAD, 
+                        mTextureLoadStart);
+                mTexturesLoading = false;
+            }
+        }
+        if (null != mChunkTuner) {
+            mChunkTuner.frame();
+        }
+        if (null != mDynamicAtlas) {
+            mDynamicAtlas.nextFrame();
+            updateAtlasRegions(gl);
+        }
+        
         switch ( mDrawMethod ) {
         	case BASIC_VERT:
         	case VBO:
@@ -116,13 +277,21 @@ public class SimpleGLRenderer implements GLSurfaceView.Renderer {
                 break;
                 
         	case BATCHED_VERT_FLOAT:
-                drawSprites(gl);
+        	case BATCHED_VBO_ORPHAN_FLOAT:
+        	case BATCHED_VBO_SUB_DATA_FLOAT:
+        	case BATCHED_STRIP_FLOAT:
+        	case BATCHED_ARRAYS_FLOAT:
+                drawBatchedSprites(gl);
                 mFloatSharedBuffers.update(mFloatDrawData);
                 mFloatSharedBuffers.draw(gl);
             	break;
             	
         	case BATCHED_VERT_FIXED:
-                drawSprites(gl);
+        	case BATCHED_VBO_ORPHAN_FIXED:
+        	case BATCHED_VBO_SUB_DATA_FIXED:
+        	case BATCHED_STRIP_FIXED:
+        	case BATCHED_ARRAYS_FIXED:
+                drawBatchedSprites(gl);
                 mSharedBuffers.update(mDrawData);
             	mSharedBuffers.draw(gl);
             	break;
@@ -131,13 +300,82 @@ public class SimpleGLRenderer implements GLSurfaceView.Renderer {
         	case DRAW_TEXTURE_FIXED:
                 drawSprites(gl);       	
                 break;        	
+                
+        	case SORTED_BATCH:
+                drawSprites(gl);
+                mSpriteBatcher.draw(gl);
+                break;
+                
+        	case MATRIX_PALETTE:
+        		// Sprites without a palette batch draw with verts here.
+                Grid.beginDrawing(gl, true, false);
+                drawSprites(gl);
+                Grid.endDrawing(gl);
+                
+                if ( null != mPaletteSprites ) {
+                	PaletteSprites.beginDrawing(gl);
+                	for (int x = 0; x < mPaletteSprites.length; x++) {
+                		mPaletteSprites[x].draw(gl);
+                	}
+                	PaletteSprites.endDrawing(gl);
+                }
+                break;
+                
+        	case POINT_SPRITE_FLOAT:
+        	case POINT_SPRITE_FIXED:
+        		// Sprites without a point sprite batch draw with verts here.
+                Grid.beginDrawing(gl, true, false);
+                drawSprites(gl);
+                Grid.endDrawing(gl);
+                
+                if ( null != mPointSprites ) {
+                	PointSprites.beginDrawing(gl);
+                	for (int x = 0; x < mPointSprites.length; x++) {
+                		mPointSprites[x].draw(gl);
+                	}
+                	PointSprites.endDrawing(gl);
+                }
+                break;
     	}
     }
     
     private void drawSprites(GL10 gl) {
-        for (int x = 0; x < mSprites.length; x++) {
-            mSprites[x].draw(gl);
+        final GLSprite[] sprites = 
+            null != mSpatialSorter ? mSpatialSorter.sort() : mSprites;
+        int culled = 0;
+        for (int x = 0; x < sprites.length; x++) {
+            // Sprites that moved entirely out of view aren't submitted.
+            if (sprites[x].isOutsideView()) {
+                culled++;
+            } else {
+                sprites[x].draw(gl);
+            }
         }   	
+        ProfileRecorder.sSingleton.count(
+                ProfileRecorder.COUNTER_CULLED_SPRITES, culled);
+    }
+    
+    private void drawBatchedSprites(GL10 gl) {
+        // Timed separately, so runs with and without parallel sprites can 
+        // be compared at the same sprite count.
+        if (null == mParallelWriter) {
+            ProfileRecorder.sSingleton.start(
+                    ProfileRecorder.PROFILE_WRITE_SERIAL);
+            drawSprites(gl);
+            ProfileRecorder.sSingleton.stop(
+                    ProfileRecorder.PROFILE_WRITE_SERIAL);
+            return;
+        }
+        
+        ProfileRecorder.sSingleton.start(ProfileRecorder.PROFILE_WRITE_PARALLEL);
+        // The background is added as usual, the robots after it are 
+        // written by several threads.
+        mSprites[0].draw(gl);
+        if (null != mSpatialSorter) {
+            mSpatialSorter.sort();
+        }
+        mParallelWriter.write();
+        ProfileRecorder.sSingleton.stop(ProfileRecorder.PROFILE_WRITE_PARALLEL);
     }
     
     /* Called when the size of the window changes. */
@@ -169,6 +407,12 @@ public class SimpleGLRenderer implements GLSurfaceView.Renderer {
         
 		
         gl.glViewport(0, 0, width, height);
+        for (int x = 0; x < mSprites.length; x++) {
+            mSprites[x].setViewSize(width, height);
+        }
+        if (null != mSpatialSorter) {
+            mSpatialSorter.setViewSize(width, height);
+        }
         /*
          * Set our projection matrix. This doesn't have to be done each time we
          * draw, but usually a new projection needs to be set when the viewport
@@ -179,49 +423,105 @@ public class SimpleGLRenderer implements GLSurfaceView.Renderer {
         gl.glOrthof(0.0f, width, 0.0f, height, 0.0f, 1.0f);    	
         gl.glMatrixMode(GL10.GL_MODELVIEW); 
         
-		
-        // If we are using hardware buffers and the screen lost context
-        // then the buffer indexes that we recorded previously are now
-        // invalid.  Forget them here and recreate them below.
-        if ( DrawMethod.VBO == mDrawMethod ) {
-            for (int x = 0; x < mSprites.length; x++) {
-                // Ditch old buffer indexes.
-                mSprites[x].getGrid().invalidateHardwareBuffers();
-            }
+        // Resizing, as when rotating, keeps the same context, so nothing 
+        // loaded into it has to be loaded again.
+        if (mResources.isCreated()) {
+            return;
         }
-        
-        if ( DrawMethod.BATCHED_VERT_FIXED == mDrawMethod 
-        		|| DrawMethod.BATCHED_VERT_FLOAT == mDrawMethod ) {
+        mTextureLoadStart = SystemClock.uptimeMillis();
+        createResources(gl);
+        mResources.setCreated();
+        mTexturesLoading = true;
+ 
+        // Now's a good time to run the GC.  Since we won't do any explicit
+        // allocation during the test, the GC should stay dormant and not
+        // influence our results.
+        Runtime r = Runtime.getRuntime();
+        r.gc();
+    }
+    
+    /**
+     * Loads the textures and creates the buffers the draw method uses, 
+     * once per context.
+     */
+    private void createResources(GL10 gl) {
+        if ( mDrawMethod.isBatched() ) {
         	
-        	mBackgroundTextureId = loadBitmap(
-        			mContext, gl, TextureAtlas.BACKGROUND_RESOURCE_ID);
-            mAtlasTextureId = loadBitmap(
-            		mContext, gl, TextureAtlas.RESOURCE_ID);
+        	// The background is normally packed with the robots, so the 
+        	// whole frame draws from one texture, only loaded once.
+        	mAtlasTextureId = 
+        		mTextureCache.acquire(gl, TextureAtlas.RESOURCE_ID);
+        	mBackgroundTextureId = mTextureCache.acquire(
+        			gl, TextureAtlas.BACKGROUND_RESOURCE_ID);
+        	mSpriteTexturesAcquired = true;
+            int robotTextureId = mAtlasTextureId;
+            if (null != mDynamicAtlas) {
+            	robotTextureId = loadDynamicAtlas(gl);
+            }
             mDraws = new Draw[] {
             		new TextureDraw(mBackgroundTextureId, false),
-            		new TextureDraw(mAtlasTextureId, true),
+            		new TextureDraw(mBackgroundTextureId == robotTextureId 
+            				? TextureDraw.KEEP_BOUND : robotTextureId, true),
             };
+            
+            // Hand the old direct buffers back so the new ones can reuse them.
+            if ( null != mSharedBuffers ) {
+            	mSharedBuffers.release();
+            	mFloatSharedBuffers.release();
+            }
         	mSharedBuffers = new SharedBuffers(mVertCapacity, mDraws);
         	mFloatSharedBuffers = new FloatSharedBuffers(mVertCapacity, mDraws);
+        	mSharedBuffers.setRetainTexCoords(mRetainTexCoords);
+        	mFloatSharedBuffers.setRetainTexCoords(mRetainTexCoords);
+        	
+        	// The buffers were just recreated, so static layers they held 
+        	// need to be written again.
+        	for (int x = 0; x < mDrawData.length; x++) {
+        		mDrawData[x].invalidate();
+        		mFloatDrawData[x].invalidate();
+        	}
+        	
+        	// The buffers were just recreated, so any hardware buffers they 
+        	// stream into will be generated again on the first draw.
+        	switch ( mDrawMethod ) {
+        		case BATCHED_VBO_ORPHAN_FLOAT:
+        		case BATCHED_VBO_ORPHAN_FIXED:
+        			mSharedBuffers.useHardwareBuffers(
+        					HardwareBuffer.UPDATE_ORPHAN);
+        			mFloatSharedBuffers.useHardwareBuffers(
+        					HardwareBuffer.UPDATE_ORPHAN);
+        			break;
+        		case BATCHED_VBO_SUB_DATA_FLOAT:
+        		case BATCHED_VBO_SUB_DATA_FIXED:
+        			mSharedBuffers.useHardwareBuffers(
+        					HardwareBuffer.UPDATE_SUB_DATA);
+        			mFloatSharedBuffers.useHardwareBuffers(
+        					HardwareBuffer.UPDATE_SUB_DATA);
+        			break;
+        		case BATCHED_STRIP_FLOAT:
+        		case BATCHED_STRIP_FIXED:
+        			mSharedBuffers.setFormat(Draw.FORMAT_STRIP);
+        			mFloatSharedBuffers.setFormat(Draw.FORMAT_STRIP);
+        			break;
+        		case BATCHED_ARRAYS_FLOAT:
+        		case BATCHED_ARRAYS_FIXED:
+        			mSharedBuffers.setFormat(Draw.FORMAT_ARRAYS);
+        			mFloatSharedBuffers.setFormat(Draw.FORMAT_ARRAYS);
+        			break;
+        	}
+        	
+        	if ( mParallelSprites ) {
+        		createParallelWriter();
+        	}
         } else {
-            // Load our texture and set its texture name on all sprites.
-            
-            // To keep this sample simple we will assume that sprites that share
-            // the same texture are grouped together in our sprite list. A real
-            // app would probably have another level of texture management, 
-            // like a texture hash.
-            
-            int lastLoadedResource = -1;
-            int lastTextureId = -1;
-            
+            // Load our textures and set their texture names on all sprites. 
+            // The cache loads each one once, in whatever order the sprites 
+            // that share it are in.
             for (int x = 0; x < mSprites.length; x++) {
                 int resource = mSprites[x].getResourceId();
                 if (resource > 0) {
-	                if (resource != lastLoadedResource) {
-	                    lastTextureId = loadBitmap(mContext, gl, resource);
-	                    lastLoadedResource = resource;
-	                }
-	                mSprites[x].setTextureName(lastTextureId);
+	                mSprites[x].setTextureName(
+	                        mTextureCache.acquire(gl, resource));
 	                if ( DrawMethod.VBO == mDrawMethod ) {
 	                    Grid currentGrid = mSprites[x].getGrid();
 	                    if (!currentGrid.usingHardwareBuffers()) {
@@ -230,14 +530,17 @@ public class SimpleGLRenderer implements GLSurfaceView.Renderer {
 	                }
                 }
             }
+            
+            if ( DrawMethod.POINT_SPRITE_FLOAT == mDrawMethod 
+            		|| DrawMethod.POINT_SPRITE_FIXED == mDrawMethod ) {
+            	createPointSprites(gl);
+            } else if ( DrawMethod.MATRIX_PALETTE == mDrawMethod ) {
+            	createPaletteSprites(gl);
+            } else if ( DrawMethod.SORTED_BATCH == mDrawMethod ) {
+            	createSpriteBatcher();
+            }
+            mSpriteTexturesAcquired = true;
         }
-    	
- 
-        // Now's a good time to run the GC.  Since we won't do any explicit
-        // allocation during the test, the GC should stay dormant and not
-        // influence our results.
-        Runtime r = Runtime.getRuntime();
-        r.gc();
     }
 
     /**
@@ -254,6 +557,11 @@ public class SimpleGLRenderer implements GLSurfaceView.Renderer {
     	 * moved the init code to the more reliable sizeChanged method in case 
     	 * this method is broken in this implementation as well. -Lance
     	 */
+    	
+    	// The GLSurfaceView in this package calls this for every context it 
+    	// starts, so sizeChanged can tell when everything has to be loaded 
+    	// again and when the old context is still around.
+    	mResources.contextStarted();
     }
     
     /**
@@ -262,88 +570,275 @@ public class SimpleGLRenderer implements GLSurfaceView.Renderer {
      * @param gl
      */
     public void shutdown(GL10 gl) {
-        if ( DrawMethod.BATCHED_VERT_FIXED == mDrawMethod 
-        		|| DrawMethod.BATCHED_VERT_FLOAT == mDrawMethod ) {
+        if ( mDrawMethod.isBatched() ) {
 
-        	mAtlasTextureId = deleteTexture(gl, mAtlasTextureId);
-        	mBackgroundTextureId = deleteTexture(gl, mBackgroundTextureId);
+        	if ( null != mSharedBuffers ) {
+        		mSharedBuffers.releaseHardwareBuffers(gl);
+        		mFloatSharedBuffers.releaseHardwareBuffers(gl);
+        		mSharedBuffers.release();
+        		mFloatSharedBuffers.release();
+        		mSharedBuffers = null;
+        		mFloatSharedBuffers = null;
+        	}
+        	releaseParallelWriter();
+        	if (mSpriteTexturesAcquired) {
+        		mTextureCache.release(gl, TextureAtlas.RESOURCE_ID);
+        		mTextureCache.release(gl, TextureAtlas.BACKGROUND_RESOURCE_ID);
+        	}
+        	mAtlasTextureId = 0;
+        	mBackgroundTextureId = 0;
+        	if (null != mDynamicAtlas) {
+        		mDynamicAtlas.deletePages(gl);
+        	}
         } else {
-            int lastFreedResource = -1;            
             for (int x = 0; x < mSprites.length; x++) {
                 int resource = mSprites[x].getResourceId();
-                if (resource != lastFreedResource) {                    
-                	lastFreedResource = deleteTexture(
-                			gl, mSprites[x].getTextureName());
+                if (resource > 0 && mSpriteTexturesAcquired) {
+                	mTextureCache.release(gl, resource);
                     mSprites[x].setTextureName(0);
                 }
                 if ( DrawMethod.VBO == mDrawMethod ) {
                     mSprites[x].getGrid().releaseHardwareBuffers(gl);
                 }
             }
+            releasePointSprites();
+            if ( null != mPaletteSprites ) {
+            	for (int x = 0; x < mPaletteSprites.length; x++) {
+            		mPaletteSprites[x].releaseHardwareBuffers(gl);
+            	}
+            	mPaletteSprites = null;
+            }
+            if ( null != mSpriteBatcher ) {
+            	mSpriteBatcher.release();
+            	mSpriteBatcher = null;
+            }
         }
+        // Nothing else shares the cache, so there is no point keeping what 
+        // fit in the budget once the test is over.
+        mSpriteTexturesAcquired = false;
+        mTextureCache.deleteAll(gl);
+        if (null != mTextureDecoder) {
+            mTextureDecoder.shutdown();
+            mTextureDecoder = null;
+            mTextureCache.setDecoder(null);
+        }
+        mResources.setReleased();
     }
     
-    private int deleteTexture(GL10 gl, int textureId) {
-    	int[] textureToDelete = new int[1];
-        textureToDelete[0] = textureId;
-        gl.glDeleteTextures(1, textureToDelete, 0);
-    	return 0;   	
-    }
- 
-    /** 
-     * Loads a bitmap into OpenGL and sets up the common parameters for 
-     * 2D texture maps. 
+    /**
+     * Creates the runtime atlas pages and adds the robot images to them, 
+     * decoded from their own resources.
+     * 
+     * @return int texture name of the page holding the robots
      */
-    protected int loadBitmap(Context context, GL10 gl, int resourceId) {
-        int textureName = -1;
-        if (context != null && gl != null) {
-            gl.glGenTextures(1, mTextureNameWorkspace, 0);
-
-            textureName = mTextureNameWorkspace[0];
-            gl.glBindTexture(GL_TEXTURE_2D, textureName);
-
-            gl.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
-            gl.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-
-            gl.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-            gl.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
-
-            gl.glTexEnvf(GL_TEXTURE_ENV, GL_TEXTURE_ENV_MODE, GL_REPLACE);
-
-            InputStream is = context.getResources().openRawResource(resourceId);
-            Bitmap bitmap;
-            try {
-                bitmap = BitmapFactory.decodeStream(is, null, sBitmapOptions);
-            } finally {
+    private int loadDynamicAtlas(GL10 gl) {
+        mDynamicAtlas.createPages(gl);
+        mAtlasSource = new DynamicAtlas.BitmapSource() {
+            public Bitmap load(int resourceId) {
+                InputStream is = 
+                    mContext.getResources().openRawResource(resourceId);
                 try {
-                    is.close();
-                } catch (IOException e) {
-                    // Ignore.
-                	throw new RuntimeException(e);
+                    return BitmapFactory.decodeStream(is);
+                } finally {
+                    try {
+                        is.close();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
                 }
             }
-
-            GLUtils.texImage2D(GL_TEXTURE_2D, 0, bitmap, 0);
-
-            mCropWorkspace[0] = 0;
-            mCropWorkspace[1] = bitmap.getHeight();
-            mCropWorkspace[2] = bitmap.getWidth();
-            mCropWorkspace[3] = -bitmap.getHeight();
-            
-            bitmap.recycle();
-
-            ((GL11) gl).glTexParameteriv(GL_TEXTURE_2D, 
-                    GL11Ext.GL_TEXTURE_CROP_RECT_OES, mCropWorkspace, 0);
-
-            
-            int error = gl.glGetError();
-            if (error != GL_NO_ERROR) {
-                Log.e("SpriteMethodTest", "Texture Load GLError: " + error);
+        };
+        for (int x = 1; x < mSprites.length; x++) {
+            DynamicAtlas.Region region = mDynamicAtlas.get(
+                    gl, mSprites[x].getResourceId(), mAtlasSource);
+            mSprites[x].setAtlasRegion(region);
+        }
+        return mDynamicAtlas.getTextureName(0);
+    }
+    
+    /**
+     * Requests each robot's region again every frame, so hits and misses 
+     * are counted per frame, and a region emptied out from under a sprite 
+     * is loaded again instead of drawing whatever replaced it.
+     */
+    private void updateAtlasRegions(GL10 gl) {
+        for (int x = 1; x < mSprites.length; x++) {
+            final GLSprite sprite = mSprites[x];
+            final DynamicAtlas.Region region = mDynamicAtlas.get(
+                    gl, sprite.getResourceId(), mAtlasSource);
+            // Null if nothing could be emptied, keep drawing the old one.
+            if (null != region && region != sprite.getAtlasRegion()) {
+                sprite.setAtlasRegion(region);
             }
-        
         }
-
-        return textureName;
     }
-
+    
+    /**
+     * Starts threads writing the robots into the batched data the draw 
+     * method uses, one per core.
+     */
+    private void createParallelWriter() {
+    	releaseParallelWriter();
+    	if (mSprites.length < 2) {
+    		return;
+    	}
+    	
+    	final int threads = ParallelSpriteWriter.getDefaultThreadCount();
+    	// The sorted array is refilled in place, so the writer can keep it.
+    	final GLSprite[] sprites = 
+    		null != mSpatialSorter ? mSpatialSorter.getSorted() : mSprites;
+    	switch ( mDrawMethod ) {
+	    	case BATCHED_VERT_FIXED:
+	    	case BATCHED_VBO_ORPHAN_FIXED:
+	    	case BATCHED_VBO_SUB_DATA_FIXED:
+	    	case BATCHED_STRIP_FIXED:
+	    	case BATCHED_ARRAYS_FIXED:
+	    		mParallelWriter = new ParallelSpriteWriter(
+	    				sprites, 1, mDrawData[1], null, threads);
+	    		break;
+	    	default:
+	    		mParallelWriter = new ParallelSpriteWriter(
+	    				sprites, 1, null, mFloatDrawData[1], threads);
+	    		break;
+    	}
+    }
+    
+    private void releaseParallelWriter() {
+    	if (null != mParallelWriter) {
+    		mParallelWriter.shutdown();
+    		mParallelWriter = null;
+    	}
+    }
+    
+    /**
+     * Hands every sprite's texture to the sorted batcher as a page. The 
+     * background is drawn first without blending, the robots after it with 
+     * blending, in whatever order they end up in.
+     */
+    private void createSpriteBatcher() {
+    	if (null == mSpriteBatcher) {
+    		mSpriteBatcher = new SpriteBatcher(mSprites.length);
+    	} else {
+    		// The textures were just loaded again under new names.
+    		mSpriteBatcher.clearPages();
+    	}
+    	for (int x = 0; x < mSprites.length; x++) {
+    		final boolean background = 0 == x;
+    		mSprites[x].setSpriteBatcher(mSpriteBatcher, background ? 0 : 1, 
+    				background ? SpriteBatcher.BLEND_NONE 
+    						: SpriteBatcher.BLEND_ALPHA, 
+    				mSpriteBatcher.addPage(mSprites[x].getTextureName()));
+    	}
+    }
+    
+    /**
+     * Groups the sprites after the background by texture into matrix 
+     * palette batches, the same way as {@link #createPointSprites(GL10)}. 
+     * If the extension is missing every sprite is left to draw using verts.
+     */
+    private void createPaletteSprites(GL10 gl) {
+    	// Any earlier mesh was uploaded to a context that may be gone.
+    	if (null != mPaletteSprites) {
+    		for (int x = 0; x < mPaletteSprites.length; x++) {
+    			mPaletteSprites[x].invalidateHardwareBuffers();
+    		}
+    		mPaletteSprites = null;
+    	}
+    	for (int x = 0; x < mSprites.length; x++) {
+    		mSprites[x].setPaletteSprites(null);
+    	}
+    	if (mSprites.length < 2) {
+    		return;
+    	}
+    	
+    	if (!PaletteSprites.isSupported(gl)) {
+    		Log.w("SpriteMethodTest", 
+    				"Matrix palettes unsupported, using verts.");
+    		return;
+    	}
+    	
+    	final int paletteSize = PaletteSprites.getPaletteSize(gl);
+    	int batchCount = 0;
+    	for (int x = 1; x < mSprites.length; x++) {
+    		if (x == 1 || mSprites[x].getTextureName() 
+    				!= mSprites[x - 1].getTextureName()) {
+    			batchCount++;
+    		}
+    	}
+    	
+    	mPaletteSprites = new PaletteSprites[batchCount];
+    	int batch = -1;
+    	int batchStart = 1;
+    	for (int x = 1; x <= mSprites.length; x++) {
+    		if (x == mSprites.length || mSprites[x].getTextureName() 
+    				!= mSprites[batchStart].getTextureName()) {
+    			batch++;
+    			mPaletteSprites[batch] = new PaletteSprites(x - batchStart, 
+    					paletteSize, mSprites[batchStart].getTextureName(), 
+    					mSprites[batchStart].getWidth(), 
+    					mSprites[batchStart].getHeight());
+    			for (int y = batchStart; y < x; y++) {
+    				mSprites[y].setPaletteSprites(mPaletteSprites[batch]);
+    			}
+    			batchStart = x;
+    		}
+    	}
+    }
+    
+    /**
+     * Groups the sprites after the background by texture into point sprite 
+     * batches. Sprites sharing a texture are grouped together in the sprite
+     * list, same as when loading the textures. If the extension is missing 
+     * or the sprites are too big for it, every sprite is left to draw using 
+     * verts instead.
+     */
+    private void createPointSprites(GL10 gl) {
+    	releasePointSprites();
+    	if (mSprites.length < 2) {
+    		return;
+    	}
+    	
+    	final float size = mSprites[1].getWidth();
+    	if (!PointSprites.isSupported(gl, size)) {
+    		Log.w("SpriteMethodTest", "Point sprites unsupported, using verts.");
+    		return;
+    	}
+    	
+    	final boolean fixed = DrawMethod.POINT_SPRITE_FIXED == mDrawMethod;
+    	int batchCount = 0;
+    	for (int x = 1; x < mSprites.length; x++) {
+    		if (x == 1 || mSprites[x].getTextureName() 
+    				!= mSprites[x - 1].getTextureName()) {
+    			batchCount++;
+    		}
+    	}
+    	
+    	mPointSprites = new PointSprites[batchCount];
+    	int batch = -1;
+    	int batchStart = 1;
+    	for (int x = 1; x <= mSprites.length; x++) {
+    		if (x == mSprites.length || mSprites[x].getTextureName() 
+    				!= mSprites[batchStart].getTextureName()) {
+    			batch++;
+    			mPointSprites[batch] = new PointSprites(x - batchStart, fixed, 
+    					mSprites[batchStart].getTextureName(), size);
+    			for (int y = batchStart; y < x; y++) {
+    				mSprites[y].setPointSprites(mPointSprites[batch]);
+    			}
+    			batchStart = x;
+    		}
+    	}
+    }
+    
+    private void releasePointSprites() {
+    	if (null != mPointSprites) {
+    		for (int x = 0; x < mPointSprites.length; x++) {
+    			mPointSprites[x].release();
+    		}
+    		mPointSprites = null;
+    	}
+    	for (int x = 0; x < mSprites.length; x++) {
+    		mSprites[x].setPointSprites(null);
+    	}
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl;
+
+import com.android.spritemethodtest.opengl.batched.RadixSort;
+
+/**
+ * Orders sprites by the Z-order, or Morton, key of their center on screen.
+ * Interleaving the bits of the x and y coordinates means sprites close
+ * together on screen are mostly close together in the order too. Batched
+ * quads written in this order touch one area of the screen at a time
+ * instead of jumping around, which is friendlier to the framebuffer tiles
+ * of tile based GPUs and to texture caches.
+ * <p>
+ * Sorted with a {@link RadixSort}, shared with SpriteBatcher, so nothing is
+ * allocated after construction. Overlapping sprites may swap which one is
+ * on top, so only sprites on the same layer should be sorted.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class SpatialSorter {
+
+	//Bits each screen coordinate is quantized to, half the key each.
+	private static final int COORD_BITS = 10;
+
+	private static final int COORD_MAX = (1 << COORD_BITS) - 1;
+
+	private static final int KEY_BITS = COORD_BITS * 2;
+
+	private final GLSprite[] mSprites;
+
+	private final int mFirst;
+
+	private final GLSprite[] mSorted;
+
+	private final int[] mKeys;
+
+	private final RadixSort mSort;
+
+	private float mScaleX;
+
+	private float mScaleY;
+
+	/**
+	 * Creates a SpatialSorter instance.
+	 *
+	 * @param sprites GLSprite[] to sort, read but never changed
+	 * @param first int first sprite to sort, the ones before it keep their
+	 * places, like a background drawn first
+	 */
+	public SpatialSorter(final GLSprite[] sprites, final int first) {
+		mSprites = sprites;
+		mFirst = Math.min(first, sprites.length);
+		mSorted = new GLSprite[sprites.length];
+
+		final int count = sprites.length - mFirst;
+		mKeys = new int[count];
+		mSort = new RadixSort(count);
+		setViewSize(1, 1);
+	}
+
+	/**
+	 * Sets the area of the screen positions are quantized over. Sprites
+	 * outside it are clamped to its edges.
+	 */
+	public void setViewSize(final int width, final int height) {
+		mScaleX = COORD_MAX / (float) Math.max(width, 1);
+		mScaleY = COORD_MAX / (float) Math.max(height, 1);
+	}
+
+	/**
+	 * @return GLSprite[] the sprites in the order of the last
+	 * {@link #sort()}. The same array is refilled by every sort, so it can
+	 * be handed out once and read each frame.
+	 */
+	public GLSprite[] getSorted() {
+		return mSorted;
+	}
+
+	/**
+	 * Sorts the sprites by their current positions.
+	 *
+	 * @return GLSprite[] from {@link #getSorted()}
+	 */
+	public GLSprite[] sort() {
+		final int count = mKeys.length;
+		if ( 0 == count ) {
+			System.arraycopy(mSprites, 0, mSorted, 0, mFirst);
+			return mSorted;
+		}
+
+		for( int i = 0; i < count; i++ ) {
+			final GLSprite sprite = mSprites[mFirst + i];
+			final float centerX = sprite.getX() + sprite.getWidth() / 2;
+			final float centerY = sprite.getY() + sprite.getHeight() / 2;
+			mKeys[i] = mortonKey(
+					quantize(centerX * mScaleX), quantize(centerY * mScaleY));
+		}
+
+		final int[] order = mSort.sort(mKeys, count, KEY_BITS);
+
+		//The sprites may be filled in after construction, so copy every time.
+		System.arraycopy(mSprites, 0, mSorted, 0, mFirst);
+		for( int i = 0; i < count; i++ ) {
+			mSorted[mFirst + i] = mSprites[mFirst + order[i]];
+		}
+		return mSorted;
+	}
+
+	private static int quantize(final float coord) {
+		if ( coord <= 0 ) {
+			return 0;
+		}
+		return coord >= COORD_MAX ? COORD_MAX : (int) coord;
+	}
+
+	/**
+	 * Interleaves the bits of two coordinates, x in the even bits and y in
+	 * the odd ones.
+	 */
+	private static int mortonKey(final int x, final int y) {
+		return spreadBits(x) | (spreadBits(y) << 1);
+	}
+
+	//Moves each of the low 16 bits to twice its position.
+	private static int spreadBits(int value) {
+		value &= 0x0000ffff;
+		value = (value | (value << 8)) & 0x00ff00ff;
+		value = (value | (value << 4)) & 0x0f0f0f0f;
+		value = (value | (value << 2)) & 0x33333333;
+		value = (value | (value << 1)) & 0x55555555;
+		return value;
+	}
+}
@@ -0,0 +1,1406 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl;
+
+import static javax.microedition.khronos.opengles.GL10.*;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import javax.microedition.khronos.opengles.GL;
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+import javax.microedition.khronos.opengles.GL11Ext;
+
+import com.android.spritemethodtest.ProfileRecorder;
+
+/**
+ * Wraps a GL and remembers the state set through it, so calls that would 
+ * set something to what it already is can be dropped before they cross 
+ * into native code. Tracks the texture bound to each texture unit, the 
+ * enabled capabilities and client states, the vertex, texture coordinate, 
+ * and color pointers, the bound buffer objects, the blend function, and 
+ * the matrix mode. Everything else is passed straight through.
+ * <p>
+ * State starts out unknown, so the first call setting each thing always 
+ * goes through. Anything changing state without going through this 
+ * wrapper, like GLES20 calls on the same context, must be followed by 
+ * {@link #invalidate()}. Dropped calls are counted by the ProfileRecorder.
+ * 
+ * @author Lance Nanek
+ *
+ */
+public class StateCachingGL implements GL10, GL11, GL11Ext {
+	
+	/**
+	 * Wraps every GL a GLSurfaceView creates that supports GL11 and 
+	 * GL11Ext. Others are returned as they are, since this class claims to 
+	 * implement both.
+	 */
+	public static class Wrapper implements GLSurfaceView.GLWrapper {
+		public GL wrap(final GL gl) {
+			if ( gl instanceof GL11 && gl instanceof GL11Ext ) {
+				return new StateCachingGL(gl);
+			}
+			return gl;
+		}
+	}
+	
+	/**
+	 * A vertex array pointer, either into a client side buffer or at an 
+	 * offset into a buffer object.
+	 */
+	private static class Pointer {
+		
+		private boolean mKnown;
+		
+		private int mSize;
+		
+		private int mType;
+		
+		private int mStride;
+		
+		private Buffer mBuffer;
+		
+		private int mOffset;
+		
+		private int mBufferName;
+		
+		/**
+		 * Records the pointer.
+		 * 
+		 * @param buffer Buffer client side array, null for a buffer object
+		 * @param offset int position of the client side array, or offset 
+		 * into the buffer object
+		 * @param bufferName int array buffer object bound, or UNKNOWN
+		 * @return true if the pointer changed and has to be set
+		 */
+		boolean set(final int size, final int type, final int stride, 
+				final Buffer buffer, final int offset, final int bufferName) {
+			if ( mKnown && size == mSize && type == mType && stride == mStride 
+					&& buffer == mBuffer && offset == mOffset 
+					&& bufferName == mBufferName ) {
+				elide();
+				return false;
+			}
+			
+			//The same Buffer could mean something else if the binding isn't 
+			//known, so it can't be compared next time.
+			mKnown = UNKNOWN != bufferName;
+			mSize = size;
+			mType = type;
+			mStride = stride;
+			mBuffer = buffer;
+			mOffset = offset;
+			mBufferName = bufferName;
+			return true;
+		}
+		
+		void forget() {
+			mKnown = false;
+			mBuffer = null;
+		}
+	}
+	
+	private static final int UNKNOWN = -1;
+	
+	private static final int ENABLED = 1;
+	
+	private static final int DISABLED = 0;
+	
+	//Texture units tracked, higher ones are passed straight through.
+	private static final int MAX_TEXTURE_UNITS = 4;
+	
+	//Indexes of tracked capabilities, each texture unit has its own 
+	//GL_TEXTURE_2D.
+	private static final int CAP_BLEND = 0;
+	
+	private static final int CAP_ALPHA_TEST = 1;
+	
+	private static final int CAP_DEPTH_TEST = 2;
+	
+	private static final int CAP_CULL_FACE = 3;
+	
+	private static final int CAP_DITHER = 4;
+	
+	private static final int CAP_LIGHTING = 5;
+	
+	private static final int CAP_SCISSOR_TEST = 6;
+	
+	private static final int CAP_POINT_SPRITE = 7;
+	
+	private static final int CAP_MATRIX_PALETTE = 8;
+	
+	private static final int CAP_TEXTURE_2D = 9;
+	
+	private static final int CAP_COUNT = CAP_TEXTURE_2D + MAX_TEXTURE_UNITS;
+	
+	//Indexes of tracked client states, each client texture unit has its 
+	//own GL_TEXTURE_COORD_ARRAY.
+	private static final int CLIENT_VERTEX_ARRAY = 0;
+	
+	private static final int CLIENT_COLOR_ARRAY = 1;
+	
+	private static final int CLIENT_NORMAL_ARRAY = 2;
+	
+	private static final int CLIENT_TEXTURE_COORD_ARRAY = 3;
+	
+	private static final int CLIENT_STATE_COUNT = 
+		CLIENT_TEXTURE_COORD_ARRAY + MAX_TEXTURE_UNITS;
+	
+	private final GL10 mGL;
+	
+	private final GL11 mGL11;
+	
+	private final GL11Ext mGL11Ext;
+	
+	private final int[] mCaps = new int[CAP_COUNT];
+	
+	private final int[] mClientStates = new int[CLIENT_STATE_COUNT];
+	
+	private final int[] mBoundTextures = new int[MAX_TEXTURE_UNITS];
+	
+	private final Pointer mVertexPointer = new Pointer();
+	
+	private final Pointer mColorPointer = new Pointer();
+	
+	private final Pointer[] mTexCoordPointers = 
+		new Pointer[MAX_TEXTURE_UNITS];
+	
+	private int mActiveTexture;
+	
+	private int mClientActiveTexture;
+	
+	private int mArrayBuffer;
+	
+	private int mElementArrayBuffer;
+	
+	private int mBlendSource;
+	
+	private int mBlendDestination;
+	
+	private int mMatrixMode;
+	
+	/**
+	 * Creates a StateCachingGL instance. The GL's context must be current, 
+	 * the active texture units are read from it.
+	 * 
+	 * @param gl GL implementing GL10, GL11, and GL11Ext
+	 */
+	public StateCachingGL(final GL gl) {
+		mGL = (GL10) gl;
+		mGL11 = (GL11) gl;
+		mGL11Ext = (GL11Ext) gl;
+		for( int i = 0; i < MAX_TEXTURE_UNITS; i++ ) {
+			mTexCoordPointers[i] = new Pointer();
+		}
+		invalidate();
+	}
+	
+	/**
+	 * Forgets all the tracked state, so the next call setting each thing 
+	 * goes through. Needed after anything changes state without going 
+	 * through this wrapper.
+	 */
+	public void invalidate() {
+		for( int i = 0; i < CAP_COUNT; i++ ) {
+			mCaps[i] = UNKNOWN;
+		}
+		for( int i = 0; i < CLIENT_STATE_COUNT; i++ ) {
+			mClientStates[i] = UNKNOWN;
+		}
+		for( int i = 0; i < MAX_TEXTURE_UNITS; i++ ) {
+			mBoundTextures[i] = UNKNOWN;
+			mTexCoordPointers[i].forget();
+		}
+		mVertexPointer.forget();
+		mColorPointer.forget();
+		mBlendSource = UNKNOWN;
+		mBlendDestination = UNKNOWN;
+		mMatrixMode = UNKNOWN;
+		
+		//Most code never picks a texture unit, so without these texture 
+		//binds and texture coordinate pointers could never be tracked.
+		final int[] unit = new int[1];
+		mGL.glGetIntegerv(GL11.GL_ACTIVE_TEXTURE, unit, 0);
+		mActiveTexture = unit[0];
+		mGL.glGetIntegerv(GL11.GL_CLIENT_ACTIVE_TEXTURE, unit, 0);
+		mClientActiveTexture = unit[0];
+		
+		//Pointers are only tracked while the buffer binding is known, and 
+		//the client array methods never bind one themselves.
+		mGL.glGetIntegerv(GL11.GL_ARRAY_BUFFER_BINDING, unit, 0);
+		mArrayBuffer = unit[0];
+		mGL.glGetIntegerv(GL11.GL_ELEMENT_ARRAY_BUFFER_BINDING, unit, 0);
+		mElementArrayBuffer = unit[0];
+	}
+	
+	private static void elide() {
+		ProfileRecorder.sSingleton.count(
+				ProfileRecorder.COUNTER_ELIDED_GL_CALLS, 1);
+	}
+	
+	/**
+	 * Records a capability or client state.
+	 * 
+	 * @param index int into the states, or -1 if it isn't tracked
+	 * @return true if the state changed and has to be set
+	 */
+	private static boolean change(final int[] states, final int index, 
+			final int state) {
+		if ( index < 0 ) {
+			return true;
+		}
+		if ( state == states[index] ) {
+			elide();
+			return false;
+		}
+		states[index] = state;
+		return true;
+	}
+	
+	private int capIndex(final int cap) {
+		switch ( cap ) {
+			case GL_BLEND:
+				return CAP_BLEND;
+			case GL_ALPHA_TEST:
+				return CAP_ALPHA_TEST;
+			case GL_DEPTH_TEST:
+				return CAP_DEPTH_TEST;
+			case GL_CULL_FACE:
+				return CAP_CULL_FACE;
+			case GL_DITHER:
+				return CAP_DITHER;
+			case GL_LIGHTING:
+				return CAP_LIGHTING;
+			case GL_SCISSOR_TEST:
+				return CAP_SCISSOR_TEST;
+			case GL11.GL_POINT_SPRITE_OES:
+				return CAP_POINT_SPRITE;
+			case GL11Ext.GL_MATRIX_PALETTE_OES:
+				return CAP_MATRIX_PALETTE;
+			case GL_TEXTURE_2D:
+				final int unit = mActiveTexture - GL_TEXTURE0;
+				return unit >= 0 && unit < MAX_TEXTURE_UNITS 
+					? CAP_TEXTURE_2D + unit : -1;
+		}
+		return -1;
+	}
+	
+	private int clientStateIndex(final int array) {
+		switch ( array ) {
+			case GL_VERTEX_ARRAY:
+				return CLIENT_VERTEX_ARRAY;
+			case GL_COLOR_ARRAY:
+				return CLIENT_COLOR_ARRAY;
+			case GL_NORMAL_ARRAY:
+				return CLIENT_NORMAL_ARRAY;
+			case GL_TEXTURE_COORD_ARRAY:
+				final int unit = mClientActiveTexture - GL_TEXTURE0;
+				return unit >= 0 && unit < MAX_TEXTURE_UNITS 
+					? CLIENT_TEXTURE_COORD_ARRAY + unit : -1;
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return Pointer for the client active texture unit, or null if it 
+	 * isn't tracked
+	 */
+	private Pointer getTexCoordPointer() {
+		final int unit = mClientActiveTexture - GL_TEXTURE0;
+		return unit >= 0 && unit < MAX_TEXTURE_UNITS 
+			? mTexCoordPointers[unit] : null;
+	}
+	
+	/**
+	 * Deleting a bound texture binds zero in its place.
+	 */
+	private void forgetTexture(final int texture) {
+		for( int i = 0; i < MAX_TEXTURE_UNITS; i++ ) {
+			if ( texture == mBoundTextures[i] ) {
+				mBoundTextures[i] = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Deleting a bound buffer object binds zero in its place, including 
+	 * for the pointers into it.
+	 */
+	private void forgetBuffer(final int buffer) {
+		if ( buffer == mArrayBuffer ) {
+			mArrayBuffer = 0;
+		}
+		if ( buffer == mElementArrayBuffer ) {
+			mElementArrayBuffer = 0;
+		}
+		if ( buffer == mVertexPointer.mBufferName ) {
+			mVertexPointer.forget();
+		}
+		if ( buffer == mColorPointer.mBufferName ) {
+			mColorPointer.forget();
+		}
+		for( int i = 0; i < MAX_TEXTURE_UNITS; i++ ) {
+			if ( buffer == mTexCoordPointers[i].mBufferName ) {
+				mTexCoordPointers[i].forget();
+			}
+		}
+	}
+	
+	public void glActiveTexture(final int texture) {
+		if ( texture == mActiveTexture ) {
+			elide();
+			return;
+		}
+		mActiveTexture = texture;
+		mGL.glActiveTexture(texture);
+	}
+
+	public void glAlphaFunc(final int func, final float ref) {
+		mGL.glAlphaFunc(func, ref);
+	}
+
+	public void glAlphaFuncx(final int func, final int ref) {
+		mGL.glAlphaFuncx(func, ref);
+	}
+
+	public void glBindTexture(final int target, final int texture) {
+		final int unit = mActiveTexture - GL_TEXTURE0;
+		if ( GL_TEXTURE_2D == target && unit >= 0 && unit < MAX_TEXTURE_UNITS ) {
+			if ( texture == mBoundTextures[unit] ) {
+				elide();
+				return;
+			}
+			mBoundTextures[unit] = texture;
+		}
+		mGL.glBindTexture(target, texture);
+	}
+
+	public void glBlendFunc(final int sfactor, final int dfactor) {
+		if ( sfactor == mBlendSource && dfactor == mBlendDestination ) {
+			elide();
+			return;
+		}
+		mBlendSource = sfactor;
+		mBlendDestination = dfactor;
+		mGL.glBlendFunc(sfactor, dfactor);
+	}
+
+	public void glClear(final int mask) {
+		mGL.glClear(mask);
+	}
+
+	public void glClearColor(final float red, final float green,
+			final float blue, final float alpha) {
+		mGL.glClearColor(red, green, blue, alpha);
+	}
+
+	public void glClearColorx(final int red, final int green, final int blue,
+			final int alpha) {
+		mGL.glClearColorx(red, green, blue, alpha);
+	}
+
+	public void glClearDepthf(final float depth) {
+		mGL.glClearDepthf(depth);
+	}
+
+	public void glClearDepthx(final int depth) {
+		mGL.glClearDepthx(depth);
+	}
+
+	public void glClearStencil(final int s) {
+		mGL.glClearStencil(s);
+	}
+
+	public void glClientActiveTexture(final int texture) {
+		if ( texture == mClientActiveTexture ) {
+			elide();
+			return;
+		}
+		mClientActiveTexture = texture;
+		mGL.glClientActiveTexture(texture);
+	}
+
+	public void glColor4f(final float red, final float green,
+			final float blue, final float alpha) {
+		mGL.glColor4f(red, green, blue, alpha);
+	}
+
+	public void glColor4x(final int red, final int green, final int blue,
+			final int alpha) {
+		mGL.glColor4x(red, green, blue, alpha);
+	}
+
+	public void glColorMask(final boolean red, final boolean green,
+			final boolean blue, final boolean alpha) {
+		mGL.glColorMask(red, green, blue, alpha);
+	}
+
+	public void glColorPointer(final int size, final int type,
+			final int stride, final Buffer pointer) {
+		if ( mColorPointer.set(size, type, stride, 
+				pointer, pointer.position(), mArrayBuffer) ) {
+			mGL.glColorPointer(size, type, stride, pointer);
+		}
+	}
+
+	public void glCompressedTexImage2D(final int target, final int level,
+			final int internalformat, final int width, final int height,
+			final int border, final int imageSize, final Buffer data) {
+		mGL.glCompressedTexImage2D(target, level, internalformat, width,
+				height, border, imageSize, data);
+	}
+
+	public void glCompressedTexSubImage2D(final int target, final int level,
+			final int xoffset, final int yoffset, final int width,
+			final int height, final int format, final int imageSize,
+			final Buffer data) {
+		mGL.glCompressedTexSubImage2D(target, level, xoffset, yoffset, width,
+				height, format, imageSize, data);
+	}
+
+	public void glCopyTexImage2D(final int target, final int level,
+			final int internalformat, final int x, final int y,
+			final int width, final int height, final int border) {
+		mGL.glCopyTexImage2D(target, level, internalformat, x, y, width,
+				height, border);
+	}
+
+	public void glCopyTexSubImage2D(final int target, final int level,
+			final int xoffset, final int yoffset, final int x, final int y,
+			final int width, final int height) {
+		mGL.glCopyTexSubImage2D(target, level, xoffset, yoffset, x, y, width,
+				height);
+	}
+
+	public void glCullFace(final int mode) {
+		mGL.glCullFace(mode);
+	}
+
+	public void glDeleteTextures(final int n, final int[] textures,
+			final int offset) {
+		mGL.glDeleteTextures(n, textures, offset);
+		for( int i = 0; i < n; i++ ) {
+			forgetTexture(textures[offset + i]);
+		}
+	}
+
+	public void glDeleteTextures(final int n, final IntBuffer textures) {
+		mGL.glDeleteTextures(n, textures);
+		for( int i = 0; i < n; i++ ) {
+			forgetTexture(textures.get(textures.position() + i));
+		}
+	}
+
+	public void glDepthFunc(final int func) {
+		mGL.glDepthFunc(func);
+	}
+
+	public void glDepthMask(final boolean flag) {
+		mGL.glDepthMask(flag);
+	}
+
+	public void glDepthRangef(final float zNear, final float zFar) {
+		mGL.glDepthRangef(zNear, zFar);
+	}
+
+	public void glDepthRangex(final int zNear, final int zFar) {
+		mGL.glDepthRangex(zNear, zFar);
+	}
+
+	public void glDisable(final int cap) {
+		if ( change(mCaps, capIndex(cap), DISABLED) ) {
+			mGL.glDisable(cap);
+		}
+	}
+
+	public void glDisableClientState(final int array) {
+		if ( change(mClientStates, clientStateIndex(array), DISABLED) ) {
+			mGL.glDisableClientState(array);
+		}
+	}
+
+	public void glDrawArrays(final int mode, final int first, final int count) {
+		mGL.glDrawArrays(mode, first, count);
+	}
+
+	public void glDrawElements(final int mode, final int count,
+			final int type, final Buffer indices) {
+		mGL.glDrawElements(mode, count, type, indices);
+	}
+
+	public void glEnable(final int cap) {
+		if ( change(mCaps, capIndex(cap), ENABLED) ) {
+			mGL.glEnable(cap);
+		}
+	}
+
+	public void glEnableClientState(final int array) {
+		if ( change(mClientStates, clientStateIndex(array), ENABLED) ) {
+			mGL.glEnableClientState(array);
+		}
+	}
+
+	public void glFinish() {
+		mGL.glFinish();
+	}
+
+	public void glFlush() {
+		mGL.glFlush();
+	}
+
+	public void glFogf(final int pname, final float param) {
+		mGL.glFogf(pname, param);
+	}
+
+	public void glFogfv(final int pname, final float[] params,
+			final int offset) {
+		mGL.glFogfv(pname, params, offset);
+	}
+
+	public void glFogfv(final int pname, final FloatBuffer params) {
+		mGL.glFogfv(pname, params);
+	}
+
+	public void glFogx(final int pname, final int param) {
+		mGL.glFogx(pname, param);
+	}
+
+	public void glFogxv(final int pname, final int[] params, final int offset) {
+		mGL.glFogxv(pname, params, offset);
+	}
+
+	public void glFogxv(final int pname, final IntBuffer params) {
+		mGL.glFogxv(pname, params);
+	}
+
+	public void glFrontFace(final int mode) {
+		mGL.glFrontFace(mode);
+	}
+
+	public void glFrustumf(final float left, final float right,
+			final float bottom, final float top, final float zNear,
+			final float zFar) {
+		mGL.glFrustumf(left, right, bottom, top, zNear, zFar);
+	}
+
+	public void glFrustumx(final int left, final int right, final int bottom,
+			final int top, final int zNear, final int zFar) {
+		mGL.glFrustumx(left, right, bottom, top, zNear, zFar);
+	}
+
+	public void glGenTextures(final int n, final int[] textures,
+			final int offset) {
+		mGL.glGenTextures(n, textures, offset);
+	}
+
+	public void glGenTextures(final int n, final IntBuffer textures) {
+		mGL.glGenTextures(n, textures);
+	}
+
+	public int glGetError() {
+		return mGL.glGetError();
+	}
+
+	public void glGetIntegerv(final int pname, final int[] params,
+			final int offset) {
+		mGL.glGetIntegerv(pname, params, offset);
+	}
+
+	public void glGetIntegerv(final int pname, final IntBuffer params) {
+		mGL.glGetIntegerv(pname, params);
+	}
+
+	public String glGetString(final int name) {
+		return mGL.glGetString(name);
+	}
+
+	public void glHint(final int target, final int mode) {
+		mGL.glHint(target, mode);
+	}
+
+	public void glLightModelf(final int pname, final float param) {
+		mGL.glLightModelf(pname, param);
+	}
+
+	public void glLightModelfv(final int pname, final float[] params,
+			final int offset) {
+		mGL.glLightModelfv(pname, params, offset);
+	}
+
+	public void glLightModelfv(final int pname, final FloatBuffer params) {
+		mGL.glLightModelfv(pname, params);
+	}
+
+	public void glLightModelx(final int pname, final int param) {
+		mGL.glLightModelx(pname, param);
+	}
+
+	public void glLightModelxv(final int pname, final int[] params,
+			final int offset) {
+		mGL.glLightModelxv(pname, params, offset);
+	}
+
+	public void glLightModelxv(final int pname, final IntBuffer params) {
+		mGL.glLightModelxv(pname, params);
+	}
+
+	public void glLightf(final int light, final int pname, final float param) {
+		mGL.glLightf(light, pname, param);
+	}
+
+	public void glLightfv(final int light, final int pname,
+			final float[] params, final int offset) {
+		mGL.glLightfv(light, pname, params, offset);
+	}
+
+	public void glLightfv(final int light, final int pname,
+			final FloatBuffer params) {
+		mGL.glLightfv(light, pname, params);
+	}
+
+	public void glLightx(final int light, final int pname, final int param) {
+		mGL.glLightx(light, pname, param);
+	}
+
+	public void glLightxv(final int light, final int pname,
+			final int[] params, final int offset) {
+		mGL.glLightxv(light, pname, params, offset);
+	}
+
+	public void glLightxv(final int light, final int pname,
+			final IntBuffer params) {
+		mGL.glLightxv(light, pname, params);
+	}
+
+	public void glLineWidth(final float width) {
+		mGL.glLineWidth(width);
+	}
+
+	public void glLineWidthx(final int width) {
+		mGL.glLineWidthx(width);
+	}
+
+	public void glLoadIdentity() {
+		mGL.glLoadIdentity();
+	}
+
+	public void glLoadMatrixf(final float[] m, final int offset) {
+		mGL.glLoadMatrixf(m, offset);
+	}
+
+	public void glLoadMatrixf(final FloatBuffer m) {
+		mGL.glLoadMatrixf(m);
+	}
+
+	public void glLoadMatrixx(final int[] m, final int offset) {
+		mGL.glLoadMatrixx(m, offset);
+	}
+
+	public void glLoadMatrixx(final IntBuffer m) {
+		mGL.glLoadMatrixx(m);
+	}
+
+	public void glLogicOp(final int opcode) {
+		mGL.glLogicOp(opcode);
+	}
+
+	public void glMaterialf(final int face, final int pname,
+			final float param) {
+		mGL.glMaterialf(face, pname, param);
+	}
+
+	public void glMaterialfv(final int face, final int pname,
+			final float[] params, final int offset) {
+		mGL.glMaterialfv(face, pname, params, offset);
+	}
+
+	public void glMaterialfv(final int face, final int pname,
+			final FloatBuffer params) {
+		mGL.glMaterialfv(face, pname, params);
+	}
+
+	public void glMaterialx(final int face, final int pname, final int param) {
+		mGL.glMaterialx(face, pname, param);
+	}
+
+	public void glMaterialxv(final int face, final int pname,
+			final int[] params, final int offset) {
+		mGL.glMaterialxv(face, pname, params, offset);
+	}
+
+	public void glMaterialxv(final int face, final int pname,
+			final IntBuffer params) {
+		mGL.glMaterialxv(face, pname, params);
+	}
+
+	public void glMatrixMode(final int mode) {
+		if ( mode == mMatrixMode ) {
+			elide();
+			return;
+		}
+		mMatrixMode = mode;
+		mGL.glMatrixMode(mode);
+	}
+
+	public void glMultMatrixf(final float[] m, final int offset) {
+		mGL.glMultMatrixf(m, offset);
+	}
+
+	public void glMultMatrixf(final FloatBuffer m) {
+		mGL.glMultMatrixf(m);
+	}
+
+	public void glMultMatrixx(final int[] m, final int offset) {
+		mGL.glMultMatrixx(m, offset);
+	}
+
+	public void glMultMatrixx(final IntBuffer m) {
+		mGL.glMultMatrixx(m);
+	}
+
+	public void glMultiTexCoord4f(final int target, final float s,
+			final float t, final float r, final float q) {
+		mGL.glMultiTexCoord4f(target, s, t, r, q);
+	}
+
+	public void glMultiTexCoord4x(final int target, final int s, final int t,
+			final int r, final int q) {
+		mGL.glMultiTexCoord4x(target, s, t, r, q);
+	}
+
+	public void glNormal3f(final float nx, final float ny, final float nz) {
+		mGL.glNormal3f(nx, ny, nz);
+	}
+
+	public void glNormal3x(final int nx, final int ny, final int nz) {
+		mGL.glNormal3x(nx, ny, nz);
+	}
+
+	public void glNormalPointer(final int type, final int stride,
+			final Buffer pointer) {
+		mGL.glNormalPointer(type, stride, pointer);
+	}
+
+	public void glOrthof(final float left, final float right,
+			final float bottom, final float top, final float zNear,
+			final float zFar) {
+		mGL.glOrthof(left, right, bottom, top, zNear, zFar);
+	}
+
+	public void glOrthox(final int left, final int right, final int bottom,
+			final int top, final int zNear, final int zFar) {
+		mGL.glOrthox(left, right, bottom, top, zNear, zFar);
+	}
+
+	public void glPixelStorei(final int pname, final int param) {
+		mGL.glPixelStorei(pname, param);
+	}
+
+	public void glPointSize(final float size) {
+		mGL.glPointSize(size);
+	}
+
+	public void glPointSizex(final int size) {
+		mGL.glPointSizex(size);
+	}
+
+	public void glPolygonOffset(final float factor, final float units) {
+		mGL.glPolygonOffset(factor, units);
+	}
+
+	public void glPolygonOffsetx(final int factor, final int units) {
+		mGL.glPolygonOffsetx(factor, units);
+	}
+
+	public void glPopMatrix() {
+		mGL.glPopMatrix();
+	}
+
+	public void glPushMatrix() {
+		mGL.glPushMatrix();
+	}
+
+	public void glReadPixels(final int x, final int y, final int width,
+			final int height, final int format, final int type,
+			final Buffer pixels) {
+		mGL.glReadPixels(x, y, width, height, format, type, pixels);
+	}
+
+	public void glRotatef(final float angle, final float x, final float y,
+			final float z) {
+		mGL.glRotatef(angle, x, y, z);
+	}
+
+	public void glRotatex(final int angle, final int x, final int y,
+			final int z) {
+		mGL.glRotatex(angle, x, y, z);
+	}
+
+	public void glSampleCoverage(final float value, final boolean invert) {
+		mGL.glSampleCoverage(value, invert);
+	}
+
+	public void glSampleCoveragex(final int value, final boolean invert) {
+		mGL.glSampleCoveragex(value, invert);
+	}
+
+	public void glScalef(final float x, final float y, final float z) {
+		mGL.glScalef(x, y, z);
+	}
+
+	public void glScalex(final int x, final int y, final int z) {
+		mGL.glScalex(x, y, z);
+	}
+
+	public void glScissor(final int x, final int y, final int width,
+			final int height) {
+		mGL.glScissor(x, y, width, height);
+	}
+
+	public void glShadeModel(final int mode) {
+		mGL.glShadeModel(mode);
+	}
+
+	public void glStencilFunc(final int func, final int ref, final int mask) {
+		mGL.glStencilFunc(func, ref, mask);
+	}
+
+	public void glStencilMask(final int mask) {
+		mGL.glStencilMask(mask);
+	}
+
+	public void glStencilOp(final int fail, final int zfail, final int zpass) {
+		mGL.glStencilOp(fail, zfail, zpass);
+	}
+
+	public void glTexCoordPointer(final int size, final int type,
+			final int stride, final Buffer pointer) {
+		final Pointer texCoordPointer = getTexCoordPointer();
+		if ( null == texCoordPointer || texCoordPointer.set(size, type, stride, 
+				pointer, pointer.position(), mArrayBuffer) ) {
+			mGL.glTexCoordPointer(size, type, stride, pointer);
+		}
+	}
+
+	public void glTexEnvf(final int target, final int pname,
+			final float param) {
+		mGL.glTexEnvf(target, pname, param);
+	}
+
+	public void glTexEnvfv(final int target, final int pname,
+			final float[] params, final int offset) {
+		mGL.glTexEnvfv(target, pname, params, offset);
+	}
+
+	public void glTexEnvfv(final int target, final int pname,
+			final FloatBuffer params) {
+		mGL.glTexEnvfv(target, pname, params);
+	}
+
+	public void glTexEnvx(final int target, final int pname, final int param) {
+		mGL.glTexEnvx(target, pname, param);
+	}
+
+	public void glTexEnvxv(final int target, final int pname,
+			final int[] params, final int offset) {
+		mGL.glTexEnvxv(target, pname, params, offset);
+	}
+
+	public void glTexEnvxv(final int target, final int pname,
+			final IntBuffer params) {
+		mGL.glTexEnvxv(target, pname, params);
+	}
+
+	public void glTexImage2D(final int target, final int level,
+			final int internalformat, final int width, final int height,
+			final int border, final int format, final int type,
+			final Buffer pixels) {
+		mGL.glTexImage2D(target, level, internalformat, width, height, border,
+				format, type, pixels);
+	}
+
+	public void glTexParameterf(final int target, final int pname,
+			final float param) {
+		mGL.glTexParameterf(target, pname, param);
+	}
+
+	public void glTexParameterx(final int target, final int pname,
+			final int param) {
+		mGL.glTexParameterx(target, pname, param);
+	}
+
+	public void glTexSubImage2D(final int target, final int level,
+			final int xoffset, final int yoffset, final int width,
+			final int height, final int format, final int type,
+			final Buffer pixels) {
+		mGL.glTexSubImage2D(target, level, xoffset, yoffset, width, height,
+				format, type, pixels);
+	}
+
+	public void glTranslatef(final float x, final float y, final float z) {
+		mGL.glTranslatef(x, y, z);
+	}
+
+	public void glTranslatex(final int x, final int y, final int z) {
+		mGL.glTranslatex(x, y, z);
+	}
+
+	public void glVertexPointer(final int size, final int type,
+			final int stride, final Buffer pointer) {
+		if ( mVertexPointer.set(size, type, stride, 
+				pointer, pointer.position(), mArrayBuffer) ) {
+			mGL.glVertexPointer(size, type, stride, pointer);
+		}
+	}
+
+	public void glViewport(final int x, final int y, final int width,
+			final int height) {
+		mGL.glViewport(x, y, width, height);
+	}
+
+	public void glBindBuffer(final int target, final int buffer) {
+		if ( GL11.GL_ARRAY_BUFFER == target ) {
+			if ( buffer == mArrayBuffer ) {
+				elide();
+				return;
+			}
+			mArrayBuffer = buffer;
+		} else if ( GL11.GL_ELEMENT_ARRAY_BUFFER == target ) {
+			if ( buffer == mElementArrayBuffer ) {
+				elide();
+				return;
+			}
+			mElementArrayBuffer = buffer;
+		}
+		mGL11.glBindBuffer(target, buffer);
+	}
+
+	public void glBufferData(final int target, final int size,
+			final Buffer data, final int usage) {
+		mGL11.glBufferData(target, size, data, usage);
+	}
+
+	public void glBufferSubData(final int target, final int offset,
+			final int size, final Buffer data) {
+		mGL11.glBufferSubData(target, offset, size, data);
+	}
+
+	public void glClipPlanef(final int plane, final float[] equation,
+			final int offset) {
+		mGL11.glClipPlanef(plane, equation, offset);
+	}
+
+	public void glClipPlanef(final int plane, final FloatBuffer equation) {
+		mGL11.glClipPlanef(plane, equation);
+	}
+
+	public void glClipPlanex(final int plane, final int[] equation,
+			final int offset) {
+		mGL11.glClipPlanex(plane, equation, offset);
+	}
+
+	public void glClipPlanex(final int plane, final IntBuffer equation) {
+		mGL11.glClipPlanex(plane, equation);
+	}
+
+	public void glColor4ub(final byte red, final byte green, final byte blue,
+			final byte alpha) {
+		mGL11.glColor4ub(red, green, blue, alpha);
+	}
+
+	public void glColorPointer(final int size, final int type,
+			final int stride, final int offset) {
+		if ( mColorPointer.set(size, type, stride, null, offset, mArrayBuffer) ) {
+			mGL11.glColorPointer(size, type, stride, offset);
+		}
+	}
+
+	public void glDeleteBuffers(final int n, final int[] buffers,
+			final int offset) {
+		mGL11.glDeleteBuffers(n, buffers, offset);
+		for( int i = 0; i < n; i++ ) {
+			forgetBuffer(buffers[offset + i]);
+		}
+	}
+
+	public void glDeleteBuffers(final int n, final IntBuffer buffers) {
+		mGL11.glDeleteBuffers(n, buffers);
+		for( int i = 0; i < n; i++ ) {
+			forgetBuffer(buffers.get(buffers.position() + i));
+		}
+	}
+
+	public void glDrawElements(final int mode, final int count,
+			final int type, final int offset) {
+		mGL11.glDrawElements(mode, count, type, offset);
+	}
+
+	public void glGenBuffers(final int n, final int[] buffers,
+			final int offset) {
+		mGL11.glGenBuffers(n, buffers, offset);
+	}
+
+	public void glGenBuffers(final int n, final IntBuffer buffers) {
+		mGL11.glGenBuffers(n, buffers);
+	}
+
+	public void glGetBooleanv(final int pname, final boolean[] params,
+			final int offset) {
+		mGL11.glGetBooleanv(pname, params, offset);
+	}
+
+	public void glGetBooleanv(final int pname, final IntBuffer params) {
+		mGL11.glGetBooleanv(pname, params);
+	}
+
+	public void glGetBufferParameteriv(final int target, final int pname,
+			final int[] params, final int offset) {
+		mGL11.glGetBufferParameteriv(target, pname, params, offset);
+	}
+
+	public void glGetBufferParameteriv(final int target, final int pname,
+			final IntBuffer params) {
+		mGL11.glGetBufferParameteriv(target, pname, params);
+	}
+
+	public void glGetClipPlanef(final int pname, final float[] eqn,
+			final int offset) {
+		mGL11.glGetClipPlanef(pname, eqn, offset);
+	}
+
+	public void glGetClipPlanef(final int pname, final FloatBuffer eqn) {
+		mGL11.glGetClipPlanef(pname, eqn);
+	}
+
+	public void glGetClipPlanex(final int pname, final int[] eqn,
+			final int offset) {
+		mGL11.glGetClipPlanex(pname, eqn, offset);
+	}
+
+	public void glGetClipPlanex(final int pname, final IntBuffer eqn) {
+		mGL11.glGetClipPlanex(pname, eqn);
+	}
+
+	public void glGetFixedv(final int pname, final int[] params,
+			final int offset) {
+		mGL11.glGetFixedv(pname, params, offset);
+	}
+
+	public void glGetFixedv(final int pname, final IntBuffer params) {
+		mGL11.glGetFixedv(pname, params);
+	}
+
+	public void glGetFloatv(final int pname, final float[] params,
+			final int offset) {
+		mGL11.glGetFloatv(pname, params, offset);
+	}
+
+	public void glGetFloatv(final int pname, final FloatBuffer params) {
+		mGL11.glGetFloatv(pname, params);
+	}
+
+	public void glGetLightfv(final int light, final int pname,
+			final float[] params, final int offset) {
+		mGL11.glGetLightfv(light, pname, params, offset);
+	}
+
+	public void glGetLightfv(final int light, final int pname,
+			final FloatBuffer params) {
+		mGL11.glGetLightfv(light, pname, params);
+	}
+
+	public void glGetLightxv(final int light, final int pname,
+			final int[] params, final int offset) {
+		mGL11.glGetLightxv(light, pname, params, offset);
+	}
+
+	public void glGetLightxv(final int light, final int pname,
+			final IntBuffer params) {
+		mGL11.glGetLightxv(light, pname, params);
+	}
+
+	public void glGetMaterialfv(final int face, final int pname,
+			final float[] params, final int offset) {
+		mGL11.glGetMaterialfv(face, pname, params, offset);
+	}
+
+	public void glGetMaterialfv(final int face, final int pname,
+			final FloatBuffer params) {
+		mGL11.glGetMaterialfv(face, pname, params);
+	}
+
+	public void glGetMaterialxv(final int face, final int pname,
+			final int[] params, final int offset) {
+		mGL11.glGetMaterialxv(face, pname, params, offset);
+	}
+
+	public void glGetMaterialxv(final int face, final int pname,
+			final IntBuffer params) {
+		mGL11.glGetMaterialxv(face, pname, params);
+	}
+
+	public void glGetPointerv(final int pname, final Buffer[] params) {
+		mGL11.glGetPointerv(pname, params);
+	}
+
+	public void glGetTexEnviv(final int env, final int pname,
+			final int[] params, final int offset) {
+		mGL11.glGetTexEnviv(env, pname, params, offset);
+	}
+
+	public void glGetTexEnviv(final int env, final int pname,
+			final IntBuffer params) {
+		mGL11.glGetTexEnviv(env, pname, params);
+	}
+
+	public void glGetTexEnvxv(final int env, final int pname,
+			final int[] params, final int offset) {
+		mGL11.glGetTexEnvxv(env, pname, params, offset);
+	}
+
+	public void glGetTexEnvxv(final int env, final int pname,
+			final IntBuffer params) {
+		mGL11.glGetTexEnvxv(env, pname, params);
+	}
+
+	public void glGetTexParameterfv(final int target, final int pname,
+			final float[] params, final int offset) {
+		mGL11.glGetTexParameterfv(target, pname, params, offset);
+	}
+
+	public void glGetTexParameterfv(final int target, final int pname,
+			final FloatBuffer params) {
+		mGL11.glGetTexParameterfv(target, pname, params);
+	}
+
+	public void glGetTexParameteriv(final int target, final int pname,
+			final int[] params, final int offset) {
+		mGL11.glGetTexParameteriv(target, pname, params, offset);
+	}
+
+	public void glGetTexParameteriv(final int target, final int pname,
+			final IntBuffer params) {
+		mGL11.glGetTexParameteriv(target, pname, params);
+	}
+
+	public void glGetTexParameterxv(final int target, final int pname,
+			final int[] params, final int offset) {
+		mGL11.glGetTexParameterxv(target, pname, params, offset);
+	}
+
+	public void glGetTexParameterxv(final int target, final int pname,
+			final IntBuffer params) {
+		mGL11.glGetTexParameterxv(target, pname, params);
+	}
+
+	public boolean glIsBuffer(final int buffer) {
+		return mGL11.glIsBuffer(buffer);
+	}
+
+	public boolean glIsEnabled(final int cap) {
+		return mGL11.glIsEnabled(cap);
+	}
+
+	public boolean glIsTexture(final int texture) {
+		return mGL11.glIsTexture(texture);
+	}
+
+	public void glNormalPointer(final int type, final int stride,
+			final int offset) {
+		mGL11.glNormalPointer(type, stride, offset);
+	}
+
+	public void glPointParameterf(final int pname, final float param) {
+		mGL11.glPointParameterf(pname, param);
+	}
+
+	public void glPointParameterfv(final int pname, final float[] params,
+			final int offset) {
+		mGL11.glPointParameterfv(pname, params, offset);
+	}
+
+	public void glPointParameterfv(final int pname, final FloatBuffer params) {
+		mGL11.glPointParameterfv(pname, params);
+	}
+
+	public void glPointParameterx(final int pname, final int param) {
+		mGL11.glPointParameterx(pname, param);
+	}
+
+	public void glPointParameterxv(final int pname, final int[] params,
+			final int offset) {
+		mGL11.glPointParameterxv(pname, params, offset);
+	}
+
+	public void glPointParameterxv(final int pname, final IntBuffer params) {
+		mGL11.glPointParameterxv(pname, params);
+	}
+
+	public void glPointSizePointerOES(final int type, final int stride,
+			final Buffer pointer) {
+		mGL11.glPointSizePointerOES(type, stride, pointer);
+	}
+
+	public void glTexCoordPointer(final int size, final int type,
+			final int stride, final int offset) {
+		final Pointer texCoordPointer = getTexCoordPointer();
+		if ( null == texCoordPointer || texCoordPointer.set(size, type, stride, 
+				null, offset, mArrayBuffer) ) {
+			mGL11.glTexCoordPointer(size, type, stride, offset);
+		}
+	}
+
+	public void glTexEnvi(final int target, final int pname, final int param) {
+		mGL11.glTexEnvi(target, pname, param);
+	}
+
+	public void glTexEnviv(final int target, final int pname,
+			final int[] params, final int offset) {
+		mGL11.glTexEnviv(target, pname, params, offset);
+	}
+
+	public void glTexEnviv(final int target, final int pname,
+			final IntBuffer params) {
+		mGL11.glTexEnviv(target, pname, params);
+	}
+
+	public void glTexParameterfv(final int target, final int pname,
+			final float[] params, final int offset) {
+		mGL11.glTexParameterfv(target, pname, params, offset);
+	}
+
+	public void glTexParameterfv(final int target, final int pname,
+			final FloatBuffer params) {
+		mGL11.glTexParameterfv(target, pname, params);
+	}
+
+	public void glTexParameteri(final int target, final int pname,
+			final int param) {
+		mGL11.glTexParameteri(target, pname, param);
+	}
+
+	public void glTexParameteriv(final int target, final int pname,
+			final int[] params, final int offset) {
+		mGL11.glTexParameteriv(target, pname, params, offset);
+	}
+
+	public void glTexParameteriv(final int target, final int pname,
+			final IntBuffer params) {
+		mGL11.glTexParameteriv(target, pname, params);
+	}
+
+	public void glTexParameterxv(final int target, final int pname,
+			final int[] params, final int offset) {
+		mGL11.glTexParameterxv(target, pname, params, offset);
+	}
+
+	public void glTexParameterxv(final int target, final int pname,
+			final IntBuffer params) {
+		mGL11.glTexParameterxv(target, pname, params);
+	}
+
+	public void glVertexPointer(final int size, final int type,
+			final int stride, final int offset) {
+		if ( mVertexPointer.set(size, type, stride, null, offset, mArrayBuffer) ) {
+			mGL11.glVertexPointer(size, type, stride, offset);
+		}
+	}
+
+	public void glCurrentPaletteMatrixOES(final int matrixpaletteindex) {
+		mGL11Ext.glCurrentPaletteMatrixOES(matrixpaletteindex);
+	}
+
+	public void glDrawTexfOES(final float x, final float y, final float z,
+			final float width, final float height) {
+		mGL11Ext.glDrawTexfOES(x, y, z, width, height);
+	}
+
+	public void glDrawTexfvOES(final float[] coords, final int offset) {
+		mGL11Ext.glDrawTexfvOES(coords, offset);
+	}
+
+	public void glDrawTexfvOES(final FloatBuffer coords) {
+		mGL11Ext.glDrawTexfvOES(coords);
+	}
+
+	public void glDrawTexiOES(final int x, final int y, final int z,
+			final int width, final int height) {
+		mGL11Ext.glDrawTexiOES(x, y, z, width, height);
+	}
+
+	public void glDrawTexivOES(final int[] coords, final int offset) {
+		mGL11Ext.glDrawTexivOES(coords, offset);
+	}
+
+	public void glDrawTexivOES(final IntBuffer coords) {
+		mGL11Ext.glDrawTexivOES(coords);
+	}
+
+	public void glDrawTexsOES(final short x, final short y, final short z,
+			final short width, final short height) {
+		mGL11Ext.glDrawTexsOES(x, y, z, width, height);
+	}
+
+	public void glDrawTexsvOES(final short[] coords, final int offset) {
+		mGL11Ext.glDrawTexsvOES(coords, offset);
+	}
+
+	public void glDrawTexsvOES(final ShortBuffer coords) {
+		mGL11Ext.glDrawTexsvOES(coords);
+	}
+
+	public void glDrawTexxOES(final int x, final int y, final int z,
+			final int width, final int height) {
+		mGL11Ext.glDrawTexxOES(x, y, z, width, height);
+	}
+
+	public void glDrawTexxvOES(final int[] coords, final int offset) {
+		mGL11Ext.glDrawTexxvOES(coords, offset);
+	}
+
+	public void glDrawTexxvOES(final IntBuffer coords) {
+		mGL11Ext.glDrawTexxvOES(coords);
+	}
+
+	public void glLoadPaletteFromModelViewMatrixOES() {
+		mGL11Ext.glLoadPaletteFromModelViewMatrixOES();
+	}
+
+	public void glMatrixIndexPointerOES(final int size, final int type,
+			final int stride, final Buffer pointer) {
+		mGL11Ext.glMatrixIndexPointerOES(size, type, stride, pointer);
+	}
+
+	public void glMatrixIndexPointerOES(final int size, final int type,
+			final int stride, final int offset) {
+		mGL11Ext.glMatrixIndexPointerOES(size, type, stride, offset);
+	}
+
+	public void glWeightPointerOES(final int size, final int type,
+			final int stride, final Buffer pointer) {
+		mGL11Ext.glWeightPointerOES(size, type, stride, pointer);
+	}
+
+	public void glWeightPointerOES(final int size, final int type,
+			final int stride, final int offset) {
+		mGL11Ext.glWeightPointerOES(size, type, stride, offset);
+	}
+}
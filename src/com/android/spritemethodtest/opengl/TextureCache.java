@@ -0,0 +1,527 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl;
+
+import static javax.microedition.khronos.opengles.GL10.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+import javax.microedition.khronos.opengles.GL11Ext;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLUtils;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.android.spritemethodtest.PixelFormatPolicy;
+import com.android.spritemethodtest.ProfileRecorder;
+
+/**
+ * Loads textures by resource ID, at most once each, no matter which
+ * sprites ask for them in which order. Every {@link #acquire} has to be
+ * matched by a {@link #release}. Textures nothing holds stay loaded in
+ * case they are wanted again, until the estimated memory of all the loaded
+ * textures goes over the budget. Then the ones released longest ago are
+ * deleted until it fits again, or only held ones are left.
+ * <p>
+ * With a {@link TextureDecoder} set, images are decoded in the background
+ * instead. Their textures start out as a single gray pixel and are filled
+ * in by {@link #uploadDecoded(GL10)} once decoded, under the same names.
+ * <p>
+ * Images are decoded in the smallest format that keeps their alpha, see
+ * {@link PixelFormatPolicy}.
+ * <p>
+ * With a {@link TextureFileCache} set, images decoded once are kept on
+ * local storage and mapped from there afterward, even in later launches.
+ * <p>
+ * With a compression set, the version of each image pre-encoded in that
+ * format is loaded instead, when there is one and the context supports
+ * it, with no decoding at all.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class TextureCache implements GLResources.Resource {
+
+	private static class Entry {
+
+		final int resourceId;
+
+		final int textureName;
+
+		int bytes;
+
+		//Waiting for the decoder, still showing the placeholder.
+		boolean pending;
+
+		//SystemClock.uptimeMillis() when loading started.
+		long loadStart;
+
+		int references;
+
+		//Value of mClock when last acquired or released.
+		long lastUsed;
+
+		Entry(final int resourceId, final int textureName, final int bytes) {
+			this.resourceId = resourceId;
+			this.textureName = textureName;
+			this.bytes = bytes;
+		}
+	}
+
+	private final Context mContext;
+
+	//Only used from the rendering thread, the decoder has its own.
+	private final BitmapFactory.Options mBitmapOptions =
+		new BitmapFactory.Options();
+
+	private final SparseArray<Entry> mEntries = new SparseArray<Entry>();
+
+	// Pre-allocated arrays to use at runtime so that allocation during the
+	// test can be avoided.
+	private final int[] mTextureNameWorkspace = new int[1];
+
+	private final int[] mCropWorkspace = new int[4];
+
+	//One gray RGB 565 pixel shown until the real image is decoded.
+	private final ShortBuffer mPlaceholder = ByteBuffer.allocateDirect(2)
+		.order(ByteOrder.nativeOrder()).asShortBuffer().put(0, (short) 0x8410);
+
+	private TextureDecoder mDecoder;
+
+	private TextureFileCache mFileCache;
+
+	private int mCompression = CompressedTexture.COMPRESSION_NONE;
+
+	private int mPending;
+
+	private long mBudgetBytes;
+
+	private long mResidentBytes;
+
+	private long mClock;
+
+	private int mLoads;
+
+	private int mEvictions;
+
+	/**
+	 * Creates a TextureCache instance.
+	 *
+	 * @param context Context to load resources from
+	 * @param budgetBytes long estimated texture memory to stay under
+	 */
+	public TextureCache(final Context context, final long budgetBytes) {
+		mContext = context;
+		mBudgetBytes = budgetBytes;
+	}
+
+	public void setBudgetBytes(final GL10 gl, final long budgetBytes) {
+		mBudgetBytes = budgetBytes;
+		trim(gl);
+	}
+
+	/**
+	 * @param compression int CompressedTexture.COMPRESSION_ constant for
+	 * the format to load images in from now on
+	 */
+	public void setCompression(final int compression) {
+		mCompression = compression;
+	}
+
+	/**
+	 * @param decoder TextureDecoder to decode images with from now on, or
+	 * null to decode them on the calling thread during
+	 * {@link #acquire(GL10, int)}
+	 */
+	public void setDecoder(final TextureDecoder decoder) {
+		mDecoder = decoder;
+	}
+
+	/**
+	 * @param fileCache TextureFileCache to map images from and keep newly
+	 * decoded ones in, or null to decode every time
+	 */
+	public void setFileCache(final TextureFileCache fileCache) {
+		mFileCache = fileCache;
+	}
+
+	/**
+	 * Gets the texture for a resource, loading it if it isn't already, and
+	 * holds it until {@link #release(GL10, int)}.
+	 *
+	 * @param gl GL10 context
+	 * @param resourceId int image resource
+	 * @return int texture name
+	 */
+	public int acquire(final GL10 gl, final int resourceId) {
+		Entry entry = mEntries.get(resourceId);
+		if ( null == entry ) {
+			entry = load(gl, resourceId);
+			mEntries.put(resourceId, entry);
+			mResidentBytes += entry.bytes;
+			mLoads++;
+		}
+		entry.references++;
+		entry.lastUsed = ++mClock;
+		trim(gl);
+		return entry.textureName;
+	}
+
+	/**
+	 * Lets go of a texture from {@link #acquire(GL10, int)}. It stays
+	 * loaded unless that puts the cache over budget.
+	 *
+	 * @param gl GL10 context
+	 * @param resourceId int image resource
+	 */
+	public void release(final GL10 gl, final int resourceId) {
+		final Entry entry = mEntries.get(resourceId);
+		if ( null == entry || 0 == entry.references ) {
+			throw new IllegalStateException(
+					"Released a texture that wasn't acquired: " + resourceId);
+		}
+		entry.references--;
+		entry.lastUsed = ++mClock;
+		trim(gl);
+	}
+
+	/**
+	 * Deletes textures nothing holds, least recently used first, until
+	 * the cache is within budget.
+	 */
+	private void trim(final GL10 gl) {
+		while ( mResidentBytes > mBudgetBytes ) {
+			Entry oldest = null;
+			for( int i = 0; i < mEntries.size(); i++ ) {
+				final Entry entry = mEntries.valueAt(i);
+				if ( 0 != entry.references ) {
+					continue;
+				}
+				if ( null == oldest || entry.lastUsed < oldest.lastUsed ) {
+					oldest = entry;
+				}
+			}
+			if ( null == oldest ) {
+				return;
+			}
+			delete(gl, oldest);
+			mEvictions++;
+		}
+	}
+
+	private void delete(final GL10 gl, final Entry entry) {
+		mTextureNameWorkspace[0] = entry.textureName;
+		gl.glDeleteTextures(1, mTextureNameWorkspace, 0);
+		mEntries.delete(entry.resourceId);
+		mResidentBytes -= entry.bytes;
+		if ( entry.pending ) {
+			//Its image is dropped when it comes out of the decoder.
+			mPending--;
+		}
+	}
+
+	/**
+	 * Uploads whatever images the decoder has finished into the textures
+	 * waiting for them. Call from the rendering thread, every frame while
+	 * {@link #isLoading()}.
+	 *
+	 * @param gl GL10 context
+	 * @return boolean true if any texture was filled in
+	 */
+	public boolean uploadDecoded(final GL10 gl) {
+		if ( null == mDecoder ) {
+			return false;
+		}
+
+		boolean uploaded = false;
+		TextureDecoder.Decoded decoded;
+		while ( null != (decoded = mDecoder.poll()) ) {
+			final Entry entry = (Entry) decoded.tag;
+			//Deleted or lost with the context while it was being decoded.
+			if ( entry != mEntries.get(decoded.resourceId) || !entry.pending ) {
+				if ( null != decoded.bitmap ) {
+					decoded.bitmap.recycle();
+				}
+				continue;
+			}
+
+			entry.pending = false;
+			mPending--;
+			if ( null == decoded.bitmap && null == decoded.pixels ) {
+				Log.e("SpriteMethodTest",
+						"Couldn't decode texture: " + decoded.resourceId);
+				continue;
+			}
+			gl.glBindTexture(GL_TEXTURE_2D, entry.textureName);
+			mResidentBytes -= entry.bytes;
+			entry.bytes = null != decoded.pixels
+				? upload(gl, entry.resourceId, decoded.pixels, entry.loadStart)
+				: upload(gl, entry.resourceId, decoded.bitmap, entry.loadStart);
+			mResidentBytes += entry.bytes;
+			uploaded = true;
+		}
+		if ( uploaded ) {
+			trim(gl);
+		}
+		return uploaded;
+	}
+
+	/**
+	 * @return boolean true if any texture is still waiting on the decoder
+	 */
+	public boolean isLoading() {
+		return mPending > 0;
+	}
+
+	/**
+	 * Deletes every texture, held or not.
+	 *
+	 * @param gl GL10 context
+	 */
+	public void deleteAll(final GL10 gl) {
+		while ( mEntries.size() > 0 ) {
+			delete(gl, mEntries.valueAt(0));
+		}
+	}
+
+	/**
+	 * Forgets every texture without deleting them, for when the OpenGL
+	 * context was lost and took them with it. Anything holding textures
+	 * has to acquire them again.
+	 */
+	public void invalidate() {
+		mEntries.clear();
+		mResidentBytes = 0;
+		mPending = 0;
+	}
+
+	/**
+	 * @return long estimated bytes of all the loaded textures
+	 */
+	public long getResidentBytes() {
+		return mResidentBytes;
+	}
+
+	/**
+	 * @return int textures loaded, counting ones loaded again after being
+	 * evicted or lost
+	 */
+	public int getLoads() {
+		return mLoads;
+	}
+
+	/**
+	 * @return int textures deleted to stay within budget
+	 */
+	public int getEvictions() {
+		return mEvictions;
+	}
+
+	/**
+	 * Loads a bitmap into OpenGL and sets up the common parameters for
+	 * 2D texture maps.
+	 */
+	private Entry load(final GL10 gl, final int resourceId) {
+		final long loadStart = SystemClock.uptimeMillis();
+		gl.glGenTextures(1, mTextureNameWorkspace, 0);
+
+		final int textureName = mTextureNameWorkspace[0];
+		gl.glBindTexture(GL_TEXTURE_2D, textureName);
+
+		gl.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+		gl.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+
+		gl.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+		gl.glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+
+		gl.glTexEnvf(GL_TEXTURE_ENV, GL_TEXTURE_ENV_MODE, GL_REPLACE);
+
+		final CompressedTexture compressed = loadCompressed(gl, resourceId);
+		if ( null != compressed ) {
+			final int bytes = compressed.data.capacity();
+			gl.glCompressedTexImage2D(GL_TEXTURE_2D, 0,
+					compressed.internalFormat, compressed.width,
+					compressed.height, 0, bytes, compressed.data);
+			setCropRect(gl, compressed.width, compressed.height);
+			checkError(gl);
+			record(compressed.name, compressed.getFormatName(), bytes,
+					loadStart, false);
+			return new Entry(resourceId, textureName, bytes);
+		}
+
+		//Mapping is quick enough that it isn't worth a trip to the decoder.
+		if ( null != mFileCache ) {
+			final TextureFileCache.Pixels pixels = mFileCache.map(resourceId);
+			if ( null != pixels ) {
+				return new Entry(resourceId, textureName,
+						upload(gl, resourceId, pixels, loadStart));
+			}
+		}
+
+		if ( null != mDecoder ) {
+			final Entry entry = new Entry(resourceId, textureName,
+					PixelFormatPolicy.getBytesPerPixel(Bitmap.Config.RGB_565));
+			entry.loadStart = loadStart;
+			gl.glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB, 1, 1, 0, GL_RGB,
+					GL_UNSIGNED_SHORT_5_6_5, mPlaceholder);
+			setCropRect(gl, 1, 1);
+			entry.pending = true;
+			mPending++;
+			mDecoder.decode(resourceId, entry);
+			return entry;
+		}
+
+		final Bitmap bitmap = PixelFormatPolicy.sSingleton.decode(
+				mContext.getResources(), resourceId, mBitmapOptions);
+		if ( null != mFileCache ) {
+			final TextureFileCache.Pixels pixels =
+				mFileCache.store(resourceId, bitmap);
+			if ( null != pixels ) {
+				bitmap.recycle();
+				return new Entry(resourceId, textureName,
+						upload(gl, resourceId, pixels, loadStart));
+			}
+		}
+		return new Entry(resourceId, textureName,
+				upload(gl, resourceId, bitmap, loadStart));
+	}
+
+	/**
+	 * Reads the version of an image encoded in the chosen compression, if
+	 * there is one the context supports. The fixed function pipeline can't
+	 * use the separate alpha of ETC1 images that aren't opaque, so those
+	 * fall back to their paletted version.
+	 *
+	 * @return CompressedTexture or null to load the original image
+	 */
+	private CompressedTexture loadCompressed(final GL10 gl,
+			final int resourceId) {
+		if ( CompressedTexture.COMPRESSION_NONE == mCompression ) {
+			return null;
+		}
+
+		final Resources resources = mContext.getResources();
+		int encoded = 0;
+		int format = CompressedTexture.GL_ETC1_RGB8_OES;
+		if ( CompressedTexture.COMPRESSION_ETC1 == mCompression
+				&& 0 == CompressedTexture.findResource(resources, resourceId,
+						CompressedTexture.SUFFIX_ALPHA_ETC1) ) {
+			encoded = CompressedTexture.findResource(resources, resourceId,
+					CompressedTexture.SUFFIX_ETC1);
+		}
+		if ( 0 == encoded ) {
+			encoded = CompressedTexture.findResource(resources, resourceId,
+					CompressedTexture.SUFFIX_PALETTE8);
+			format = GL_PALETTE8_RGBA8_OES;
+		}
+		if ( 0 == encoded || !CompressedTexture.isSupported(
+				gl.glGetString(GL_EXTENSIONS), format, true) ) {
+			return null;
+		}
+
+		try {
+			return CompressedTexture.load(resources, encoded);
+		} catch (IOException e) {
+			Log.e("SpriteMethodTest", "Couldn't read compressed texture", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Fills in the bound texture with a bitmap from the PixelFormatPolicy
+	 * and recycles it.
+	 *
+	 * @return int estimated bytes of the texture
+	 */
+	private int upload(final GL10 gl, final int resourceId,
+			final Bitmap bitmap, final long loadStart) {
+		final int width = bitmap.getWidth();
+		final int height = bitmap.getHeight();
+		final int alphaClass =
+			PixelFormatPolicy.sSingleton.getAlphaClass(resourceId);
+		if ( PixelFormatPolicy.isRgba5551(alphaClass, bitmap) ) {
+			gl.glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0,
+					GL_RGBA, GL_UNSIGNED_SHORT_5_5_5_1,
+					PixelFormatPolicy.toRgba5551(bitmap));
+		} else {
+			GLUtils.texImage2D(GL_TEXTURE_2D, 0, bitmap, 0);
+		}
+		setCropRect(gl, width, height);
+
+		final int bytes = width * height
+			* PixelFormatPolicy.getBytesPerPixel(alphaClass, bitmap);
+		final String format =
+			PixelFormatPolicy.getFormatName(alphaClass, bitmap);
+		bitmap.recycle();
+
+		checkError(gl);
+		record(mContext.getResources().getResourceEntryName(resourceId),
+				format, bytes, loadStart, false);
+		return bytes;
+	}
+
+	/**
+	 * Fills in the bound texture with pixels from the TextureFileCache.
+	 *
+	 * @return int bytes of the texture
+	 */
+	private int upload(final GL10 gl, final int resourceId,
+			final TextureFileCache.Pixels pixels, final long loadStart) {
+		gl.glTexImage2D(GL_TEXTURE_2D, 0, pixels.format, pixels.width,
+				pixels.height, 0, pixels.format, pixels.type, pixels.data);
+		setCropRect(gl, pixels.width, pixels.height);
+
+		final int bytes = pixels.data.capacity();
+		checkError(gl);
+		record(mContext.getResources().getResourceEntryName(resourceId),
+				pixels.getFormatName(), bytes, loadStart, pixels.mapped);
+		return bytes;
+	}
+
+	private void checkError(final GL10 gl) {
+		final int error = gl.glGetError();
+		if ( error != GL_NO_ERROR ) {
+			Log.e("SpriteMethodTest", "Texture Load GLError: " + error);
+		}
+	}
+
+	private static void record(final String name, final String format,
+			final int bytes, final long loadStart, final boolean cached) {
+		ProfileRecorder.sSingleton.recordTexture(name, format, bytes,
+				SystemClock.uptimeMillis() - loadStart, cached);
+	}
+
+	//Lets the draw texture extension draw the whole image.
+	private void setCropRect(final GL10 gl, final int width, final int height) {
+		mCropWorkspace[0] = 0;
+		mCropWorkspace[1] = height;
+		mCropWorkspace[2] = width;
+		mCropWorkspace[3] = -height;
+		((GL11) gl).glTexParameteriv(GL_TEXTURE_2D,
+				GL11Ext.GL_TEXTURE_CROP_RECT_OES, mCropWorkspace, 0);
+	}
+}
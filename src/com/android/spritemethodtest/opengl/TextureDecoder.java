@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.android.spritemethodtest.PixelFormatPolicy;
+
+/**
+ * Decodes image resources on a fixed number of worker threads, so several
+ * can be decoded at once without holding up the rendering thread. Decoded
+ * bitmaps are queued for the rendering thread to pick up with
+ * {@link #poll()} and upload whenever it gets to them. Each is decoded in
+ * the format the {@link PixelFormatPolicy} picks for it.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class TextureDecoder {
+
+	/**
+	 * A decoded image waiting to be uploaded.
+	 */
+	public static class Decoded {
+
+		public final int resourceId;
+
+		//Whatever was passed to decode along with the resource.
+		public final Object tag;
+
+		//Null if the resource couldn't be decoded or is in pixels instead.
+		public final Bitmap bitmap;
+
+		//Converted for the TextureFileCache, if there is one, or null.
+		public final TextureFileCache.Pixels pixels;
+
+		Decoded(final int resourceId, final Object tag, final Bitmap bitmap,
+				final TextureFileCache.Pixels pixels) {
+			this.resourceId = resourceId;
+			this.tag = tag;
+			this.bitmap = bitmap;
+			this.pixels = pixels;
+		}
+	}
+
+	//Decoding is mostly memory bound, so more threads stop helping quickly.
+	private static final int MAX_THREADS = 4;
+
+	private final Resources mResources;
+
+	private final ExecutorService mExecutor;
+
+	private final ConcurrentLinkedQueue<Decoded> mDecoded =
+		new ConcurrentLinkedQueue<Decoded>();
+
+	private volatile TextureFileCache mFileCache;
+
+	/**
+	 * Creates a TextureDecoder instance and its worker threads.
+	 *
+	 * @param resources Resources to decode from
+	 * @param threadCount int worker threads
+	 */
+	public TextureDecoder(final Resources resources, final int threadCount) {
+		mResources = resources;
+		mExecutor = Executors.newFixedThreadPool(threadCount,
+				new ThreadFactory() {
+			private int mCreated;
+
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread =
+					new Thread(runnable, "TextureDecoder" + mCreated++);
+				//Don't keep the process alive if shutdown is never called.
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * @return int one thread per core, up to a limit
+	 */
+	public static int getDefaultThreadCount() {
+		return Math.min(Runtime.getRuntime().availableProcessors(),
+				MAX_THREADS);
+	}
+
+	/**
+	 * @param fileCache TextureFileCache the worker threads write decoded
+	 * images to, or null
+	 */
+	public void setFileCache(final TextureFileCache fileCache) {
+		mFileCache = fileCache;
+	}
+
+	/**
+	 * Starts decoding a resource on a worker thread.
+	 * The image is also written to the TextureFileCache, if there is one.
+	 * A result is always queued, with neither a bitmap nor pixels if
+	 * anything went wrong, so callers can count on hearing back.
+	 *
+	 * @param resourceId int image resource
+	 * @param tag Object handed back with the result
+	 */
+	public void decode(final int resourceId, final Object tag) {
+		mExecutor.execute(new Runnable() {
+			public void run() {
+				Decoded decoded;
+				try {
+					decoded = decodeNow(resourceId, tag);
+				} catch (Throwable t) {
+					Log.w("SpriteMethodTest", "Couldn't decode texture", t);
+					decoded = new Decoded(resourceId, tag, null, null);
+				}
+				mDecoded.add(decoded);
+			}
+		});
+	}
+
+	private Decoded decodeNow(final int resourceId, final Object tag) {
+		final Bitmap bitmap = load(resourceId);
+		final TextureFileCache fileCache = mFileCache;
+		if ( null == fileCache || null == bitmap ) {
+			return new Decoded(resourceId, tag, bitmap, null);
+		}
+		final TextureFileCache.Pixels pixels =
+			fileCache.store(resourceId, bitmap);
+		if ( null == pixels ) {
+			return new Decoded(resourceId, tag, bitmap, null);
+		}
+		bitmap.recycle();
+		return new Decoded(resourceId, tag, null, pixels);
+	}
+
+	private Bitmap load(final int resourceId) {
+		//Each decode has its own options, since the decoder writes to them.
+		return PixelFormatPolicy.sSingleton.decode(mResources, resourceId,
+				new BitmapFactory.Options());
+	}
+
+	/**
+	 * @return Decoded the next decoded image, or null if none are ready
+	 */
+	public Decoded poll() {
+		return mDecoded.poll();
+	}
+
+	/**
+	 * Stops the worker threads and frees any decoded images no one picked
+	 * up. This instance must not be used afterward.
+	 */
+	public void shutdown() {
+		mExecutor.shutdownNow();
+		Decoded decoded;
+		while ( null != (decoded = mDecoded.poll()) ) {
+			if ( null != decoded.bitmap ) {
+				decoded.bitmap.recycle();
+			}
+		}
+	}
+}
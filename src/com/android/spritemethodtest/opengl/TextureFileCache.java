@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl;
+
+import static javax.microedition.khronos.opengles.GL10.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.android.spritemethodtest.PixelFormatPolicy;
+
+/**
+ * Keeps decoded images on local storage, already in the format they are
+ * uploaded in, so later launches don't have to inflate the same PNG
+ * resources again. Cached images are memory mapped and the mapping is
+ * handed straight to glTexImage2D, without decoding or copying them onto
+ * the Java heap.
+ * <p>
+ * Files are named for the resource ID and the version of the application,
+ * which includes when the APK was installed, since resource IDs can change
+ * from one build to the next. Files from other versions are deleted.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class TextureFileCache {
+
+	/**
+	 * Pixel data ready for glTexImage2D.
+	 */
+	public static class Pixels {
+
+		public final int width;
+
+		public final int height;
+
+		//Used as both the internal format and the format.
+		public final int format;
+
+		public final int type;
+
+		public final ByteBuffer data;
+
+		//Mapped from a file rather than just decoded.
+		public final boolean mapped;
+
+		Pixels(final int width, final int height, final int format,
+				final int type, final ByteBuffer data, final boolean mapped) {
+			this.width = width;
+			this.height = height;
+			this.format = format;
+			this.type = type;
+			this.data = data;
+			this.mapped = mapped;
+		}
+
+		/**
+		 * @return String short name of the format for the results
+		 */
+		public String getFormatName() {
+			switch ( type ) {
+				case GL_UNSIGNED_SHORT_5_6_5:
+					return "RGB_565";
+				case GL_UNSIGNED_SHORT_5_5_5_1:
+					return "RGBA_5551";
+				default:
+					return GL_RGB == format ? "RGB_888" : "RGBA_8888";
+			}
+		}
+	}
+
+	private static final String DIRECTORY = "textures";
+
+	private static final String SUFFIX = ".tex";
+
+	//"TEX1"
+	private static final int MAGIC = 0x54455831;
+
+	//Magic, width, height, format and type ints in native order.
+	private static final int HEADER_BYTES = 5 * 4;
+
+	private final File mDirectory;
+
+	private final String mVersion;
+
+	/**
+	 * Creates a TextureFileCache instance and deletes files left over from
+	 * other versions.
+	 *
+	 * @param context Context to get the cache directory and version from
+	 */
+	public TextureFileCache(final Context context) {
+		mDirectory = new File(context.getCacheDir(), DIRECTORY);
+		mVersion = getVersion(context);
+		mDirectory.mkdirs();
+
+		final String current = "_" + mVersion + SUFFIX;
+		final File[] files = mDirectory.listFiles();
+		if ( null != files ) {
+			for( final File file : files ) {
+				if ( !file.getName().endsWith(current) ) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	private static String getVersion(final Context context) {
+		int versionCode = 0;
+		try {
+			versionCode = context.getPackageManager().getPackageInfo(
+					context.getPackageName(), 0).versionCode;
+		} catch (PackageManager.NameNotFoundException e) {
+			Log.w("SpriteMethodTest", "Couldn't get version", e);
+		}
+		final long installed =
+			new File(context.getPackageCodePath()).lastModified();
+		return versionCode + "_" + Long.toHexString(installed);
+	}
+
+	private File getFile(final int resourceId) {
+		return new File(mDirectory,
+				Integer.toHexString(resourceId) + "_" + mVersion + SUFFIX);
+	}
+
+	/**
+	 * Maps a cached image. The mapping stays valid after this returns,
+	 * until the buffer is garbage collected.
+	 *
+	 * @param resourceId int image resource
+	 * @return Pixels mapped, or null if it isn't cached yet
+	 */
+	public Pixels map(final int resourceId) {
+		final File file = getFile(resourceId);
+		if ( !file.exists() ) {
+			return null;
+		}
+
+		try {
+			final RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				final FileChannel channel = in.getChannel();
+				final ByteBuffer mapped = channel.map(
+						FileChannel.MapMode.READ_ONLY, 0, channel.size())
+						.order(ByteOrder.nativeOrder());
+				final int magic = mapped.getInt();
+				final int width = mapped.getInt();
+				final int height = mapped.getInt();
+				final int format = mapped.getInt();
+				final int type = mapped.getInt();
+				if ( MAGIC != magic || mapped.remaining()
+						!= width * height * getBytesPerPixel(format, type) ) {
+					throw new IOException("Corrupt texture file: " + file);
+				}
+				return new Pixels(width, height, format, type,
+						mapped.slice(), true);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			Log.w("SpriteMethodTest", "Couldn't map texture file", e);
+			file.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Converts a decoded image to the pixel data it is uploaded as and
+	 * writes that to storage for next time. Safe to call from any thread.
+	 *
+	 * @param resourceId int image resource
+	 * @param bitmap Bitmap from the PixelFormatPolicy, not recycled
+	 * @return Pixels to upload now, or null if the bitmap's config can't
+	 * be stored and has to be uploaded as is
+	 */
+	public Pixels store(final int resourceId, final Bitmap bitmap) {
+		final Pixels pixels = toPixels(bitmap,
+				PixelFormatPolicy.sSingleton.getAlphaClass(resourceId));
+		if ( null == pixels ) {
+			return null;
+		}
+
+		//Written under another name first, so a file that exists is whole.
+		final File file = getFile(resourceId);
+		final File partial = new File(file.getPath() + "."
+				+ Thread.currentThread().getId());
+		try {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+				.order(ByteOrder.nativeOrder());
+			header.putInt(MAGIC).putInt(pixels.width).putInt(pixels.height)
+				.putInt(pixels.format).putInt(pixels.type);
+			header.flip();
+
+			final FileOutputStream out = new FileOutputStream(partial);
+			try {
+				final FileChannel channel = out.getChannel();
+				channel.write(header);
+				channel.write(pixels.data.duplicate());
+			} finally {
+				out.close();
+			}
+			if ( !partial.renameTo(file) ) {
+				throw new IOException("Couldn't rename " + partial);
+			}
+		} catch (IOException e) {
+			Log.w("SpriteMethodTest", "Couldn't write texture file", e);
+			partial.delete();
+		}
+		return pixels;
+	}
+
+	private static Pixels toPixels(final Bitmap bitmap, final int alphaClass) {
+		final int width = bitmap.getWidth();
+		final int height = bitmap.getHeight();
+		if ( PixelFormatPolicy.isRgba5551(alphaClass, bitmap) ) {
+			return new Pixels(width, height, GL_RGBA, GL_UNSIGNED_SHORT_5_5_5_1,
+					PixelFormatPolicy.toRgba5551(bitmap), false);
+		}
+
+		final Bitmap.Config config = bitmap.getConfig();
+		final int format;
+		final int type;
+		if ( Bitmap.Config.RGB_565 == config ) {
+			format = GL_RGB;
+			type = GL_UNSIGNED_SHORT_5_6_5;
+		} else if ( Bitmap.Config.ARGB_8888 == config ) {
+			//Already RGBA byte order in memory, as GLUtils uploads it.
+			format = GL_RGBA;
+			type = GL_UNSIGNED_BYTE;
+		} else {
+			return null;
+		}
+		final ByteBuffer data = ByteBuffer.allocateDirect(
+				width * height * getBytesPerPixel(format, type))
+				.order(ByteOrder.nativeOrder());
+		bitmap.copyPixelsToBuffer(data);
+		data.position(0);
+		return new Pixels(width, height, format, type, data, false);
+	}
+
+	private static int getBytesPerPixel(final int format, final int type) {
+		if ( GL_UNSIGNED_BYTE != type ) {
+			return 2;
+		}
+		return GL_RGB == format ? 3 : 4;
+	}
+}
@@ -24,20 +24,19 @@ import java.nio.ShortBuffer;
 
 /**
  * Utility methods for working with graphics buffers containing quads made 
- * out of non-striped triangle pairs. Vertexes are reused via indexes and 
+ * out of triangle pairs. Normally vertexes are reused via indexes and 
  * drawn using the OpenGL triangles draw mode. 
+ * <p>
+ * Reusing vertexes by indices is recommended by ImgTec over triangle strips 
+ * for best performance using their graphics solutions. Qualcomm, however, 
+ * recommends using triangle strips and connecting quads that are separate 
+ * from each other using degenerate triangles, which are invisible. So strip 
+ * indices are available as well, along with expanding quads into six 
+ * vertexes each for drawing without indices at all.
  *
  * @author Lance Nanek
  */
 public class BufferUtil {
-	/* TODO This method of reusing vertexes by indices is recommended by ImgTec 
-	 * over triangle strips for best performance using their graphics solutions.
-	 * Qualcomm, however, recommends using triangle strips and connecting quads
-	 * that are separate from each other using colinear triangles, which are 
-	 * invisible. It may be worth supporting both methods in the future, or 
-	 * switching over to the Qualcomm recommended method if those phones need 
-	 * more of a performance boost.
-	 */
 
 	/* TODO investigate using 2 vertex coordinates or 4 instead of 3 where 
 	 * possible. The former uses less memory and is less data to process, 
@@ -66,6 +65,30 @@ public class BufferUtil {
     
     //2 triangles in non-strip mode require 6 vertexes.
 	public static final int INDICES_PER_QUAD = 6;
+	
+	//A strip repeats the last corner of a quad and the first of the next 
+	//to join them, so the last quad drawn doesn't need these two.
+	public static final int STRIP_JOIN_INDICES = 2;
+	
+	//2 triangles drawn without indices repeat the two shared corners.
+	public static final int VERTS_PER_ARRAY_QUAD = 6;
+	
+	//Fixed and float components are the same size, so this holds for both.
+	public static final int BYTES_PER_VERT = 
+		(DIMS_PER_VERT + TEX_COORDS_PER_VERT) * BYTES_PER_INT;
+	
+	//Unsigned 16 bit indices can only refer to this many vertexes.
+	public static final int VERTS_PER_SEGMENT = 1 << 16;
+	
+	public static final int QUADS_PER_SEGMENT = 
+		VERTS_PER_SEGMENT / VERTS_PER_QUAD;
+	
+	public static final int INDICES_PER_SEGMENT = 
+		QUADS_PER_SEGMENT * INDICES_PER_QUAD;
+	
+	private static ShortBuffer sSharedIndices;
+	
+	private static ShortBuffer sSharedStripIndices;
     
     public static final int toDims(final int verts) {
     	return verts * DIMS_PER_VERT;
@@ -83,6 +106,27 @@ public class BufferUtil {
     	return verts * INDICES_PER_QUAD / VERTS_PER_QUAD;
     }
     
+    public static final int toArrayVerts(final int verts) {
+    	return verts / VERTS_PER_QUAD * VERTS_PER_ARRAY_QUAD;
+    }
+    
+	/**
+	 * Picks a new capacity for something that has to hold at least the 
+	 * needed amount. Doubling keeps the number of reallocations and copies 
+	 * logarithmic while the amount needed ramps up.
+	 * 
+	 * @param capacity int current capacity
+	 * @param needed int minimum new capacity
+	 * @return int capacity doubled until it is at least the amount needed
+	 */
+	public static final int growCapacity(final int capacity, final int needed) {
+		int grown = Math.max(capacity, 1);
+		while ( grown < needed ) {
+			grown *= 2;
+		}
+		return grown;
+	}
+	
 	public static final ByteBuffer createDirectByteBuffer(final int capacity) {
 		return ByteBuffer
     		.allocateDirect(capacity)
@@ -153,6 +197,102 @@ public class BufferUtil {
 		return created;
 	}	
 
+	/**
+	 * Gets indices for a full segment of quads. Every segment uses the same 
+	 * indices, with the vertex pointers moved to the start of the segment, 
+	 * so they are generated once and shared by all the buffers. Callers 
+	 * change the position, so it should be set before each use.
+	 * 
+	 * @return ShortBuffer holding {@link #INDICES_PER_SEGMENT} indices
+	 */
+	public static final synchronized ShortBuffer getSharedIndices() {
+		if ( null == sSharedIndices ) {
+			sSharedIndices = createShortIndicesBuffer(INDICES_PER_SEGMENT);
+		}
+		return sSharedIndices;
+	}
+	
+	/**
+	 * Gets indices for a full segment of quads joined into one triangle 
+	 * strip, like {@link #getSharedIndices()}. Every quad takes up 
+	 * {@link #INDICES_PER_QUAD} of them, so the same offsets work for both. 
+	 * A strip ending at a quad is {@link #STRIP_JOIN_INDICES} shorter.
+	 * 
+	 * @return ShortBuffer holding {@link #INDICES_PER_SEGMENT} indices
+	 */
+	public static final synchronized ShortBuffer getSharedStripIndices() {
+		if ( null == sSharedStripIndices ) {
+			final short[] indicesArray = new short[INDICES_PER_SEGMENT];
+			
+			short vertexNumber = 0;
+			for(int i = 0; i < INDICES_PER_SEGMENT; i += INDICES_PER_QUAD) {
+				
+				//The four corners in order make two triangles as a strip.
+				indicesArray[i] = vertexNumber++;
+				indicesArray[i+1] = vertexNumber++;
+				indicesArray[i+2] = vertexNumber++;
+				indicesArray[i+3] = vertexNumber;
+				
+				//Repeating the last corner and the first corner of the next 
+				//quad makes degenerate triangles that draw nothing. The next 
+				//quad then starts on an even triangle, keeping its winding.
+				indicesArray[i+4] = vertexNumber++;
+				indicesArray[i+5] = vertexNumber;
+			}
+			
+			sSharedStripIndices = createDirectShortBuffer(INDICES_PER_SEGMENT);
+			sSharedStripIndices.put(indicesArray);
+			sSharedStripIndices.rewind();
+		}
+		return sSharedStripIndices;
+	}
+	
+	/**
+	 * Copies whole quads, expanding each into the six vertexes of its two 
+	 * triangles for drawing without indices. The corners are repeated in 
+	 * the same order the shared indices use.
+	 * 
+	 * @param src int[] components of the quads, four vertexes each
+	 * @param firstVert int vertex of src to start from
+	 * @param quads int number of quads to copy
+	 * @param componentsPerVert int components each vertex has
+	 * @param dest int[] large enough for the expanded vertexes
+	 */
+	public static final void expandQuads(final int[] src, final int firstVert,
+			final int quads, final int componentsPerVert, final int[] dest) {
+		final int c = componentsPerVert;
+		int from = firstVert * c;
+		int to = 0;
+		for(int quad = 0; quad < quads; quad++) {
+			System.arraycopy(src, from, dest, to, 3 * c);
+			System.arraycopy(src, from + 2 * c, dest, to + 3 * c, c);
+			System.arraycopy(src, from + c, dest, to + 4 * c, c);
+			System.arraycopy(src, from + 3 * c, dest, to + 5 * c, c);
+			from += VERTS_PER_QUAD * c;
+			to += VERTS_PER_ARRAY_QUAD * c;
+		}
+	}
+	
+	/**
+	 * Floating point version of 
+	 * {@link #expandQuads(int[], int, int, int, int[])}.
+	 */
+	public static final void expandQuads(final float[] src, 
+			final int firstVert, final int quads, final int componentsPerVert, 
+			final float[] dest) {
+		final int c = componentsPerVert;
+		int from = firstVert * c;
+		int to = 0;
+		for(int quad = 0; quad < quads; quad++) {
+			System.arraycopy(src, from, dest, to, 3 * c);
+			System.arraycopy(src, from + 2 * c, dest, to + 3 * c, c);
+			System.arraycopy(src, from + c, dest, to + 4 * c, c);
+			System.arraycopy(src, from + 3 * c, dest, to + 5 * c, c);
+			from += VERTS_PER_QUAD * c;
+			to += VERTS_PER_ARRAY_QUAD * c;
+		}
+	}
+	
 	public static final ShortBuffer createShortIndicesBuffer(
 			final int capacity) {
 		final ShortBuffer indices = createDirectShortBuffer(capacity);	 
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.batched;
+
+import java.nio.ByteBuffer;
+
+import com.android.spritemethodtest.ProfileRecorder;
+
+/**
+ * Hands out direct byte buffers in power of two size classes and keeps 
+ * released ones for reuse. Direct memory is only freed once the GC 
+ * finalizes the buffer holding it, so dropping a buffer every time a batch 
+ * grows leaves a trail of dead allocations behind. Rounding requests up to 
+ * a size class means a released buffer fits any later request in the same 
+ * class, and the extra room doubles as growth space.
+ * 
+ * @author Lance Nanek
+ *
+ */
+public class DirectBufferPool {
+	
+	//Smallest size class, smaller requests are rounded up to this.
+	public static final int MIN_CLASS_BYTES = 1 << 12;
+	
+	//Largest size class, also the largest power of two that fits in an int.
+	public static final int MAX_CLASS_BYTES = 1 << 30;
+	
+	//Released buffers kept per size class, extras are left to the GC.
+	public static final int MAX_FREE_PER_CLASS = 4;
+	
+	private static final int CLASS_COUNT = 
+		Integer.numberOfTrailingZeros(MAX_CLASS_BYTES) 
+		- Integer.numberOfTrailingZeros(MIN_CLASS_BYTES) + 1;
+	
+	public static final DirectBufferPool sSingleton = new DirectBufferPool();
+	
+	private final ByteBuffer[][] mFree = 
+		new ByteBuffer[CLASS_COUNT][MAX_FREE_PER_CLASS];
+	
+	private final int[] mFreeCounts = new int[CLASS_COUNT];
+	
+	/**
+	 * Gets the size class that holds the requested number of bytes.
+	 * 
+	 * @param bytes int size needed
+	 * @return int size class, use {@link #getClassBytes(int)} for its size
+	 */
+	public static int getSizeClass(final int bytes) {
+		if ( bytes > MAX_CLASS_BYTES ) {
+			throw new IllegalArgumentException(
+					"Direct buffer too large: " + bytes);
+		}
+		int sizeClass = 0;
+		while ( getClassBytes(sizeClass) < bytes ) {
+			sizeClass++;
+		}
+		return sizeClass;
+	}
+	
+	public static int getClassBytes(final int sizeClass) {
+		return MIN_CLASS_BYTES << sizeClass;
+	}
+	
+	/**
+	 * Gets a cleared, native ordered direct buffer. A released buffer of 
+	 * the right size class, or failing that the next larger one, is reused 
+	 * if there is one, otherwise a new one is allocated. Doubling growth 
+	 * often asks for a little less than a buffer released earlier.
+	 * 
+	 * @param bytes int minimum capacity
+	 * @return ByteBuffer with a capacity of a whole size class
+	 */
+	public synchronized ByteBuffer acquire(final int bytes) {
+		final int sizeClass = getSizeClass(bytes);
+		final int lastClass = Math.min(sizeClass + 1, CLASS_COUNT - 1);
+		for( int i = sizeClass; i <= lastClass; i++ ) {
+			final int free = mFreeCounts[i];
+			if ( free > 0 ) {
+				final ByteBuffer reused = mFree[i][free - 1];
+				mFree[i][free - 1] = null;
+				mFreeCounts[i] = free - 1;
+				reused.clear();
+				ProfileRecorder.sSingleton.count(
+						ProfileRecorder.COUNTER_BUFFER_REUSES, 1);
+				return reused;
+			}
+		}
+		
+		ProfileRecorder.sSingleton.count(
+				ProfileRecorder.COUNTER_BUFFER_ALLOCATIONS, 1);
+		return BufferUtil.createDirectByteBuffer(getClassBytes(sizeClass));
+	}
+	
+	/**
+	 * Returns a buffer from {@link #acquire(int)} for reuse. The caller must 
+	 * not use it, or any views of it, afterward.
+	 * 
+	 * @param buffer ByteBuffer to return, null is ignored
+	 */
+	public synchronized void release(final ByteBuffer buffer) {
+		if ( null == buffer ) return;
+		
+		final int sizeClass = getSizeClass(buffer.capacity());
+		
+		//Only buffers that fill a whole class came from here.
+		if ( getClassBytes(sizeClass) != buffer.capacity() ) return;
+		
+		final int free = mFreeCounts[sizeClass];
+		if ( free < MAX_FREE_PER_CLASS ) {
+			mFree[sizeClass][free] = buffer;
+			mFreeCounts[sizeClass] = free + 1;
+		}
+	}
+	
+	/**
+	 * Drops all the released buffers so the GC can free their memory.
+	 */
+	public synchronized void clear() {
+		for( int i = 0; i < CLASS_COUNT; i++ ) {
+			for( int j = 0; j < mFreeCounts[i]; j++ ) {
+				mFree[i][j] = null;
+			}
+			mFreeCounts[i] = 0;
+		}
+	}
+}
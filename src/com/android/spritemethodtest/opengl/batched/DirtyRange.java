@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.batched;
+
+/**
+ * Range of vertexes written into a client side buffer since it was last 
+ * sent to a vertex buffer object. Separate writes are merged into one range 
+ * covering all of them, since a single glBufferSubData call of a little 
+ * extra data is usually cheaper than many small ones.
+ * 
+ * @author Lance Nanek
+ *
+ */
+final class DirtyRange {
+	
+	int start;
+	
+	int end;
+	
+	void mark(final int startVert, final int endVert) {
+		if ( isEmpty() ) {
+			start = startVert;
+			end = endVert;
+		} else {
+			start = Math.min(start, startVert);
+			end = Math.max(end, endVert);
+		}
+	}
+	
+	boolean isEmpty() {
+		return start >= end;
+	}
+	
+	void clear() {
+		start = 0;
+		end = 0;
+	}
+}
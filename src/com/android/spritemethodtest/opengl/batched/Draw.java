@@ -22,6 +22,9 @@ import static javax.microedition.khronos.opengles.GL10.*;
 import java.nio.ShortBuffer;
 
 import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+import com.android.spritemethodtest.ProfileRecorder;
 
 /**
  * Calls an OpenGL draw call. Often you can fit all your data in one buffer, 
@@ -37,19 +40,136 @@ import javax.microedition.khronos.opengles.GL10;
  */
 public class Draw {
 	
+	//Quads are indexed triangle pairs drawn with GL_TRIANGLES.
+	public static final int FORMAT_TRIANGLES = 0;
+	
+	//Quads are indexed and joined into one GL_TRIANGLE_STRIP per draw.
+	public static final int FORMAT_STRIP = 1;
+	
+	//Quads are expanded to six vertexes each and drawn with glDrawArrays.
+	public static final int FORMAT_ARRAYS = 2;
+	
+	//Most quads submitted per draw call, or zero for no limit.
+	private static int sChunkQuads;
+	
 	int vertOffset;
 	
 	int vertCount;
+	
+	//Draw calls made by the last render, more than one if split.
+	int drawCalls;
+	
+	/**
+	 * Bytes of vertex data written into the shared buffers for this draw 
+	 * during the last update. Zero for a static layer that was retained.
+	 */
+	public int bytesWritten;
+	
+	/**
+	 * Bytes of vertex data written for this draw since it was created.
+	 */
+	public long totalBytesWritten;
+	
+	void countBytesWritten(final int bytes) {
+		bytesWritten = bytes;
+		totalBytesWritten += bytes;
+	}
+	
+	/**
+	 * Limits how many quads each draw call submits, splitting larger groups 
+	 * into several calls. Some drivers start rasterizing the first calls 
+	 * while later ones are still being transferred.
+	 * 
+	 * @param chunkQuads int most quads per draw call, or zero for no limit
+	 */
+	public static void setChunkQuads(final int chunkQuads) {
+		sChunkQuads = Math.max(chunkQuads, 0);
+	}
+	
+	public static int getChunkQuads() {
+		return sChunkQuads;
+	}
 
-	public void render(final GL10 gl, final ShortBuffer indices) {
-		if ( 0 != vertCount ) {
-			final int indicesCount = 
-				vertCount * INDICES_PER_QUAD / VERTS_PER_QUAD;
-			final int indicesOffset = 
-				vertOffset * INDICES_PER_QUAD / VERTS_PER_QUAD;
-			indices.position(indicesOffset);
-			gl.glDrawElements(GL_TRIANGLES, 
-					indicesCount, GL_UNSIGNED_SHORT, indices);	
+	/**
+	 * Draws this group of quads. Indexed groups crossing a 16 bit index 
+	 * boundary are split into one draw call per segment, each with the 
+	 * vertex pointers moved to the start of its segment. Groups are also 
+	 * split into chunks if {@link #setChunkQuads(int)} set a limit.
+	 * 
+	 * @param gl GL10 context
+	 * @param format int {@link #FORMAT_TRIANGLES}, {@link #FORMAT_STRIP}, or 
+	 * {@link #FORMAT_ARRAYS}
+	 * @param indices ShortBuffer from {@link BufferUtil#getSharedIndices()} 
+	 * or {@link BufferUtil#getSharedStripIndices()} to match the format, 
+	 * or null to read them from the currently bound element array buffer 
+	 * object holding the same indices
+	 * @param pointers VertexPointers for the buffers holding the vertexes
+	 */
+	public void render(final GL10 gl, final int format, 
+			final ShortBuffer indices, final VertexPointers pointers) {
+		drawCalls = 0;
+		final int chunkQuads = sChunkQuads;
+		final int end = vertOffset + vertCount;
+		if ( FORMAT_ARRAYS == format ) {
+			final int chunkVerts = 0 == chunkQuads 
+				? vertCount : chunkQuads * VERTS_PER_ARRAY_QUAD;
+			if ( 0 != vertCount ) {
+				pointers.setPointers(gl, 0);
+			}
+			for( int vert = vertOffset; vert < end; vert += chunkVerts ) {
+				final int count = Math.min(chunkVerts, end - vert);
+				gl.glDrawArrays(GL_TRIANGLES, vert, count);
+				drawCalls++;
+				ProfileRecorder.sSingleton.count(
+						ProfileRecorder.COUNTER_DRAW_CALLS, 1);
+				ProfileRecorder.sSingleton.count(
+						ProfileRecorder.COUNTER_VERTEX_BYTES, 
+						count * BYTES_PER_VERT);
+			}
+			return;
+		}
+		
+		final int mode = 
+			FORMAT_STRIP == format ? GL_TRIANGLE_STRIP : GL_TRIANGLES;
+		final int chunkVerts = 0 == chunkQuads 
+			? VERTS_PER_SEGMENT : chunkQuads * VERTS_PER_QUAD;
+		int pointersStart = -1;
+		int vert = vertOffset;
+		while ( vert < end ) {
+			final int segmentStart = vert - (vert % VERTS_PER_SEGMENT);
+			final int drawEnd = Math.min(end, Math.min(
+					segmentStart + VERTS_PER_SEGMENT, vert + chunkVerts));
+			
+			//Chunks within a segment share its pointers.
+			if ( segmentStart != pointersStart ) {
+				pointers.setPointers(gl, segmentStart);
+				pointersStart = segmentStart;
+			}
+			
+			int indicesCount = toIndices(drawEnd - vert);
+			if ( FORMAT_STRIP == format ) {
+				indicesCount -= STRIP_JOIN_INDICES;
+			}
+			final int indicesOffset = toIndices(vert - segmentStart);
+			if ( null == indices ) {
+				((GL11) gl).glDrawElements(mode, indicesCount, 
+						GL_UNSIGNED_SHORT, indicesOffset * BYTES_PER_SHORT);
+			} else {
+				indices.position(indicesOffset);
+				gl.glDrawElements(mode, 
+						indicesCount, GL_UNSIGNED_SHORT, indices);	
+			}
+			ProfileRecorder.sSingleton.count(
+					ProfileRecorder.COUNTER_INDEX_BYTES, 
+					indicesCount * BYTES_PER_SHORT);
+			ProfileRecorder.sSingleton.count(
+					ProfileRecorder.COUNTER_VERTEX_BYTES, 
+					(drawEnd - vert) * BYTES_PER_VERT);
+			ProfileRecorder.sSingleton.count(
+					ProfileRecorder.COUNTER_DRAW_CALLS, 1);
+			drawCalls++;
+			
+			vert = drawEnd;
 		}		
 	}
 }
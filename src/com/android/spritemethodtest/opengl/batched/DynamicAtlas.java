@@ -0,0 +1,474 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.batched;
+
+import static javax.microedition.khronos.opengles.GL10.*;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.graphics.Bitmap;
+import android.opengl.GLUtils;
+import android.util.SparseArray;
+
+import com.android.spritemethodtest.ProfileRecorder;
+
+/**
+ * A texture atlas filled in while the app runs, for images that can't be
+ * packed ahead of time like {@link TextureAtlas}, such as ones the user
+ * makes or downloads. A fixed number of square pages are created up front.
+ * Each image is given a rectangle on a page the first time it is
+ * requested, found with a skyline allocator, and copied in with
+ * glTexSubImage2D.
+ * <p>
+ * A skyline only tracks the top edge of the used space, so a single
+ * rectangle can't be given back. When every page is full, the page whose
+ * regions were drawn least recently is emptied as a whole and its regions
+ * become invalid. Call {@link Region#touch()} when drawing a region so
+ * this knows it is in use, and {@link #nextFrame()} once per frame.
+ * Holders of a region must check {@link Region#isValid()}, or simply call
+ * {@link #get} again each frame, since an emptied region's coordinates
+ * point at whatever image is added there next.
+ * <p>
+ * Regions hand out texture coordinates in the same format as
+ * {@link TextureAtlas}, so batched drawing works with them unchanged.
+ * Sprites drawn in one batch have to share a page.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class DynamicAtlas {
+
+	/**
+	 * Loads the image for a key the first time it is requested.
+	 */
+	public interface BitmapSource {
+
+		/**
+		 * @param key int key passed to {@link DynamicAtlas#get}
+		 * @return Bitmap no larger than a page, recycled by the atlas once
+		 * uploaded
+		 */
+		Bitmap load(int key);
+	}
+
+	/**
+	 * Where an image is in the atlas.
+	 */
+	public class Region {
+
+		public final int key;
+
+		public final int page;
+
+		public final int textureName;
+
+		/**
+		 * Texture coordinates in the format of
+		 * {@link TextureAtlas#getFloatCoords(int)}.
+		 */
+		public final float[] floatCoords;
+
+		/**
+		 * Texture coordinates in the format of
+		 * {@link TextureAtlas#getFixedCoords(int)}.
+		 */
+		public final int[] fixedCoords;
+
+		private int mLastUsedFrame;
+
+		private boolean mValid = true;
+
+		private Region(final int key, final int page, final int left,
+				final int top, final int width, final int height) {
+			this.key = key;
+			this.page = page;
+			textureName = mTextureNames[page];
+
+			final float u0 = left / (float) mPageSize;
+			final float u1 = (left + width) / (float) mPageSize;
+			final float v0 = top / (float) mPageSize;
+			final float v1 = (top + height) / (float) mPageSize;
+			floatCoords = new float[] {
+		        // U, V
+				u0, v1,
+				u0, v0,
+				u1, v1,
+				u1, v0,
+			};
+			fixedCoords = new int[floatCoords.length];
+			for( int i = 0; i < floatCoords.length; i++ ) {
+				fixedCoords[i] = FixedPointUtil.fix(floatCoords[i]);
+			}
+			mLastUsedFrame = mFrame;
+		}
+
+		/**
+		 * Marks this region as drawn this frame.
+		 */
+		public void touch() {
+			mLastUsedFrame = mFrame;
+		}
+
+		/**
+		 * @return false once evicted, after which the texture coordinates
+		 * point at some other image and the key has to be requested again
+		 */
+		public boolean isValid() {
+			return mValid;
+		}
+	}
+
+	//Pixels left empty after each region, so filtering never mixes them.
+	private static final int PADDING = 1;
+
+	private final int mPageCount;
+
+	private final int mPageSize;
+
+	private final int[] mTextureNames;
+
+	private final SparseArray<Region> mRegions = new SparseArray<Region>();
+
+	//Regions on each page, to invalidate when it is emptied.
+	private final Region[][] mPageRegions;
+
+	private final int[] mPageRegionCounts;
+
+	//Skyline of each page as x, top y, and width of each flat segment,
+	//left to right.
+	private final int[][] mSkylineX;
+
+	private final int[][] mSkylineY;
+
+	private final int[][] mSkylineWidth;
+
+	private final int[] mSkylineCounts;
+
+	//Position of the last rectangle found by allocateOnPage.
+	private int mSkylineRegionX;
+
+	private int mSkylineRegionY;
+
+	private int mFrame;
+
+	private int mHits;
+
+	private int mMisses;
+
+	private int mEvictions;
+
+	/**
+	 * Creates a DynamicAtlas instance. Call {@link #createPages(GL10)}
+	 * before requesting regions.
+	 *
+	 * @param pageCount int textures to create
+	 * @param pageSize int width and height of each, a power of two
+	 */
+	public DynamicAtlas(final int pageCount, final int pageSize) {
+		mPageCount = pageCount;
+		mPageSize = pageSize;
+		mTextureNames = new int[pageCount];
+		mPageRegions = new Region[pageCount][4];
+		mPageRegionCounts = new int[pageCount];
+
+		//Segments never overlap and are at least a pixel wide.
+		final int maxSegments = pageSize + PADDING;
+		mSkylineX = new int[pageCount][maxSegments];
+		mSkylineY = new int[pageCount][maxSegments];
+		mSkylineWidth = new int[pageCount][maxSegments];
+		mSkylineCounts = new int[pageCount];
+	}
+
+	/**
+	 * Creates the empty page textures and forgets every region, for
+	 * starting up or after the OpenGL context was lost.
+	 *
+	 * @param gl GL10 context
+	 */
+	public void createPages(final GL10 gl) {
+		gl.glGenTextures(mPageCount, mTextureNames, 0);
+		for( int page = 0; page < mPageCount; page++ ) {
+			gl.glBindTexture(GL_TEXTURE_2D, mTextureNames[page]);
+			gl.glTexParameterf(
+					GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+			gl.glTexParameterf(
+					GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+			gl.glTexParameterf(
+					GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+			gl.glTexParameterf(
+					GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+			gl.glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, mPageSize, mPageSize,
+					0, GL_RGBA, GL_UNSIGNED_BYTE, null);
+			clearPage(page);
+		}
+		mRegions.clear();
+	}
+
+	/**
+	 * Deletes the page textures. Regions must not be used afterward.
+	 *
+	 * @param gl GL10 context
+	 */
+	public void deletePages(final GL10 gl) {
+		gl.glDeleteTextures(mPageCount, mTextureNames, 0);
+		for( int page = 0; page < mPageCount; page++ ) {
+			clearPage(page);
+			mTextureNames[page] = 0;
+		}
+		mRegions.clear();
+	}
+
+	/**
+	 * @param page int from 0 to the page count - 1
+	 * @return int texture name of the page
+	 */
+	public int getTextureName(final int page) {
+		return mTextureNames[page];
+	}
+
+	/**
+	 * Advances the frame count regions are marked drawn with.
+	 */
+	public void nextFrame() {
+		mFrame++;
+	}
+
+	/**
+	 * Gets the region holding an image, adding the image if it isn't in
+	 * the atlas. Either way the region is marked drawn this frame.
+	 *
+	 * @param gl GL10 context
+	 * @param key int identifying the image
+	 * @param source BitmapSource to load the image from if needed
+	 * @return Region, or null if the image is larger than a page or every
+	 * page was drawn from this frame and none could be emptied
+	 */
+	public Region get(final GL10 gl, final int key,
+			final BitmapSource source) {
+		Region region = mRegions.get(key);
+		if ( null != region ) {
+			mHits++;
+			ProfileRecorder.sSingleton.count(
+					ProfileRecorder.COUNTER_ATLAS_HITS, 1);
+			region.touch();
+			return region;
+		}
+
+		mMisses++;
+		ProfileRecorder.sSingleton.count(
+				ProfileRecorder.COUNTER_ATLAS_MISSES, 1);
+		Bitmap bitmap = source.load(key);
+		if ( Bitmap.Config.ARGB_8888 != bitmap.getConfig() ) {
+			//glTexSubImage2D can't convert to the page format.
+			final Bitmap converted =
+				bitmap.copy(Bitmap.Config.ARGB_8888, false);
+			bitmap.recycle();
+			bitmap = converted;
+		}
+		try {
+			final int width = bitmap.getWidth();
+			final int height = bitmap.getHeight();
+			region = allocate(key, width, height);
+			if ( null == region && evictLeastRecentPage() ) {
+				region = allocate(key, width, height);
+			}
+			if ( null == region ) {
+				return null;
+			}
+
+			gl.glBindTexture(GL_TEXTURE_2D, region.textureName);
+			GLUtils.texSubImage2D(GL_TEXTURE_2D, 0,
+					mSkylineRegionX, mSkylineRegionY, bitmap);
+			mRegions.put(key, region);
+			return region;
+		} finally {
+			bitmap.recycle();
+		}
+	}
+
+	private Region allocate(final int key, final int width, final int height) {
+		for( int page = 0; page < mPageCount; page++ ) {
+			if ( allocateOnPage(page, width + PADDING, height + PADDING) ) {
+				final Region region = new Region(key, page,
+						mSkylineRegionX, mSkylineRegionY, width, height);
+				addToPage(page, region);
+				return region;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the lowest place on the skyline a rectangle fits, preferring
+	 * the narrowest segment on ties, and raises the skyline over it.
+	 */
+	private boolean allocateOnPage(final int page,
+			final int width, final int height) {
+		final int[] xs = mSkylineX[page];
+		final int[] ys = mSkylineY[page];
+		final int[] widths = mSkylineWidth[page];
+		final int count = mSkylineCounts[page];
+
+		//The page gets room for padding at its far edges, where no
+		//neighbor needs separating.
+		final int limit = mPageSize + PADDING;
+
+		int best = -1;
+		int bestY = Integer.MAX_VALUE;
+		int bestWidth = Integer.MAX_VALUE;
+		for( int i = 0; i < count; i++ ) {
+			if ( xs[i] + width > limit ) {
+				break;
+			}
+			int y = 0;
+			int left = width;
+			for( int j = i; left > 0; j++ ) {
+				y = Math.max(y, ys[j]);
+				left -= widths[j];
+			}
+			if ( y + height > limit ) {
+				continue;
+			}
+			if ( y < bestY || (y == bestY && widths[i] < bestWidth) ) {
+				best = i;
+				bestY = y;
+				bestWidth = widths[i];
+			}
+		}
+		if ( -1 == best ) {
+			return false;
+		}
+
+		final int x = xs[best];
+		mSkylineRegionX = x;
+		mSkylineRegionY = bestY;
+
+		//Drop or trim the segments the new one covers.
+		final int end = x + width;
+		int after = best;
+		while ( after < count && xs[after] + widths[after] <= end ) {
+			after++;
+		}
+		int newCount = best + 1 + (count - after);
+		if ( after < count && xs[after] < end ) {
+			widths[after] -= end - xs[after];
+			xs[after] = end;
+		}
+		System.arraycopy(xs, after, xs, best + 1, count - after);
+		System.arraycopy(ys, after, ys, best + 1, count - after);
+		System.arraycopy(widths, after, widths, best + 1, count - after);
+		xs[best] = x;
+		ys[best] = bestY + height;
+		widths[best] = width;
+
+		//Join neighbors at the same height.
+		int write = 0;
+		for( int read = 1; read < newCount; read++ ) {
+			if ( ys[read] == ys[write] ) {
+				widths[write] += widths[read];
+			} else {
+				write++;
+				xs[write] = xs[read];
+				ys[write] = ys[read];
+				widths[write] = widths[read];
+			}
+		}
+		mSkylineCounts[page] = write + 1;
+		return true;
+	}
+
+	private void addToPage(final int page, final Region region) {
+		Region[] regions = mPageRegions[page];
+		final int count = mPageRegionCounts[page];
+		if ( count == regions.length ) {
+			regions = new Region[count * 2];
+			System.arraycopy(mPageRegions[page], 0, regions, 0, count);
+			mPageRegions[page] = regions;
+		}
+		regions[count] = region;
+		mPageRegionCounts[page] = count + 1;
+	}
+
+	/**
+	 * Empties the page whose most recently drawn region is oldest.
+	 *
+	 * @return false if every page was drawn from this frame
+	 */
+	private boolean evictLeastRecentPage() {
+		int oldest = -1;
+		int oldestFrame = mFrame;
+		for( int page = 0; page < mPageCount; page++ ) {
+			int newest = Integer.MIN_VALUE;
+			final Region[] regions = mPageRegions[page];
+			for( int i = 0; i < mPageRegionCounts[page]; i++ ) {
+				newest = Math.max(newest, regions[i].mLastUsedFrame);
+			}
+			if ( newest < oldestFrame ) {
+				oldest = page;
+				oldestFrame = newest;
+			}
+		}
+		if ( -1 == oldest ) {
+			return false;
+		}
+
+		final Region[] regions = mPageRegions[oldest];
+		final int count = mPageRegionCounts[oldest];
+		for( int i = 0; i < count; i++ ) {
+			mRegions.delete(regions[i].key);
+		}
+		mEvictions += count;
+		ProfileRecorder.sSingleton.count(
+				ProfileRecorder.COUNTER_ATLAS_EVICTIONS, count);
+		clearPage(oldest);
+		return true;
+	}
+
+	private void clearPage(final int page) {
+		final Region[] regions = mPageRegions[page];
+		for( int i = 0; i < mPageRegionCounts[page]; i++ ) {
+			regions[i].mValid = false;
+			regions[i] = null;
+		}
+		mPageRegionCounts[page] = 0;
+		mSkylineX[page][0] = 0;
+		mSkylineY[page][0] = 0;
+		mSkylineWidth[page][0] = mPageSize + PADDING;
+		mSkylineCounts[page] = 1;
+	}
+
+	/**
+	 * @return int requests for images already in the atlas
+	 */
+	public int getHits() {
+		return mHits;
+	}
+
+	/**
+	 * @return int requests that had to load and upload the image
+	 */
+	public int getMisses() {
+		return mMisses;
+	}
+
+	/**
+	 * @return int regions invalidated to make room for others
+	 */
+	public int getEvictions() {
+		return mEvictions;
+	}
+}
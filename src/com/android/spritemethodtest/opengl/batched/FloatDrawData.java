@@ -44,16 +44,54 @@ public class FloatDrawData {
 		
 	private int mVertCapacity;
 	
+	private boolean mStatic;
+	
+	private boolean mRetained;
+	
+	//Texture coordinate array each quad slot was last given.
+	private float[][] mSlotTextures;
+	
+	//Vertexes with texture coordinates changed since the last reset.
+	private int mTexCoordsDirtyStart;
+	
+	private int mTexCoordsDirtyEnd;
+	
+	//Quads stay in fixed slots between updates, only dirty ones are copied.
+	private boolean mSlotted;
+	
+	private boolean[] mSlotDirty;
+	
+	private int[] mDirtySlots;
+	
+	private int mDirtySlotCount;
+	
 	public FloatDrawData(final int vertCapacity) {
 		createArrays(vertCapacity);
 	}
 	
 	private void createArrays(final int vertCapacity) {
 	
-		mVertCapacity = vertCapacity;
-		dims = createArray(toDims(vertCapacity), dims, toDims(vertCount));
+		//Texture coordinates are kept for every slot, not just the used ones.
 		texCoords = createArray(
-			toTexCoords(vertCapacity), texCoords, toTexCoords(vertCount));
+			toTexCoords(vertCapacity), texCoords, toTexCoords(mVertCapacity));
+		dims = createArray(toDims(vertCapacity), dims, toDims(vertCount));
+		
+		final float[][] slotTextures = new float[vertCapacity / VERTS_PER_QUAD][];
+		if ( null != mSlotTextures ) {
+			System.arraycopy(mSlotTextures, 0, 
+					slotTextures, 0, mSlotTextures.length);
+		}
+		mSlotTextures = slotTextures;
+		
+		final boolean[] slotDirty = new boolean[vertCapacity / VERTS_PER_QUAD];
+		final int[] dirtySlots = new int[vertCapacity / VERTS_PER_QUAD];
+		if ( null != mSlotDirty ) {
+			System.arraycopy(mSlotDirty, 0, slotDirty, 0, mSlotDirty.length);
+			System.arraycopy(mDirtySlots, 0, dirtySlots, 0, mDirtySlotCount);
+		}
+		mSlotDirty = slotDirty;
+		mDirtySlots = dirtySlots;
+		mVertCapacity = vertCapacity;
 	}
 		
 	private float[] createArray(
@@ -69,22 +107,95 @@ public class FloatDrawData {
 			final float width, final float height, 
 			final float z, final float[] texture) {
 		
-		//Ensure arrays are big enough.
-		{
-			final int neededCapacity = vertCount + VERTS_PER_QUAD;
-			boolean needCapacityIncrease = false;
-			int newCapacity = mVertCapacity;
-			while ( newCapacity < neededCapacity ) {
-				needCapacityIncrease = true;
-				newCapacity += VERT_CAPACITY_INCREASE_STEP;
-			}
-			if ( needCapacityIncrease ) {
-				createArrays(newCapacity);
-			}
+		//Static data already in the shared buffers doesn't need regenerating.
+		if ( mRetained ) {
+			return;
+		}
+		
+		ensureCapacity(vertCount + VERTS_PER_QUAD);
+		writeQuad(vertCount, left, top, width, height, z, texture);
+		vertCount += VERTS_PER_QUAD;
+	}
+	
+	/**
+	 * Sets the quad in a slot from {@link #useSlots(int)}. It is kept until 
+	 * set again, so only sprites that changed need to call this.
+	 */
+	public void quad(final int slot, final float left, final float top, 
+			final float width, final float height, 
+			final float z, final float[] texture) {
+		
+		if ( mRetained ) {
+			return;
+		}
+		
+		writeQuad(slot * VERTS_PER_QUAD, left, top, width, height, z, texture);
+		if ( !mSlotDirty[slot] ) {
+			mSlotDirty[slot] = true;
+			mDirtySlots[mDirtySlotCount++] = slot;
+		}
+	}
+	
+	/**
+	 * Makes room for a number of quads to be set with 
+	 * {@link #putQuad(int, float, float, float, float, float, float[])}, 
+	 * replacing any quads added before. Does nothing for a static layer 
+	 * that is already retained.
+	 * 
+	 * @param quadCount int number of quads
+	 */
+	public void prepareQuads(final int quadCount) {
+		if ( mRetained ) {
+			return;
+		}
+		ensureCapacity(quadCount * VERTS_PER_QUAD);
+		vertCount = quadCount * VERTS_PER_QUAD;
+	}
+	
+	/**
+	 * Sets a quad made room for by {@link #prepareQuads(int)}. Unlike the 
+	 * other quad methods, this only touches data belonging to that quad, so 
+	 * different threads can set different quads at the same time. The 
+	 * caller has to pass the range of quads whose texture coordinates 
+	 * changed to {@link #markTexCoordsDirty(int, int)} afterward.
+	 * 
+	 * @return true if the texture coordinates changed
+	 */
+	public boolean putQuad(final int quad, final float left, final float top, 
+			final float width, final float height, 
+			final float z, final float[] texture) {
+		if ( mRetained ) {
+			return false;
+		}
+		
+		final int vert = quad * VERTS_PER_QUAD;
+		writeDims(vert, left, top, width, height, z);
+		return writeTexCoords(vert, texture);
+	}
+	
+	private void ensureCapacity(final int neededCapacity) {
+		if ( neededCapacity > mVertCapacity ) {
+			createArrays(growCapacity(
+					Math.max(mVertCapacity, VERT_CAPACITY_INCREASE_STEP), 
+					neededCapacity));
+		}
+	}
+	
+	private void writeQuad(final int vert, final float left, final float top, 
+			final float width, final float height, 
+			final float z, final float[] texture) {
+		writeDims(vert, left, top, width, height, z);
+		
+		if ( writeTexCoords(vert, texture) ) {
+			markTexCoordsDirty(vert, vert + VERTS_PER_QUAD);
 		}
+	}
+	
+	private void writeDims(final int vert, final float left, final float top, 
+			final float width, final float height, final float z) {
 		
 		//Calculate remaining vertex position information.
-		int dimsOffset = vertCount * DIMS_PER_VERT;
+		int dimsOffset = vert * DIMS_PER_VERT;
 		final float right = left + width;
 		final float bottom = top + height;
 		
@@ -109,17 +220,133 @@ public class FloatDrawData {
 		dims[dimsOffset++] = right;
 		dims[dimsOffset++] = bottom;
 		dims[dimsOffset++] = z;
-		
-		//Set texture coordinates.
-		final int texCoordsOffset = vertCount * TEX_COORDS_PER_VERT;
+	}
+	
+	/**
+	 * Sets texture coordinates, unless this slot already has them. The 
+	 * arrays from TextureAtlas never change, so comparing them is enough.
+	 * 
+	 * @return true if they were copied
+	 */
+	private boolean writeTexCoords(final int vert, final float[] texture) {
+		final int slot = vert / VERTS_PER_QUAD;
+		if ( texture == mSlotTextures[slot] ) {
+			return false;
+		}
+		mSlotTextures[slot] = texture;
+		final int texCoordsOffset = vert * TEX_COORDS_PER_VERT;
 		System.arraycopy(
 				texture, 0, texCoords, texCoordsOffset, TEX_COORDS_PER_QUAD);
-		
-		vertCount += VERTS_PER_QUAD;
+		return true;
+	}
+	
+	/**
+	 * Records that texture coordinates of some vertexes changed, so shared 
+	 * buffers retaining texture coordinates copy them again.
+	 * 
+	 * @param startVert int first vertex changed
+	 * @param endVert int vertex after the last one changed
+	 */
+	public void markTexCoordsDirty(final int startVert, final int endVert) {
+		if ( startVert >= endVert ) {
+			return;
+		}
+		if ( mTexCoordsDirtyStart == mTexCoordsDirtyEnd ) {
+			mTexCoordsDirtyStart = startVert;
+			mTexCoordsDirtyEnd = endVert;
+		} else {
+			mTexCoordsDirtyStart = Math.min(mTexCoordsDirtyStart, startVert);
+			mTexCoordsDirtyEnd = Math.max(mTexCoordsDirtyEnd, endVert);
+		}
+	}
+	
+	/**
+	 * Switches to keeping quads in fixed slots, set with 
+	 * {@link #quad(int, float, float, float, float, float, float[])}, instead of adding all 
+	 * of them again every frame. The shared buffers then only copy the 
+	 * slots that were set since the last update.
+	 * 
+	 * @param slotCount int number of quads
+	 */
+	public void useSlots(final int slotCount) {
+		ensureCapacity(slotCount * VERTS_PER_QUAD);
+		mSlotted = true;
+		vertCount = slotCount * VERTS_PER_QUAD;
+	}
+	
+	public boolean isSlotted() {
+		return mSlotted;
+	}
+	
+	int getDirtySlotCount() {
+		return mDirtySlotCount;
 	}
 	
+	int getDirtySlot(final int index) {
+		return mDirtySlots[index];
+	}
+	
+	/**
+	 * Called once the data has been copied. Slotted quads are kept, 
+	 * otherwise everything has to be added again.
+	 */
 	public void reset() {
-		vertCount = 0;
+		if ( !mSlotted ) {
+			vertCount = 0;
+		}
+		for( int i = 0; i < mDirtySlotCount; i++ ) {
+			mSlotDirty[mDirtySlots[i]] = false;
+		}
+		mDirtySlotCount = 0;
+		mTexCoordsDirtyStart = 0;
+		mTexCoordsDirtyEnd = 0;
+	}
+	
+	/**
+	 * @return int first vertex whose texture coordinates changed since the 
+	 * last reset, equal to {@link #getTexCoordsDirtyEnd()} if none did
+	 */
+	int getTexCoordsDirtyStart() {
+		return mTexCoordsDirtyStart;
+	}
+	
+	int getTexCoordsDirtyEnd() {
+		return mTexCoordsDirtyEnd;
+	}
+	
+	/**
+	 * Marks this data as a static layer, like a background or HUD frame that 
+	 * never moves. The shared buffers write static layers once and keep 
+	 * them, after which quads added here are ignored until 
+	 * {@link #invalidate()} is called.
+	 */
+	public void setStatic(final boolean isStatic) {
+		mStatic = isStatic;
+		mRetained = false;
+	}
+	
+	public boolean isStatic() {
+		return mStatic;
+	}
+	
+	/**
+	 * @return true if this static layer is already held by the shared 
+	 * buffers and doesn't need to be generated again
+	 */
+	public boolean isRetained() {
+		return mRetained;
+	}
+	
+	void retain() {
+		mRetained = mStatic;
+	}
+	
+	/**
+	 * Makes a static layer accept quads again, so it is regenerated and 
+	 * rewritten. Needed when the shared buffers holding it are recreated.
+	 */
+	public void invalidate() {
+		mRetained = false;
 	}
 		
 }
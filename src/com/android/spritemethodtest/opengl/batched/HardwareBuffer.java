@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.batched;
+
+import java.nio.Buffer;
+
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * A vertex buffer object that is refilled from a client side buffer. The
+ * batched draw methods regenerate all their data every frame, so unlike the
+ * static buffers in Grid these are respecified constantly. There are two
+ * common ways to do that and drivers differ on which is faster:
+ * <p>
+ * Orphaning calls glBufferData with the whole buffer every time. The driver
+ * can hand out fresh memory and let the GPU finish reading the old contents,
+ * instead of waiting for it.<br />
+ * Sub data allocates the buffer once at its full capacity and then only
+ * overwrites the used part with glBufferSubData. This avoids reallocation,
+ * but may stall if the GPU is still reading the buffer.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class HardwareBuffer {
+
+	public static final int UPDATE_ORPHAN = 0;
+
+	public static final int UPDATE_SUB_DATA = 1;
+
+	private final int mTarget;
+
+	private final int mUsage;
+
+	private final int mUpdateMethod;
+
+	private final int mBytesPerElement;
+
+	private final int[] mNameWorkspace = new int[1];
+
+	private int mName;
+
+	private int mAllocatedBytes;
+
+	/**
+	 * Creates a HardwareBuffer instance. No GL calls are made until the first
+	 * upload.
+	 *
+	 * @param target int GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER
+	 * @param usage int GL_STATIC_DRAW or GL_DYNAMIC_DRAW
+	 * @param updateMethod int {@link #UPDATE_ORPHAN} or
+	 * {@link #UPDATE_SUB_DATA}
+	 * @param bytesPerElement int size of the elements of the client side 
+	 * buffers that will be uploaded
+	 */
+	public HardwareBuffer(final int target, final int usage,
+			final int updateMethod, final int bytesPerElement) {
+		mTarget = target;
+		mUsage = usage;
+		mUpdateMethod = updateMethod;
+		mBytesPerElement = bytesPerElement;
+	}
+
+	/**
+	 * Copies data into the buffer and leaves it bound. The client side 
+	 * buffer's position is changed.
+	 *
+	 * @param gl GL11 context
+	 * @param data Buffer holding the data starting at element zero
+	 * @param retainedBytes int bytes at the start of the buffer that are 
+	 * unchanged since the last upload, only skipped with 
+	 * {@link #UPDATE_SUB_DATA} since orphaning discards the old contents
+	 * @param usedBytes int bytes that need to be in the buffer
+	 * @param capacityBytes int bytes the buffer should be able to hold
+	 * without being reallocated, only used with {@link #UPDATE_SUB_DATA}
+	 * @return int number of bytes sent to the graphics driver
+	 */
+	public int upload(final GL11 gl, final Buffer data, 
+			final int retainedBytes, final int usedBytes, 
+			final int capacityBytes) {
+		return upload(gl, data, 
+				retainedBytes, usedBytes, usedBytes, capacityBytes);
+	}
+
+	/**
+	 * Copies data into the buffer and leaves it bound, like 
+	 * {@link #upload(GL11, Buffer, int, int, int)}, but only the changed 
+	 * range is sent with {@link #UPDATE_SUB_DATA}. Orphaning still sends 
+	 * all the used bytes.
+	 *
+	 * @param gl GL11 context
+	 * @param data Buffer holding the data starting at element zero
+	 * @param changedStartBytes int start of the bytes changed since the 
+	 * last upload
+	 * @param changedEndBytes int end of the bytes changed since the last 
+	 * upload
+	 * @param usedBytes int bytes that need to be in the buffer
+	 * @param capacityBytes int bytes the buffer should be able to hold
+	 * without being reallocated, only used with {@link #UPDATE_SUB_DATA}
+	 * @return int number of bytes sent to the graphics driver
+	 */
+	public int upload(final GL11 gl, final Buffer data, 
+			final int changedStartBytes, final int changedEndBytes, 
+			final int usedBytes, final int capacityBytes) {
+		if ( 0 == mName ) {
+			gl.glGenBuffers(1, mNameWorkspace, 0);
+			mName = mNameWorkspace[0];
+			mAllocatedBytes = 0;
+		}
+		gl.glBindBuffer(mTarget, mName);
+
+		if ( UPDATE_SUB_DATA == mUpdateMethod ) {
+			if ( capacityBytes > mAllocatedBytes ) {
+				data.position(0);
+				gl.glBufferData(mTarget, capacityBytes, data, mUsage);
+				mAllocatedBytes = capacityBytes;
+				return capacityBytes;
+			} 
+			
+			final int changedBytes = changedEndBytes - changedStartBytes;
+			if ( changedBytes > 0 ) {
+				data.position(changedStartBytes / mBytesPerElement);
+				gl.glBufferSubData(
+						mTarget, changedStartBytes, changedBytes, data);
+				return changedBytes;
+			}
+			return 0;
+		} 
+		
+		data.position(0);
+		gl.glBufferData(mTarget, usedBytes, data, mUsage);
+		mAllocatedBytes = usedBytes;
+		return usedBytes;
+	}
+
+	public void bind(final GL11 gl) {
+		gl.glBindBuffer(mTarget, mName);
+	}
+
+	public boolean isAllocated() {
+		return 0 != mName;
+	}
+
+	/**
+	 * When the OpenGL ES context is lost the buffer name becomes invalid.
+	 * Forget it without deleting it so it is recreated on the next upload.
+	 */
+	public void invalidate() {
+		mName = 0;
+		mAllocatedBytes = 0;
+	}
+
+	/**
+	 * Deletes the buffer from the graphics card, if it was created.
+	 */
+	public void release(final GL11 gl) {
+		if ( 0 != mName ) {
+			mNameWorkspace[0] = mName;
+			gl.glDeleteBuffers(1, mNameWorkspace, 0);
+			invalidate();
+		}
+	}
+}
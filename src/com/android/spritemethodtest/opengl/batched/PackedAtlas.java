@@ -0,0 +1,160 @@
+/*
+ * Generated by tools/AtlasPacker.java, do not edit.
+ */
+
+package com.android.spritemethodtest.opengl.batched;
+
+import com.android.spritemethodtest.R;
+
+/**
+ * Where each packed image is in the atlas pages.
+ * Texture coordinates are in the same quad order as
+ * {@link TextureAtlas}.
+ */
+public final class PackedAtlas {
+
+	public static final int[] PAGE_RESOURCE_IDS = new int[] {
+		R.raw.packed_atlas_0, // 512x1024
+	};
+
+	/**
+	 * @param resourceId int R.drawable ID of a packed image
+	 * @return int index into {@link #PAGE_RESOURCE_IDS}, or -1 if
+	 * the image wasn't packed
+	 */
+	public static int getPage(final int resourceId) {
+		switch ( resourceId ) {
+			case R.drawable.background:
+				return 0;
+			case R.drawable.skate1:
+				return 0;
+			case R.drawable.skate2:
+				return 0;
+			case R.drawable.skate3:
+				return 0;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param resourceId int R.drawable ID of a packed image
+	 * @return float[] texture coordinates within its page,
+	 * or null if the image wasn't packed
+	 */
+	public static float[] getFloatCoords(final int resourceId) {
+		switch ( resourceId ) {
+			case R.drawable.background:
+				return BACKGROUND_FLOAT;
+			case R.drawable.skate1:
+				return SKATE1_FLOAT;
+			case R.drawable.skate2:
+				return SKATE2_FLOAT;
+			case R.drawable.skate3:
+				return SKATE3_FLOAT;
+		}
+		return null;
+	}
+
+	/**
+	 * @param resourceId int R.drawable ID of a packed image
+	 * @return int[] texture coordinates within its page,
+	 * or null if the image wasn't packed
+	 */
+	public static int[] getFixedCoords(final int resourceId) {
+		switch ( resourceId ) {
+			case R.drawable.background:
+				return BACKGROUND_FIXED;
+			case R.drawable.skate1:
+				return SKATE1_FIXED;
+			case R.drawable.skate2:
+				return SKATE2_FIXED;
+			case R.drawable.skate3:
+				return SKATE3_FIXED;
+		}
+		return null;
+	}
+
+	/**
+	 * @param resourceId int R.drawable ID of a packed image
+	 * @return int width in pixels as packed, or 0 if the image wasn't packed
+	 */
+	public static int getWidth(final int resourceId) {
+		switch ( resourceId ) {
+			case R.drawable.background:
+				return 512;
+			case R.drawable.skate1:
+				return 64;
+			case R.drawable.skate2:
+				return 64;
+			case R.drawable.skate3:
+				return 64;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param resourceId int R.drawable ID of a packed image
+	 * @return int height in pixels as packed, or 0 if the image wasn't packed
+	 */
+	public static int getHeight(final int resourceId) {
+		switch ( resourceId ) {
+			case R.drawable.background:
+				return 512;
+			case R.drawable.skate1:
+				return 64;
+			case R.drawable.skate2:
+				return 64;
+			case R.drawable.skate3:
+				return 64;
+		}
+		return 0;
+	}
+
+	private static final float[] BACKGROUND_FLOAT = new float[] {
+		// U, V
+		0.0f, 0.5f,
+		0.0f, 0.0f,
+		1.0f, 0.5f,
+		1.0f, 0.0f,
+	};
+
+	private static final int[] BACKGROUND_FIXED = fix(BACKGROUND_FLOAT);
+
+	private static final float[] SKATE1_FLOAT = new float[] {
+		// U, V
+		0.0f, 0.56347656f,
+		0.0f, 0.50097656f,
+		0.125f, 0.56347656f,
+		0.125f, 0.50097656f,
+	};
+
+	private static final int[] SKATE1_FIXED = fix(SKATE1_FLOAT);
+
+	private static final float[] SKATE2_FLOAT = new float[] {
+		// U, V
+		0.0f, 0.6269531f,
+		0.0f, 0.5644531f,
+		0.125f, 0.6269531f,
+		0.125f, 0.5644531f,
+	};
+
+	private static final int[] SKATE2_FIXED = fix(SKATE2_FLOAT);
+
+	private static final float[] SKATE3_FLOAT = new float[] {
+		// U, V
+		0.0f, 0.6904297f,
+		0.0f, 0.6279297f,
+		0.125f, 0.6904297f,
+		0.125f, 0.6279297f,
+	};
+
+	private static final int[] SKATE3_FIXED = fix(SKATE3_FLOAT);
+
+	private static int[] fix(final float[] input) {
+		final int[] result = new int[input.length];
+		for( int i = 0; i < input.length; i++ ) {
+			result[i] = FixedPointUtil.fix(input[i]);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.batched;
+
+import static com.android.spritemethodtest.opengl.batched.BufferUtil.*;
+import static javax.microedition.khronos.opengles.GL10.*;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+import javax.microedition.khronos.opengles.GL11Ext;
+
+/**
+ * Draws sprites that share a texture and size using the
+ * GL_OES_matrix_palette extension. A mesh holding one quad per palette
+ * matrix is uploaded to vertex buffer objects once. Every vertex of a quad
+ * is fully weighted to that quad's matrix, so loading a sprite's
+ * translation into a palette matrix places the quad. Each draw call then
+ * covers as many sprites as there are palette matrices, instead of one
+ * push, translate, draw, and pop per sprite.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class PaletteSprites {
+
+	public static final String EXTENSION = "GL_OES_matrix_palette";
+
+	//Translation components in a column major matrix.
+	private static final int MATRIX_X = 12;
+
+	private static final int MATRIX_Y = 13;
+
+	private static final int MATRIX_Z = 14;
+
+	private static final int POSITION_COMPONENTS = 3;
+
+	private final int mTextureId;
+
+	private final int mPaletteSize;
+
+	private final float[] mMatrix = new float[16];
+
+	private final HardwareBuffer mDimsHardware;
+
+	private final HardwareBuffer mTexCoordsHardware;
+
+	private final HardwareBuffer mMatrixIndicesHardware;
+
+	private final HardwareBuffer mWeightsHardware;
+
+	private final HardwareBuffer mIndicesHardware;
+
+	private FloatBuffer mDims;
+
+	private FloatBuffer mTexCoords;
+
+	private ByteBuffer mMatrixIndices;
+
+	private FloatBuffer mWeights;
+
+	private ShortBuffer mIndices;
+
+	private float[] mPositions;
+
+	private int mSpriteCount;
+
+	/**
+	 * Creates a PaletteSprites instance. No GL calls are made until the
+	 * first draw.
+	 *
+	 * @param spriteCapacity int sprites to make room for, grows if exceeded
+	 * @param paletteSize int palette matrices to use, from
+	 * {@link #getPaletteSize(GL10)}
+	 * @param textureId int texture all the sprites are drawn with
+	 * @param width float width of the sprites
+	 * @param height float height of the sprites
+	 */
+	public PaletteSprites(final int spriteCapacity, final int paletteSize,
+			final int textureId, final float width, final float height) {
+		mTextureId = textureId;
+		mPaletteSize = paletteSize;
+		mPositions = new float[Math.max(spriteCapacity, 1)
+				* POSITION_COMPONENTS];
+
+		mMatrix[0] = 1;
+		mMatrix[5] = 1;
+		mMatrix[10] = 1;
+		mMatrix[15] = 1;
+
+		mDimsHardware = new HardwareBuffer(GL11.GL_ARRAY_BUFFER,
+				GL11.GL_STATIC_DRAW, HardwareBuffer.UPDATE_ORPHAN,
+				BYTES_PER_FLOAT);
+		mTexCoordsHardware = new HardwareBuffer(GL11.GL_ARRAY_BUFFER,
+				GL11.GL_STATIC_DRAW, HardwareBuffer.UPDATE_ORPHAN,
+				BYTES_PER_FLOAT);
+		mMatrixIndicesHardware = new HardwareBuffer(GL11.GL_ARRAY_BUFFER,
+				GL11.GL_STATIC_DRAW, HardwareBuffer.UPDATE_ORPHAN, 1);
+		mWeightsHardware = new HardwareBuffer(GL11.GL_ARRAY_BUFFER,
+				GL11.GL_STATIC_DRAW, HardwareBuffer.UPDATE_ORPHAN,
+				BYTES_PER_FLOAT);
+		mIndicesHardware = new HardwareBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER,
+				GL11.GL_STATIC_DRAW, HardwareBuffer.UPDATE_ORPHAN,
+				BYTES_PER_SHORT);
+
+		createMesh(width, height);
+	}
+
+	/**
+	 * Checks if the matrix palette extension is there to draw with.
+	 *
+	 * @param gl GL10 context
+	 * @return true if matrix palettes are supported
+	 */
+	public static boolean isSupported(final GL10 gl) {
+		if ( !(gl instanceof GL11) || !(gl instanceof GL11Ext) ) {
+			return false;
+		}
+
+		final String extensions = gl.glGetString(GL_EXTENSIONS);
+		return null != extensions && extensions.indexOf(EXTENSION) >= 0;
+	}
+
+	/**
+	 * @param gl GL10 context that {@link #isSupported(GL10)}
+	 * @return int number of palette matrices available, at least nine if
+	 * the extension is supported
+	 */
+	public static int getPaletteSize(final GL10 gl) {
+		final int[] size = new int[1];
+		gl.glGetIntegerv(GL11Ext.GL_MAX_PALETTE_MATRICES_OES, size, 0);
+		return size[0];
+	}
+
+	private void createMesh(final float width, final float height) {
+		final int verts = mPaletteSize * VERTS_PER_QUAD;
+		mDims = createDirectFloatBuffer(verts * POSITION_COMPONENTS);
+		mTexCoords = createDirectFloatBuffer(toTexCoords(verts));
+		mMatrixIndices = createDirectByteBuffer(verts);
+		mWeights = createDirectFloatBuffer(verts);
+		mIndices = createShortIndicesBuffer(mPaletteSize * INDICES_PER_QUAD);
+
+		//Corners in the order the indices expect, with the texture flipped
+		//to match the sprite grids.
+		final float[] dims = {
+				0, height, 0,
+				0, 0, 0,
+				width, height, 0,
+				width, 0, 0,
+		};
+		final float[] texCoords = {
+				0, 0,
+				0, 1,
+				1, 0,
+				1, 1,
+		};
+		for ( int quad = 0; quad < mPaletteSize; quad++ ) {
+			mDims.put(dims);
+			mTexCoords.put(texCoords);
+			for ( int vert = 0; vert < VERTS_PER_QUAD; vert++ ) {
+				mMatrixIndices.put((byte) quad);
+				mWeights.put(1);
+			}
+		}
+		mDims.position(0);
+		mTexCoords.position(0);
+		mMatrixIndices.position(0);
+		mWeights.position(0);
+	}
+
+	/**
+	 * Adds a sprite to draw.
+	 *
+	 * @param x float position of the left edge
+	 * @param y float position of the bottom edge
+	 * @param z float z coordinate
+	 */
+	public void sprite(final float x, final float y, final float z) {
+		final int offset = mSpriteCount * POSITION_COMPONENTS;
+		if ( offset + POSITION_COMPONENTS > mPositions.length ) {
+			final float[] grown = new float[growCapacity(
+					mPositions.length, offset + POSITION_COMPONENTS)];
+			System.arraycopy(mPositions, 0, grown, 0, offset);
+			mPositions = grown;
+		}
+		mPositions[offset] = x;
+		mPositions[offset + 1] = y;
+		mPositions[offset + 2] = z;
+		mSpriteCount++;
+	}
+
+	/**
+	 * Turns on the matrix palette and the per vertex arrays it reads. The
+	 * palette replaces the model view matrix until {@link #endDrawing(GL10)}.
+	 */
+	public static void beginDrawing(final GL10 gl) {
+		gl.glEnable(GL11Ext.GL_MATRIX_PALETTE_OES);
+		gl.glEnableClientState(GL_VERTEX_ARRAY);
+		gl.glEnableClientState(GL_TEXTURE_COORD_ARRAY);
+		gl.glEnableClientState(GL11Ext.GL_MATRIX_INDEX_ARRAY_OES);
+		gl.glEnableClientState(GL11Ext.GL_WEIGHT_ARRAY_OES);
+		gl.glMatrixMode(GL11Ext.GL_MATRIX_PALETTE_OES);
+	}
+
+	public static void endDrawing(final GL10 gl) {
+		gl.glMatrixMode(GL_MODELVIEW);
+		gl.glDisableClientState(GL_VERTEX_ARRAY);
+		gl.glDisableClientState(GL11Ext.GL_MATRIX_INDEX_ARRAY_OES);
+		gl.glDisableClientState(GL11Ext.GL_WEIGHT_ARRAY_OES);
+		gl.glDisable(GL11Ext.GL_MATRIX_PALETTE_OES);
+		final GL11 gl11 = (GL11) gl;
+		gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+		gl11.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	/**
+	 * Draws the sprites added since the last draw, then empties the batch.
+	 *
+	 * @param gl GL10 context
+	 */
+	public void draw(final GL10 gl) {
+		if ( 0 != mSpriteCount ) {
+			final GL11 gl11 = (GL11) gl;
+			final GL11Ext glExt = (GL11Ext) gl;
+			setPointers(gl11, glExt);
+			gl.glBindTexture(GL_TEXTURE_2D, mTextureId);
+
+			for ( int first = 0; first < mSpriteCount;
+					first += mPaletteSize ) {
+				final int count = Math.min(mPaletteSize, mSpriteCount - first);
+				for ( int i = 0; i < count; i++ ) {
+					final int offset = (first + i) * POSITION_COMPONENTS;
+					mMatrix[MATRIX_X] = mPositions[offset];
+					mMatrix[MATRIX_Y] = mPositions[offset + 1];
+					mMatrix[MATRIX_Z] = mPositions[offset + 2];
+					glExt.glCurrentPaletteMatrixOES(i);
+					gl.glLoadMatrixf(mMatrix, 0);
+				}
+				gl11.glDrawElements(GL_TRIANGLES, count * INDICES_PER_QUAD,
+						GL_UNSIGNED_SHORT, 0);
+			}
+		}
+		mSpriteCount = 0;
+	}
+
+	/**
+	 * Uploads the mesh the first time, after that just binds it.
+	 */
+	private void setPointers(final GL11 gl, final GL11Ext glExt) {
+		if ( !mDimsHardware.isAllocated() ) {
+			upload(gl, mDimsHardware, mDims, BYTES_PER_FLOAT);
+		}
+		mDimsHardware.bind(gl);
+		gl.glVertexPointer(POSITION_COMPONENTS, GL_FLOAT, 0, 0);
+
+		if ( !mTexCoordsHardware.isAllocated() ) {
+			upload(gl, mTexCoordsHardware, mTexCoords, BYTES_PER_FLOAT);
+		}
+		mTexCoordsHardware.bind(gl);
+		gl.glTexCoordPointer(TEX_COORDS_PER_VERT, GL_FLOAT, 0, 0);
+
+		if ( !mMatrixIndicesHardware.isAllocated() ) {
+			upload(gl, mMatrixIndicesHardware, mMatrixIndices, 1);
+		}
+		mMatrixIndicesHardware.bind(gl);
+		glExt.glMatrixIndexPointerOES(1, GL_UNSIGNED_BYTE, 0, 0);
+
+		if ( !mWeightsHardware.isAllocated() ) {
+			upload(gl, mWeightsHardware, mWeights, BYTES_PER_FLOAT);
+		}
+		mWeightsHardware.bind(gl);
+		glExt.glWeightPointerOES(1, GL_FLOAT, 0, 0);
+
+		if ( !mIndicesHardware.isAllocated() ) {
+			upload(gl, mIndicesHardware, mIndices, BYTES_PER_SHORT);
+		}
+		mIndicesHardware.bind(gl);
+	}
+
+	private static void upload(final GL11 gl, final HardwareBuffer hardware,
+			final Buffer data, final int bytesPerElement) {
+		final int bytes = data.capacity() * bytesPerElement;
+		hardware.upload(gl, data, 0, bytes, bytes);
+	}
+
+	/**
+	 * When the OpenGL ES context is lost the buffer names become invalid.
+	 * Forget them so the mesh is uploaded again on the next draw.
+	 */
+	public void invalidateHardwareBuffers() {
+		mDimsHardware.invalidate();
+		mTexCoordsHardware.invalidate();
+		mMatrixIndicesHardware.invalidate();
+		mWeightsHardware.invalidate();
+		mIndicesHardware.invalidate();
+	}
+
+	/**
+	 * Deletes the mesh from the graphics card, if it was uploaded.
+	 */
+	public void releaseHardwareBuffers(final GL10 gl) {
+		if ( gl instanceof GL11 ) {
+			final GL11 gl11 = (GL11) gl;
+			mDimsHardware.release(gl11);
+			mTexCoordsHardware.release(gl11);
+			mMatrixIndicesHardware.release(gl11);
+			mWeightsHardware.release(gl11);
+			mIndicesHardware.release(gl11);
+		}
+	}
+}
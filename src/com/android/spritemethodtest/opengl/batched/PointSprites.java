@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.batched;
+
+import static com.android.spritemethodtest.opengl.batched.BufferUtil.*;
+import static javax.microedition.khronos.opengles.GL10.*;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+import com.android.spritemethodtest.ProfileRecorder;
+
+/**
+ * Draws square sprites that share a texture as point sprites, using the
+ * GL_OES_point_sprite extension. Each sprite is a single vertex at its
+ * center instead of a quad of four, and no indices are needed. The texture
+ * coordinates are generated across the whole point, so unlike the other
+ * batched methods this can't draw from an atlas, it needs one instance per
+ * texture.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class PointSprites {
+
+	public static final String EXTENSION = "GL_OES_point_sprite";
+
+	private final boolean mFixed;
+
+	private final int mTextureId;
+
+	private final float mSize;
+
+	private ByteBuffer mBytes;
+
+	private IntBuffer mFixedPoints;
+
+	private FloatBuffer mFloatPoints;
+
+	private int mPointCapacity;
+
+	private int mPointCount;
+
+	/**
+	 * Creates a PointSprites instance.
+	 *
+	 * @param pointCapacity int sprites to make room for, grows if exceeded
+	 * @param fixed boolean true to use fixed point positions, false for float
+	 * @param textureId int texture all the sprites are drawn with
+	 * @param size float width and height of the sprites in pixels
+	 */
+	public PointSprites(final int pointCapacity, final boolean fixed,
+			final int textureId, final float size) {
+		mFixed = fixed;
+		mTextureId = textureId;
+		mSize = size;
+		createBuffer(Math.max(pointCapacity, 1));
+	}
+
+	/**
+	 * Checks if point sprites can be used to draw sprites of a given size.
+	 * The extension has to be there and the largest point size allowed,
+	 * which can be as small as one, has to fit the sprites.
+	 *
+	 * @param gl GL10 context
+	 * @param size float width and height of the sprites in pixels
+	 * @return true if point sprites are supported
+	 */
+	public static boolean isSupported(final GL10 gl, final float size) {
+		if ( !(gl instanceof GL11) ) {
+			return false;
+		}
+
+		final String extensions = gl.glGetString(GL_EXTENSIONS);
+		if ( null == extensions || extensions.indexOf(EXTENSION) < 0 ) {
+			return false;
+		}
+
+		final int[] range = new int[2];
+		gl.glGetIntegerv(GL_ALIASED_POINT_SIZE_RANGE, range, 0);
+		return size <= range[1];
+	}
+
+	private void createBuffer(final int pointCapacity) {
+		final ByteBuffer bytes = DirectBufferPool.sSingleton.acquire(
+				toDims(pointCapacity) * BYTES_PER_FLOAT);
+		final IntBuffer fixedPoints = bytes.asIntBuffer();
+		final FloatBuffer floatPoints = bytes.asFloatBuffer();
+
+		if ( null != mBytes ) {
+			mBytes.position(0);
+			mBytes.limit(toDims(mPointCount) * BYTES_PER_FLOAT);
+			bytes.put(mBytes);
+			DirectBufferPool.sSingleton.release(mBytes);
+		}
+
+		mBytes = bytes;
+		mFixedPoints = fixedPoints;
+		mFloatPoints = floatPoints;
+		mPointCapacity = fixedPoints.capacity() / DIMS_PER_VERT;
+	}
+
+	/**
+	 * Returns the direct buffer to the {@link DirectBufferPool}. This
+	 * instance must not be used afterward.
+	 */
+	public void release() {
+		DirectBufferPool.sSingleton.release(mBytes);
+		mBytes = null;
+		mFixedPoints = null;
+		mFloatPoints = null;
+	}
+
+	private void ensureCapacity() {
+		if ( mPointCount >= mPointCapacity ) {
+			createBuffer(growCapacity(mPointCapacity, mPointCount + 1));
+		}
+	}
+
+	/**
+	 * Adds a fixed point sprite.
+	 *
+	 * @param centerX int fixed point x coordinate of the center
+	 * @param centerY int fixed point y coordinate of the center
+	 * @param z int fixed point z coordinate
+	 */
+	public void point(final int centerX, final int centerY, final int z) {
+		ensureCapacity();
+		final int offset = toDims(mPointCount);
+		mFixedPoints.put(offset, centerX);
+		mFixedPoints.put(offset + 1, centerY);
+		mFixedPoints.put(offset + 2, z);
+		mPointCount++;
+	}
+
+	/**
+	 * Adds a floating point sprite.
+	 *
+	 * @param centerX float x coordinate of the center
+	 * @param centerY float y coordinate of the center
+	 * @param z float z coordinate
+	 */
+	public void point(final float centerX, final float centerY,
+			final float z) {
+		ensureCapacity();
+		final int offset = toDims(mPointCount);
+		mFloatPoints.put(offset, centerX);
+		mFloatPoints.put(offset + 1, centerY);
+		mFloatPoints.put(offset + 2, z);
+		mPointCount++;
+	}
+
+	/**
+	 * Turns on point sprites and turns off the texture coordinate array,
+	 * since the coordinates are generated.
+	 */
+	public static void beginDrawing(final GL10 gl) {
+		gl.glEnable(GL11.GL_POINT_SPRITE_OES);
+		gl.glTexEnvx(GL11.GL_POINT_SPRITE_OES,
+				GL11.GL_COORD_REPLACE_OES, GL_TRUE);
+		gl.glEnableClientState(GL_VERTEX_ARRAY);
+		gl.glDisableClientState(GL_TEXTURE_COORD_ARRAY);
+	}
+
+	public static void endDrawing(final GL10 gl) {
+		gl.glDisable(GL11.GL_POINT_SPRITE_OES);
+		gl.glEnableClientState(GL_TEXTURE_COORD_ARRAY);
+	}
+
+	/**
+	 * Draws the sprites added since the last draw, then empties the batch.
+	 *
+	 * @param gl GL10 context
+	 */
+	public void draw(final GL10 gl) {
+		if ( 0 != mPointCount ) {
+			gl.glBindTexture(GL_TEXTURE_2D, mTextureId);
+			gl.glPointSize(mSize);
+			if ( mFixed ) {
+				mFixedPoints.position(0);
+				gl.glVertexPointer(DIMS_PER_VERT, GL_FIXED, 0, mFixedPoints);
+			} else {
+				mFloatPoints.position(0);
+				gl.glVertexPointer(DIMS_PER_VERT, GL_FLOAT, 0, mFloatPoints);
+			}
+			gl.glDrawArrays(GL_POINTS, 0, mPointCount);
+
+			ProfileRecorder.sSingleton.count(
+					ProfileRecorder.COUNTER_DYNAMIC_LAYER_BYTES,
+					toDims(mPointCount) * BYTES_PER_FLOAT);
+		}
+		mPointCount = 0;
+	}
+}
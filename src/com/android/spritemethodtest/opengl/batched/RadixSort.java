@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.batched;
+
+/**
+ * Sorts item numbers by int keys using a least significant digit radix
+ * sort. Each pass is a stable counting sort on the next few bits, so after
+ * the last pass items are ordered by the whole key and ties are still in
+ * their original order. Passes where every item has the same bits are
+ * skipped, which is most of them when the keys only use a few values.
+ * <p>
+ * Allocates nothing after construction unless the capacity is exceeded.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class RadixSort {
+
+	//Bits of the key handled per pass.
+	private static final int RADIX_BITS = 8;
+
+	private static final int RADIX = 1 << RADIX_BITS;
+
+	private final int[] mBucketStarts = new int[RADIX];
+
+	//Item numbers in sorted order, and where each pass writes them.
+	private int[] mOrder;
+
+	private int[] mWorkspace;
+
+	/**
+	 * Creates a RadixSort instance.
+	 *
+	 * @param capacity int items to make room for, grows if exceeded
+	 */
+	public RadixSort(final int capacity) {
+		mOrder = new int[capacity];
+		mWorkspace = new int[capacity];
+	}
+
+	/**
+	 * Sorts the item numbers 0 to count - 1 by their keys.
+	 *
+	 * @param keys int[] key of each item, only the low keyBits are used
+	 * @param count int items to sort
+	 * @param keyBits int bits of the keys to sort on
+	 * @return int[] item numbers in sorted order, the first count valid.
+	 * Reused by the next sort.
+	 */
+	public int[] sort(final int[] keys, final int count, final int keyBits) {
+		if ( count > mOrder.length ) {
+			mOrder = new int[count];
+			mWorkspace = new int[count];
+		}
+		int[] order = mOrder;
+		int[] sorted = mWorkspace;
+		for( int i = 0; i < count; i++ ) {
+			order[i] = i;
+		}
+		if ( 0 == count ) {
+			return order;
+		}
+
+		final int[] starts = mBucketStarts;
+		for( int shift = 0; shift < keyBits; shift += RADIX_BITS ) {
+			for( int i = 0; i < RADIX; i++ ) {
+				starts[i] = 0;
+			}
+			for( int i = 0; i < count; i++ ) {
+				starts[(keys[i] >>> shift) & (RADIX - 1)]++;
+			}
+			if ( count == starts[(keys[0] >>> shift) & (RADIX - 1)] ) {
+				continue;
+			}
+
+			//Turn the counts into where each bucket starts.
+			int start = 0;
+			for( int i = 0; i < RADIX; i++ ) {
+				final int bucketCount = starts[i];
+				starts[i] = start;
+				start += bucketCount;
+			}
+
+			for( int i = 0; i < count; i++ ) {
+				final int item = order[i];
+				sorted[starts[(keys[item] >>> shift) & (RADIX - 1)]++] = item;
+			}
+
+			final int[] swap = order;
+			order = sorted;
+			sorted = swap;
+		}
+
+		mOrder = order;
+		mWorkspace = sorted;
+		return order;
+	}
+}
@@ -19,10 +19,15 @@ package com.android.spritemethodtest.opengl.batched;
 import static com.android.spritemethodtest.opengl.batched.BufferUtil.*;
 import static javax.microedition.khronos.opengles.GL10.*;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 
 import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+import com.android.spritemethodtest.ProfileRecorder;
 
 /**
  * Holds buffers for vertex positions and texture data that are used by 
@@ -33,31 +38,85 @@ import javax.microedition.khronos.opengles.GL10;
  * to call one method per thing you want to draw.
  *
  */
-public class SharedBuffers {
+public class SharedBuffers implements VertexPointers {
 		
+	//Smallest capacity the buffers grow from, growth doubles from here.
 	public static final int VERT_CAPACITY_INCREASE_STEP = 50 * VERTS_PER_QUAD;
+	
+	//Most vertexes drawn at once by any instance, used to pre-size new ones.
+	private static int sVertHighWaterMark;
 			
 	private IntBuffer dims;
 	
 	private IntBuffer texCoords;
+	
+	private ByteBuffer mDimsBytes;
+	
+	private ByteBuffer mTexCoordsBytes;
 
-	private ShortBuffer indices;
+	private ShortBuffer indices = getSharedIndices();
 	
 	private int mVertCapacity;
 	
 	private int mUsedVerts;
 	
+	private int mStaticVerts;
+	
 	private boolean mPointersSet;
 	
+	private int mPointersVert;
+	
+	private boolean mDrawingHardware;
+	
+	private HardwareBuffer mDimsHardware;
+	
+	private HardwareBuffer mTexCoordsHardware;
+	
+	private HardwareBuffer mIndicesHardware;
+	
+	private boolean mIndicesUploaded;
+	
+	private boolean mRetainTexCoords;
+	
+	private int mFormat = Draw.FORMAT_TRIANGLES;
+	
+	//Quads are expanded here before copying in with FORMAT_ARRAYS.
+	private int[] mArrayWorkspace;
+	
+	//Where each layer was last written, in vertexes.
+	private final int[] mLayerOffsets;
+	
+	private final int[] mLayerCounts;
+	
+	private final DirtyRange mDimsDirty = new DirtyRange();
+	
+	private final DirtyRange mTexCoordsDirty = new DirtyRange();
+	
 	private final Draw[] mRenders;
 	
 	public SharedBuffers(final int initialVertCapacity, final Draw[] renders) {
 		mRenders = renders;
-		createBuffers(initialVertCapacity);		
+		mLayerOffsets = new int[renders.length];
+		mLayerCounts = new int[renders.length];
+		createBuffers(Math.max(initialVertCapacity, sVertHighWaterMark));		
 	}
 	
+	/**
+	 * @return int most vertexes drawn at once by any instance so far, new 
+	 * instances start with at least this capacity
+	 */
+	public static int getVertHighWaterMark() {
+		return sVertHighWaterMark;
+	}
+	
+	/**
+	 * Empties the buffers, including any static layers they were holding. 
+	 * The data for those layers must be invalidated so it is written again.
+	 */
 	public void reset() {
 		mPointersSet = false;
+		mStaticVerts = 0;
+		invalidateLayers();
 		
 		for( int i = 0; i < mRenders.length; i++ ) {
 			mRenders[i].vertCount = 0;
@@ -66,37 +125,192 @@ public class SharedBuffers {
 		rewind();
 	}
 	
+	/**
+	 * Moves back to the end of the static layers so the dynamic layers can 
+	 * be written again.
+	 */
 	public void rewind() {
-		mUsedVerts = 0;
-		dims.rewind();
-		texCoords.rewind();
+		mUsedVerts = mStaticVerts;
+		dims.position(toDims(mStaticVerts));
+		texCoords.position(toTexCoords(mStaticVerts));
 	}
 		
 	private void createBuffers(final int vertCapacity) {
-				
-		mVertCapacity = vertCapacity;
-				
-		dims = createDirectIntBuffer(toDims(vertCapacity), dims);
-		texCoords = createDirectIntBuffer(toTexCoords(vertCapacity), texCoords);
-		indices = createShortIndicesBuffer(toIndices(vertCapacity), indices);	
+		
+		final DirectBufferPool pool = DirectBufferPool.sSingleton;
+		final ByteBuffer dimsBytes = 
+			pool.acquire(toDims(vertCapacity) * BYTES_PER_INT);
+		final ByteBuffer texCoordsBytes = 
+			pool.acquire(toTexCoords(vertCapacity) * BYTES_PER_INT);
+		final IntBuffer createdDims = dimsBytes.asIntBuffer();
+		final IntBuffer createdTexCoords = texCoordsBytes.asIntBuffer();
+		
+		//Keep what has been written so far, static layers may be retained.
+		if ( null != dims ) {
+			dims.flip();
+			createdDims.put(dims);
+			texCoords.flip();
+			createdTexCoords.put(texCoords);
+		}
+		release();
+		
+		mDimsBytes = dimsBytes;
+		mTexCoordsBytes = texCoordsBytes;
+		dims = createdDims;
+		texCoords = createdTexCoords;
+		
+		//Size classes may round up, so use whatever room was handed out.
+		mVertCapacity = Math.min(dims.capacity() / DIMS_PER_VERT, 
+				texCoords.capacity() / TEX_COORDS_PER_VERT);
 				
 		mPointersSet = false;	
+		
+		//Only what was written so far was copied over.
+		invalidateLayers();
+	}
+	
+	/**
+	 * Keeps each layer's texture coordinates in place between frames and 
+	 * only rewrites the quads whose image changed, plus any quads past what 
+	 * the layer had before. Otherwise they are rewritten with the vertex 
+	 * positions every time. Either way only texture coordinates written 
+	 * since the last draw are sent to vertex buffer objects.
+	 */
+	public void setRetainTexCoords(final boolean retain) {
+		mRetainTexCoords = retain;
+		invalidateLayers();
+	}
+	
+	/**
+	 * Forgets where the layers were written, so they are copied in full 
+	 * next time even if they are slotted or retain texture coordinates.
+	 */
+	private void invalidateLayers() {
+		for( int i = 0; i < mLayerOffsets.length; i++ ) {
+			mLayerOffsets[i] = -1;
+			mLayerCounts[i] = 0;
+		}
+	}
+	
+	/**
+	 * Picks how quads are laid out and submitted. Indexed triangles and 
+	 * strips share the same vertexes, with different indices. Arrays repeat 
+	 * the shared corners of each quad instead, using more vertex data but no 
+	 * indices. This empties the buffers like {@link #reset()}, so it should 
+	 * be called before anything is written.
+	 * 
+	 * @param format int {@link Draw#FORMAT_TRIANGLES}, 
+	 * {@link Draw#FORMAT_STRIP}, or {@link Draw#FORMAT_ARRAYS}
+	 */
+	public void setFormat(final int format) {
+		mFormat = format;
+		switch ( format ) {
+			case Draw.FORMAT_STRIP:
+				indices = getSharedStripIndices();
+				break;
+			case Draw.FORMAT_ARRAYS:
+				indices = null;
+				break;
+			default:
+				indices = getSharedIndices();
+				break;
+		}
+		mIndicesUploaded = false;
+		reset();
+	}
+	
+	/**
+	 * @return int vertexes the buffers hold for a number of quad vertexes 
+	 * in the current format
+	 */
+	private int toBufferVerts(final int verts) {
+		return Draw.FORMAT_ARRAYS == mFormat ? toArrayVerts(verts) : verts;
+	}
+	
+	/**
+	 * Returns the direct buffers to the {@link DirectBufferPool} so another 
+	 * instance can reuse them. This instance must not be used afterward.
+	 */
+	public void release() {
+		DirectBufferPool.sSingleton.release(mDimsBytes);
+		DirectBufferPool.sSingleton.release(mTexCoordsBytes);
+		mDimsBytes = null;
+		mTexCoordsBytes = null;
+		dims = null;
+		texCoords = null;
+	}
+	
+	/**
+	 * Streams the vertex data into vertex buffer objects every time it is 
+	 * drawn instead of having the driver read it from client side arrays. 
+	 * The indices never change, so they are only uploaded once. 
+	 * Requires GL11, client side arrays are still used if it is not available.
+	 * 
+	 * @param updateMethod int {@link HardwareBuffer#UPDATE_ORPHAN} or 
+	 * {@link HardwareBuffer#UPDATE_SUB_DATA}
+	 */
+	public void useHardwareBuffers(final int updateMethod) {
+		mDimsHardware = new HardwareBuffer(GL11.GL_ARRAY_BUFFER, 
+				GL11.GL_DYNAMIC_DRAW, updateMethod, BYTES_PER_INT);
+		mTexCoordsHardware = new HardwareBuffer(GL11.GL_ARRAY_BUFFER, 
+				GL11.GL_DYNAMIC_DRAW, updateMethod, BYTES_PER_INT);
+		mIndicesHardware = new HardwareBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 
+				GL11.GL_STATIC_DRAW, HardwareBuffer.UPDATE_ORPHAN, 
+				BYTES_PER_SHORT);
+		mIndicesUploaded = false;
+		mDimsDirty.mark(0, mVertCapacity);
+		mTexCoordsDirty.mark(0, mVertCapacity);
+	}
+	
+	/**
+	 * Deletes any vertex buffer objects created by 
+	 * {@link #useHardwareBuffers(int)}.
+	 */
+	public void releaseHardwareBuffers(final GL10 gl) {
+		if ( null != mDimsHardware && gl instanceof GL11 ) {
+			final GL11 gl11 = (GL11) gl;
+			mDimsHardware.release(gl11);
+			mTexCoordsHardware.release(gl11);
+			mIndicesHardware.release(gl11);
+			mIndicesUploaded = false;
+			mDimsDirty.mark(0, mVertCapacity);
+			mTexCoordsDirty.mark(0, mVertCapacity);
+		}
 	}
 	
 	public void update(final DrawData[] updates) {			
 		final int count = Math.min(updates.length, mRenders.length);
 		for( int i = 0; i < count; i++ ) {
-			update(updates[i], mRenders[i]);
+			update(updates[i], mRenders[i], i);
 		}		
 	}
 	
-	private void update(final DrawData update, final Draw render) {
+	/**
+	 * Copies a layer into the buffers. Static layers at the start of the 
+	 * buffers are only copied once, after that the dynamic layers are written 
+	 * after them. A static layer following a dynamic layer can't be kept 
+	 * in place, so it is copied every time like a dynamic one. Slotted 
+	 * layers that are where they were last time only have their dirty 
+	 * quads copied.
+	 */
+	private void update(final DrawData update, final Draw render, 
+			final int layer) {
 		if ( null == update || null == render ) return;
 		
-		render.vertCount = update.vertCount;
+		if ( update.isRetained() ) {
+			render.countBytesWritten(0);
+			return;
+		}
+		
+		final boolean retain = update.isStatic() 
+			&& dims.position() == toDims(mStaticVerts);
+		
+		render.vertCount = toBufferVerts(update.vertCount);
 		render.vertOffset = dims.position() / DIMS_PER_VERT;
 		
 		if ( 0 == update.vertCount ) {
+			mLayerCounts[layer] = 0;
+			render.countBytesWritten(0);
 			return;
 		}
 		
@@ -104,48 +318,264 @@ public class SharedBuffers {
 		final int endOnQuadAdjustment = 
 			0 == pastQuadBoundary ? 0 : 4 - pastQuadBoundary;
 		
-		mUsedVerts += update.vertCount + endOnQuadAdjustment;
+		mUsedVerts += toBufferVerts(update.vertCount + endOnQuadAdjustment);
 		ensureCapacity();
 		
-		dims.put(update.dims, 0, update.vertCount * DIMS_PER_VERT);
-		texCoords.put(
-				update.texCoords, 0, update.vertCount * TEX_COORDS_PER_VERT);
+		final int vertOffset = render.vertOffset;
+		final int bytes;
+		if ( update.isSlotted() && vertOffset == mLayerOffsets[layer] ) {
+			final int copied = toBufferVerts(
+					patchSlots(update, vertOffset, mLayerCounts[layer]));
+			bytes = (toDims(copied) + toTexCoords(copied)) * BYTES_PER_INT;
+		} else {
+			put(dims, update.dims, DIMS_PER_VERT, 
+					vertOffset, 0, update.vertCount);
+			mDimsDirty.mark(vertOffset, vertOffset + render.vertCount);
+			final int texCoordsVerts = writeTexCoords(update, vertOffset, 
+					vertOffset == mLayerOffsets[layer] 
+					? mLayerCounts[layer] : -1);
+			bytes = (toDims(render.vertCount) 
+					+ toTexCoords(texCoordsVerts)) * BYTES_PER_INT;
+		}
+		
+		mLayerOffsets[layer] = vertOffset;
+		mLayerCounts[layer] = update.vertCount;
+		dims.position(toDims(mUsedVerts));
+		texCoords.position(toTexCoords(mUsedVerts));
 
-		if ( endOnQuadAdjustment > 0 ) {
-			dims.position(dims.position() 
-					+ (endOnQuadAdjustment * DIMS_PER_VERT));
-			texCoords.position(texCoords.position() 
-					+ (endOnQuadAdjustment * TEX_COORDS_PER_VERT));
-		}		
+		render.countBytesWritten(bytes);
+		ProfileRecorder.sSingleton.count(update.isStatic() 
+				? ProfileRecorder.COUNTER_STATIC_LAYER_BYTES 
+				: ProfileRecorder.COUNTER_DYNAMIC_LAYER_BYTES, bytes);
+		
+		if ( retain ) {
+			mStaticVerts = mUsedVerts;
+			update.retain();
+		}
 
 		update.reset();
 	} 
 		
+	/**
+	 * Copies a layer's texture coordinates, or just the ones that changed if 
+	 * they are retained and the layer is where it was last time.
+	 * 
+	 * @param writtenVerts int vertexes of the layer already in place from 
+	 * last time, or -1 if it moved
+	 * @return int number of buffer vertexes whose texture coordinates were 
+	 * copied
+	 */
+	private int writeTexCoords(final DrawData update, final int vertOffset, 
+			final int writtenVerts) {
+		int start = 0;
+		int end = update.vertCount;
+		
+		if ( mRetainTexCoords && writtenVerts >= 0 ) {
+			final int dirtyStart = update.getTexCoordsDirtyStart();
+			final int dirtyEnd = 
+				Math.min(update.getTexCoordsDirtyEnd(), update.vertCount);
+			
+			//Quads past what was written before are always copied.
+			start = writtenVerts;
+			if ( start >= end ) {
+				start = dirtyStart;
+				end = dirtyEnd;
+			} else if ( dirtyStart < dirtyEnd ) {
+				start = Math.min(start, dirtyStart);
+			}
+		}
+		
+		if ( start >= end ) {
+			return 0;
+		}
+		
+		put(texCoords, update.texCoords, TEX_COORDS_PER_VERT, 
+				vertOffset + toBufferVerts(start), start, end - start);
+		mTexCoordsDirty.mark(vertOffset + toBufferVerts(start), 
+				vertOffset + toBufferVerts(end));
+		return toBufferVerts(end - start);
+	}
+	
+	/**
+	 * Copies just the dirty quads of a slotted layer that is where it was 
+	 * last time, plus any quads past what was written before.
+	 * 
+	 * @param writtenVerts int vertexes of the layer already in place
+	 * @return int number of vertexes copied
+	 */
+	private int patchSlots(final DrawData update, final int vertOffset, 
+			final int writtenVerts) {
+		int copied = 0;
+		
+		final int dirtySlots = update.getDirtySlotCount();
+		for( int i = 0; i < dirtySlots; i++ ) {
+			final int vert = update.getDirtySlot(i) * VERTS_PER_QUAD;
+			if ( vert < writtenVerts ) {
+				copyVerts(update, vertOffset, vert, VERTS_PER_QUAD);
+				copied += VERTS_PER_QUAD;
+			}
+		}
+		
+		if ( writtenVerts < update.vertCount ) {
+			copyVerts(update, vertOffset, 
+					writtenVerts, update.vertCount - writtenVerts);
+			copied += update.vertCount - writtenVerts;
+		}
+		
+		ProfileRecorder.sSingleton.count(
+				ProfileRecorder.COUNTER_DIRTY_QUADS, dirtySlots);
+		return copied;
+	}
+	
+	private void copyVerts(final DrawData update, final int vertOffset, 
+			final int firstVert, final int vertCount) {
+		final int start = vertOffset + toBufferVerts(firstVert);
+		final int end = start + toBufferVerts(vertCount);
+		
+		put(dims, update.dims, DIMS_PER_VERT, start, firstVert, vertCount);
+		mDimsDirty.mark(start, end);
+		
+		put(texCoords, update.texCoords, TEX_COORDS_PER_VERT, 
+				start, firstVert, vertCount);
+		mTexCoordsDirty.mark(start, end);
+	}
+	
+	/**
+	 * Copies quad vertexes into a buffer, expanding them first for 
+	 * {@link Draw#FORMAT_ARRAYS}.
+	 * 
+	 * @param bufferVert int buffer vertex to start writing at
+	 * @param firstVert int quad vertex of the data to start from
+	 * @param vertCount int quad vertexes to copy
+	 */
+	private void put(final IntBuffer buffer, final int[] data, 
+			final int componentsPerVert, final int bufferVert, 
+			final int firstVert, final int vertCount) {
+		buffer.position(bufferVert * componentsPerVert);
+		if ( Draw.FORMAT_ARRAYS != mFormat ) {
+			buffer.put(data, firstVert * componentsPerVert, 
+					vertCount * componentsPerVert);
+			return;
+		}
+		
+		final int length = toArrayVerts(vertCount) * componentsPerVert;
+		if ( null == mArrayWorkspace || mArrayWorkspace.length < length ) {
+			mArrayWorkspace = new int[growCapacity(
+					null == mArrayWorkspace ? 0 : mArrayWorkspace.length, 
+					length)];
+		}
+		expandQuads(data, firstVert, vertCount / VERTS_PER_QUAD, 
+				componentsPerVert, mArrayWorkspace);
+		buffer.put(mArrayWorkspace, 0, length);
+	}
+		
 	private void ensureCapacity() {
 		if ( mUsedVerts > mVertCapacity ) {
 
-			//Increase is minimum number of increase steps to reach amount.
-			int newCapacity = mVertCapacity + VERT_CAPACITY_INCREASE_STEP;
-			while ( newCapacity < mUsedVerts ) {
-				newCapacity += VERT_CAPACITY_INCREASE_STEP;
-			}
-			createBuffers(newCapacity);
+			createBuffers(growCapacity(
+					Math.max(mVertCapacity, VERT_CAPACITY_INCREASE_STEP), 
+					mUsedVerts));
 		}		
 	}
 	
 	public void draw(final GL10 gl) {
 
+		final int usedVerts = mUsedVerts;
 		rewind();
 		
-		if ( !mPointersSet ) {
+		if ( usedVerts > sVertHighWaterMark ) {
+			sVertHighWaterMark = usedVerts;
+		}
+		
+		if ( null != mDimsHardware && gl instanceof GL11 ) {
+			drawHardware((GL11) gl, usedVerts);
+			return;
+		}
+		
+		for( int i = 0; i < mRenders.length; i++ ) {
+			mRenders[i].render(gl, mFormat, indices, this);
+		}
+	}
+	
+	public void setPointers(final GL10 gl, final int firstVert) {
+		if ( mPointersSet && firstVert == mPointersVert ) return;
+		
+		if ( mDrawingHardware ) {
+			final GL11 gl11 = (GL11) gl;
+			mDimsHardware.bind(gl11);
+			gl11.glVertexPointer(
+					3, GL_FIXED, 0, toDims(firstVert) * BYTES_PER_INT);
+			mTexCoordsHardware.bind(gl11);
+			gl11.glTexCoordPointer(
+					2, GL_FIXED, 0, toTexCoords(firstVert) * BYTES_PER_INT);
+		} else {
+			dims.position(toDims(firstVert));
+			texCoords.position(toTexCoords(firstVert));
 			gl.glVertexPointer(3, GL_FIXED, 0, dims);
 		 	gl.glTexCoordPointer(2, GL_FIXED, 0, texCoords);
-			mPointersSet = true;
-		}		
-
+			rewind();
+		}
+		
+		mPointersSet = true;
+		mPointersVert = firstVert;
+	}
+	
+	private void drawHardware(final GL11 gl, final int usedVerts) {
+		
+		int uploadedBytes = 0;
+		
+		if ( !mIndicesUploaded && null != indices ) {
+			final int indicesBytes = indices.capacity() * BYTES_PER_SHORT;
+			uploadedBytes += mIndicesHardware.upload(
+					gl, indices, 0, indicesBytes, indicesBytes);
+			mIndicesUploaded = true;
+		}
+		
+		//Only what was written since the last draw needs sending, which is 
+		//nothing at all if every layer was static or unchanged.
+		uploadedBytes += upload(gl, mDimsHardware, dims, 
+				mDimsDirty, DIMS_PER_VERT, usedVerts);
+		uploadedBytes += upload(gl, mTexCoordsHardware, texCoords, 
+				mTexCoordsDirty, TEX_COORDS_PER_VERT, usedVerts);
+		
+		rewind();
+		ProfileRecorder.sSingleton.count(
+				ProfileRecorder.COUNTER_HARDWARE_UPLOAD_BYTES, uploadedBytes);
+		
+		if ( null != indices ) {
+			mIndicesHardware.bind(gl);
+		}
+		
+		//Pointers are set per segment as the draws need them.
+		mPointersSet = false;
+		mDrawingHardware = true;
 		for( int i = 0; i < mRenders.length; i++ ) {
-			mRenders[i].render(gl, indices);
+			mRenders[i].render(gl, mFormat, null, this);
 		}
+		mDrawingHardware = false;
+		
+		gl.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+		gl.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+		
+		//The pointers now refer to the buffer objects.
+		mPointersSet = false;
+	}
+	
+	private int upload(final GL11 gl, final HardwareBuffer hardware, 
+			final Buffer data, final DirtyRange dirty, 
+			final int componentsPerVert, final int usedVerts) {
+		final int dirtyEnd = Math.min(dirty.end, usedVerts);
+		if ( dirty.start >= dirtyEnd ) {
+			return 0;
+		}
+		
+		final int uploaded = hardware.upload(gl, data, 
+				dirty.start * componentsPerVert * BYTES_PER_INT, 
+				dirtyEnd * componentsPerVert * BYTES_PER_INT, 
+				usedVerts * componentsPerVert * BYTES_PER_INT, 
+				data.capacity() * BYTES_PER_INT);
+		dirty.clear();
+		return uploaded;
 	}
 	
 }
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.batched;
+
+import static com.android.spritemethodtest.opengl.batched.BufferUtil.*;
+import static javax.microedition.khronos.opengles.GL10.*;
+
+import java.nio.ShortBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import com.android.spritemethodtest.ProfileRecorder;
+
+/**
+ * Batches sprites drawn from any number of textures, called pages here,
+ * with any of several blend modes. Sprites can be submitted in any order.
+ * Each frame they are sorted by a key packing their layer, blend mode, and
+ * page, then written into one set of shared buffers. Every run of sprites
+ * with the same key is one draw call, and the texture and blend mode are
+ * only changed when the next run needs something different.
+ * <p>
+ * Layers keep things drawn in the order you want, like a background before
+ * the sprites on top of it. Within a layer sprites are grouped by state,
+ * so sprites that overlap need to be on different layers if the one on top
+ * must stay on top. The sort is stable, so sprites with the same key keep
+ * the order they were submitted in.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class SpriteBatcher implements VertexPointers {
+
+	public static final int BLEND_NONE = 0;
+
+	//Source alpha over the destination, for images without premultiplied
+	//alpha like the ones loaded by the sample.
+	public static final int BLEND_ALPHA = 1;
+
+	//Adds the source to the destination, for glows and particles.
+	public static final int BLEND_ADDITIVE = 2;
+
+	//Like BLEND_ALPHA, but for images with premultiplied alpha.
+	public static final int BLEND_PREMULTIPLIED = 3;
+
+	/**
+	 * Texture coordinates of a quad covering an entire page, for pages that
+	 * hold a single image instead of an atlas.
+	 */
+	public static final float[] WHOLE_PAGE = new float[] {
+        // U, V
+		0f, 1f,
+		0f, 0f,
+		1f, 1f,
+		1f, 0f,
+	};
+
+	//Bits of the sort key used by each part, page in the lowest ones.
+	private static final int PAGE_BITS = 12;
+
+	private static final int BLEND_BITS = 4;
+
+	private static final int LAYER_BITS = 8;
+
+	public static final int MAX_PAGES = 1 << PAGE_BITS;
+
+	public static final int MAX_LAYERS = 1 << LAYER_BITS;
+
+	private static final int KEY_BITS = PAGE_BITS + BLEND_BITS + LAYER_BITS;
+
+	//Position and size for each sprite.
+	private static final int FLOATS_PER_SPRITE = 5;
+
+	private final FloatDrawData mData;
+
+	private final FloatDrawData[] mUpdates;
+
+	private final Draw mLayer = new Draw();
+
+	private final Draw mRun = new Draw();
+
+	private final FloatSharedBuffers mBuffers;
+
+	private int[] mPages = new int[4];
+
+	private int mPageCount;
+
+	private int[] mKeys;
+
+	private float[] mRects;
+
+	private float[][] mTextures;
+
+	private int mSpriteCount;
+
+	//Grows itself, so it's kept when the other arrays are.
+	private final RadixSort mSort;
+
+	/**
+	 * Draw calls made by the last {@link #draw(GL10)}.
+	 */
+	public int drawCalls;
+
+	/**
+	 * Texture binds made by the last {@link #draw(GL10)}.
+	 */
+	public int textureBinds;
+
+	/**
+	 * Creates a SpriteBatcher instance.
+	 *
+	 * @param spriteCapacity int sprites to make room for, grows if exceeded
+	 */
+	public SpriteBatcher(final int spriteCapacity) {
+		final int capacity = Math.max(spriteCapacity, 1);
+		createArrays(capacity);
+		mSort = new RadixSort(capacity);
+		mData = new FloatDrawData(capacity * VERTS_PER_QUAD);
+		mUpdates = new FloatDrawData[] { mData };
+		mBuffers = new FloatSharedBuffers(
+				capacity * VERTS_PER_QUAD, new Draw[] { mLayer });
+	}
+
+	private void createArrays(final int spriteCapacity) {
+		final int[] keys = new int[spriteCapacity];
+		final float[] rects = new float[spriteCapacity * FLOATS_PER_SPRITE];
+		final float[][] textures = new float[spriteCapacity][];
+		if ( null != mKeys ) {
+			System.arraycopy(mKeys, 0, keys, 0, mSpriteCount);
+			System.arraycopy(mRects, 0,
+					rects, 0, mSpriteCount * FLOATS_PER_SPRITE);
+			System.arraycopy(mTextures, 0, textures, 0, mSpriteCount);
+		}
+		mKeys = keys;
+		mRects = rects;
+		mTextures = textures;
+	}
+
+	/**
+	 * Adds a texture sprites can be drawn from. Adding the same texture
+	 * again returns the page it already has.
+	 *
+	 * @param textureName int texture name
+	 * @return int page to pass to {@link #sprite}
+	 */
+	public int addPage(final int textureName) {
+		for( int i = 0; i < mPageCount; i++ ) {
+			if ( textureName == mPages[i] ) {
+				return i;
+			}
+		}
+		if ( MAX_PAGES == mPageCount ) {
+			throw new IllegalStateException(
+					"No more than " + MAX_PAGES + " pages are supported.");
+		}
+		if ( mPageCount == mPages.length ) {
+			final int[] pages = new int[mPages.length * 2];
+			System.arraycopy(mPages, 0, pages, 0, mPageCount);
+			mPages = pages;
+		}
+		mPages[mPageCount] = textureName;
+		return mPageCount++;
+	}
+
+	/**
+	 * Forgets all the pages, for when the textures are deleted or lost.
+	 */
+	public void clearPages() {
+		mPageCount = 0;
+		mSpriteCount = 0;
+	}
+
+	/**
+	 * Submits a sprite to be drawn by the next {@link #draw(GL10)}.
+	 *
+	 * @param layer int from 0 to {@link #MAX_LAYERS} - 1, lower layers
+	 * are drawn first
+	 * @param blend int {@link #BLEND_NONE}, {@link #BLEND_ALPHA},
+	 * {@link #BLEND_ADDITIVE}, or {@link #BLEND_PREMULTIPLIED}
+	 * @param page int from {@link #addPage(int)}
+	 * @param texture float[] quad texture coordinates within the page, like
+	 * the ones from TextureAtlas or {@link #WHOLE_PAGE}
+	 */
+	public void sprite(final int layer, final int blend, final int page,
+			final float left, final float top, final float width,
+			final float height, final float z, final float[] texture) {
+		if ( mSpriteCount == mKeys.length ) {
+			createArrays(growCapacity(mKeys.length, mSpriteCount + 1));
+		}
+
+		mKeys[mSpriteCount] =
+			(layer << (BLEND_BITS + PAGE_BITS)) | (blend << PAGE_BITS) | page;
+		int offset = mSpriteCount * FLOATS_PER_SPRITE;
+		mRects[offset++] = left;
+		mRects[offset++] = top;
+		mRects[offset++] = width;
+		mRects[offset++] = height;
+		mRects[offset++] = z;
+		mTextures[mSpriteCount] = texture;
+		mSpriteCount++;
+	}
+
+	/**
+	 * Sorts and draws the sprites submitted since the last call, then
+	 * empties the batch. Expects blending, texturing, and the vertex and
+	 * texture coordinate arrays to be enabled, like the other batched
+	 * methods. Leaves blending enabled or disabled for the last run.
+	 *
+	 * @param gl GL10 context
+	 */
+	public void draw(final GL10 gl) {
+		drawCalls = 0;
+		textureBinds = 0;
+		if ( 0 == mSpriteCount ) {
+			return;
+		}
+
+		//Stable, so ties stay in submission order.
+		final int[] order = mSort.sort(mKeys, mSpriteCount, KEY_BITS);
+		for( int i = 0; i < mSpriteCount; i++ ) {
+			final int sprite = order[i];
+			final int offset = sprite * FLOATS_PER_SPRITE;
+			mData.quad(mRects[offset], mRects[offset + 1],
+					mRects[offset + 2], mRects[offset + 3],
+					mRects[offset + 4], mTextures[sprite]);
+		}
+		mBuffers.update(mUpdates);
+
+		final ShortBuffer indices = getSharedIndices();
+		int boundPage = -1;
+		int currentBlend = -1;
+		int runStart = 0;
+		while ( runStart < mSpriteCount ) {
+			final int key = mKeys[order[runStart]];
+			int runEnd = runStart + 1;
+			while ( runEnd < mSpriteCount && key == mKeys[order[runEnd]] ) {
+				runEnd++;
+			}
+
+			final int blend = (key >>> PAGE_BITS) & ((1 << BLEND_BITS) - 1);
+			if ( blend != currentBlend ) {
+				setBlend(gl, blend);
+				currentBlend = blend;
+			}
+
+			final int page = key & (MAX_PAGES - 1);
+			if ( page != boundPage ) {
+				gl.glBindTexture(GL_TEXTURE_2D, mPages[page]);
+				boundPage = page;
+				textureBinds++;
+			}
+
+			mRun.vertOffset = mLayer.vertOffset + runStart * VERTS_PER_QUAD;
+			mRun.vertCount = (runEnd - runStart) * VERTS_PER_QUAD;
+			mRun.render(gl, Draw.FORMAT_TRIANGLES, indices, this);
+			drawCalls += mRun.drawCalls;
+
+			runStart = runEnd;
+		}
+
+		mBuffers.rewind();
+		mSpriteCount = 0;
+
+		ProfileRecorder.sSingleton.count(
+				ProfileRecorder.COUNTER_TEXTURE_BINDS, textureBinds);
+	}
+
+	private static void setBlend(final GL10 gl, final int blend) {
+		switch ( blend ) {
+			case BLEND_NONE:
+				gl.glDisable(GL_BLEND);
+				return;
+			case BLEND_ADDITIVE:
+				gl.glBlendFunc(GL_SRC_ALPHA, GL_ONE);
+				break;
+			case BLEND_PREMULTIPLIED:
+				gl.glBlendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
+				break;
+			default:
+				gl.glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+				break;
+		}
+		gl.glEnable(GL_BLEND);
+	}
+
+	public void setPointers(final GL10 gl, final int firstVert) {
+		mBuffers.setPointers(gl, firstVert);
+	}
+
+	/**
+	 * Returns the direct buffers to the {@link DirectBufferPool}. This
+	 * instance must not be used afterward.
+	 */
+	public void release() {
+		mBuffers.release();
+	}
+}
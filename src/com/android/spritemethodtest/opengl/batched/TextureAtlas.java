@@ -21,10 +21,10 @@ import com.android.spritemethodtest.R;
 /**
  * A large composite image containing several smaller images. This allows 
  * drawing any of the smaller images while the larger image is bound as a 
- * texture. This image was so simple that it was composed and the texture 
- * coordinates calculate by hand. Usually you would use a tool do to that like 
- * the mk_atlas.pl script from the Cocos2D game framework:<br />
- * http://github.com/cocos2d/cocos2d-iphone/blob/212f546c9656e0f6b164df89198164ca31311497/tools/mkatlas.pl
+ * texture. The image and the texture coordinates are generated before 
+ * packaging the app by tools/AtlasPacker.java, into {@link PackedAtlas}. 
+ * The background is packed in the same page as the robots, so the batched 
+ * methods only need one texture for the whole frame.
  * <p>
  * Generating the atlas at app start time can result in long load times and 
  * high initial memory use, so generating the image before packaging the app 
@@ -36,14 +36,19 @@ import com.android.spritemethodtest.R;
 public class TextureAtlas {
 	
 	/**
-	 * Resource ID of the large composite image.
+	 * Resource ID of the large composite image holding the robots.
 	 */
-	public static final int RESOURCE_ID = R.raw.skate_atlas; 
+	public static final int RESOURCE_ID = PackedAtlas.PAGE_RESOURCE_IDS[
+			PackedAtlas.getPage(R.drawable.skate1)]; 
 	
 	/**
-	 * Resource ID of the background image. It is handled on its own for now.
+	 * Resource ID of the composite image holding the background. The same 
+	 * as {@link #RESOURCE_ID} unless the background had to go on its own 
+	 * page.
 	 */
-	public static final int BACKGROUND_RESOURCE_ID = R.drawable.background; 
+	public static final int BACKGROUND_RESOURCE_ID = 
+		PackedAtlas.PAGE_RESOURCE_IDS[
+				PackedAtlas.getPage(R.drawable.background)]; 
 	
 	/**
 	 * Gets the fixed point texture coordinates for the requested resource ID 
@@ -55,17 +60,7 @@ public class TextureAtlas {
 	 * @return int[] or null if not found
 	 */
 	public static final int[] getFixedCoords(final int resourceId) {
-		switch ( resourceId ) {
-			case R.drawable.skate1:
-				return SKATE_1_FIXED;
-			case R.drawable.skate2:
-				return SKATE_2_FIXED;
-			case R.drawable.skate3:
-				return SKATE_3_FIXED;
-			case R.drawable.background:
-				return BACKGROUND_FIXED;
-		}
-		return null;
+		return PackedAtlas.getFixedCoords(resourceId);
 	}
 	
 	/**
@@ -77,65 +72,29 @@ public class TextureAtlas {
 	 * @return float[] or null if not found
 	 */	
 	public static final float[] getFloatCoords(final int resourceId) {
-		switch ( resourceId ) {
-			case R.drawable.skate1:
-				return SKATE_1_FLOAT;
-			case R.drawable.skate2:
-				return SKATE_2_FLOAT;
-			case R.drawable.skate3:
-				return SKATE_3_FLOAT;
-			case R.drawable.background:
-				return BACKGROUND_FLOAT;
-		}
-		return null;
+		return PackedAtlas.getFloatCoords(resourceId);
 	}
 	
-	private static final int[] fix(final float[] input) {
-		final int[] result = new int[input.length];
-		for(int i = 0; i < input.length; i++ ) {
-			result[i] = FixedPointUtil.fix(input[i]);
-		}
-		return result;
+	/**
+	 * Gets the width the requested resource was packed at. Other density 
+	 * folders can hold a different size of the same image, so sprites drawn 
+	 * from the atlas are sized from this rather than the resource.
+	 * 
+	 * @param resourceId int resource ID
+	 * @return int pixels, or 0 if not found
+	 */
+	public static final int getWidth(final int resourceId) {
+		return PackedAtlas.getWidth(resourceId);
 	}
 	
-	private static final float[] BACKGROUND_FLOAT = new float[] {
-        // U, V
-		0f, 1f,
-		0f, 0f,
-		1f, 1f,
-		1f, 0f,
-	};
-	
-	private static final float[] SKATE_1_FLOAT = new float[] {
-        // U, V
-		0f, 0.25f,
-		0f,    0f,
-		1f, 0.25f,
-		1f,    0f,
-	};
-	
-	private static final float[] SKATE_2_FLOAT = new float[] {
-        // U, V
-		0f, 0.50f,
-		0f, 0.25f,
-		1f, 0.50f,
-		1f, 0.25f,
-	};
-	
-	private static final float[] SKATE_3_FLOAT = new float[] {
-        // U, V
-		0f, 0.75f,
-		0f, 0.50f,
-		1f, 0.75f,
-		1f, 0.50f,
-	};
-
-	
-	private static final int[] BACKGROUND_FIXED = fix(BACKGROUND_FLOAT);
-
-	private static final int[] SKATE_1_FIXED = fix(SKATE_1_FLOAT);
-
-	private static final int[] SKATE_2_FIXED = fix(SKATE_2_FLOAT);
-
-	private static final int[] SKATE_3_FIXED = fix(SKATE_3_FLOAT);
+	/**
+	 * Gets the height the requested resource was packed at. See 
+	 * {@link #getWidth(int)}.
+	 * 
+	 * @param resourceId int resource ID
+	 * @return int pixels, or 0 if not found
+	 */
+	public static final int getHeight(final int resourceId) {
+		return PackedAtlas.getHeight(resourceId);
+	}
 }
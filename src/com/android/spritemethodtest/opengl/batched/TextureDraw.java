@@ -21,6 +21,8 @@ import java.nio.ShortBuffer;
 
 import javax.microedition.khronos.opengles.GL10;
 
+import com.android.spritemethodtest.ProfileRecorder;
+
 /**
  * Performs a draw call using a specified texture and blend mode.
  * 
@@ -29,6 +31,12 @@ import javax.microedition.khronos.opengles.GL10;
  */
 public class TextureDraw extends Draw {
 	
+	/**
+	 * Texture name that leaves the texture bound by the draw before alone, 
+	 * for draws from the same atlas page.
+	 */
+	public static final int KEEP_BOUND = -1;
+	
 	private int textureName;
 	
 	private boolean blend;
@@ -36,7 +44,7 @@ public class TextureDraw extends Draw {
 	/**
 	 * Creates a TextureDraw instance.
 	 * 
-	 * @param textureName int texture to bind
+	 * @param textureName int texture to bind, or {@link #KEEP_BOUND}
 	 * @param blend boolean true to enable blending, false to disable
 	 */
 	public TextureDraw(int textureName, boolean blend) {
@@ -45,13 +53,18 @@ public class TextureDraw extends Draw {
 	}
 	
 	@Override
-	public void render(GL10 gl, ShortBuffer indices) {
+	public void render(GL10 gl, int format, ShortBuffer indices, 
+			VertexPointers pointers) {
 		if (blend) {
 			gl.glEnable(GL_BLEND);
 		} else {
 			gl.glDisable(GL_BLEND);
 		}
-		gl.glBindTexture(GL_TEXTURE_2D, textureName);
-		super.render(gl, indices);
+		if (KEEP_BOUND != textureName) {
+			gl.glBindTexture(GL_TEXTURE_2D, textureName);
+			ProfileRecorder.sSingleton.count(
+					ProfileRecorder.COUNTER_TEXTURE_BINDS, 1);
+		}
+		super.render(gl, format, indices, pointers);
 	}
 }
\ No newline at end of file
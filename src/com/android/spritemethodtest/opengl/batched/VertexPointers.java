@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.batched;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Buffers that can point the OpenGL vertex arrays at any vertex they hold. 
+ * 16 bit indices can only reach {@link BufferUtil#VERTS_PER_SEGMENT} 
+ * vertexes, so a {@link Draw} covering more than that moves the pointers 
+ * to the start of each segment and reuses the same indices for all of them.
+ *
+ * @author Lance Nanek
+ *
+ */
+public interface VertexPointers {
+
+	/**
+	 * Sets the vertex array pointers so index zero refers to the requested 
+	 * vertex. Implementations should skip the GL calls if the pointers are 
+	 * already there.
+	 * 
+	 * @param gl GL10 context
+	 * @param firstVert int vertex that index zero should refer to
+	 */
+	void setPointers(GL10 gl, int firstVert);
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.shader;
+
+import java.nio.Buffer;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+/**
+ * Passes {@link ShaderGL} calls straight through to GLES20.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class AndroidShaderGL implements ShaderGL {
+
+	public int glCreateShader(final int type) {
+		return GLES20.glCreateShader(type);
+	}
+
+	public void glShaderSource(final int shader, final String source) {
+		GLES20.glShaderSource(shader, source);
+	}
+
+	public void glCompileShader(final int shader) {
+		GLES20.glCompileShader(shader);
+	}
+
+	public void glGetShaderiv(final int shader, final int pname,
+			final int[] params, final int offset) {
+		GLES20.glGetShaderiv(shader, pname, params, offset);
+	}
+
+	public String glGetShaderInfoLog(final int shader) {
+		return GLES20.glGetShaderInfoLog(shader);
+	}
+
+	public void glDeleteShader(final int shader) {
+		GLES20.glDeleteShader(shader);
+	}
+
+	public int glCreateProgram() {
+		return GLES20.glCreateProgram();
+	}
+
+	public void glAttachShader(final int program, final int shader) {
+		GLES20.glAttachShader(program, shader);
+	}
+
+	public void glLinkProgram(final int program) {
+		GLES20.glLinkProgram(program);
+	}
+
+	public void glGetProgramiv(final int program, final int pname,
+			final int[] params, final int offset) {
+		GLES20.glGetProgramiv(program, pname, params, offset);
+	}
+
+	public String glGetProgramInfoLog(final int program) {
+		return GLES20.glGetProgramInfoLog(program);
+	}
+
+	public void glDeleteProgram(final int program) {
+		GLES20.glDeleteProgram(program);
+	}
+
+	public void glUseProgram(final int program) {
+		GLES20.glUseProgram(program);
+	}
+
+	public int glGetAttribLocation(final int program, final String name) {
+		return GLES20.glGetAttribLocation(program, name);
+	}
+
+	public int glGetUniformLocation(final int program, final String name) {
+		return GLES20.glGetUniformLocation(program, name);
+	}
+
+	public void glUniform1i(final int location, final int x) {
+		GLES20.glUniform1i(location, x);
+	}
+
+	public void glUniform4fv(final int location, final int count,
+			final float[] v, final int offset) {
+		GLES20.glUniform4fv(location, count, v, offset);
+	}
+
+	public void glUniformMatrix4fv(final int location, final int count,
+			final boolean transpose, final float[] value, final int offset) {
+		GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+	}
+
+	public void glEnableVertexAttribArray(final int index) {
+		GLES20.glEnableVertexAttribArray(index);
+	}
+
+	public void glVertexAttribPointer(final int index, final int size,
+			final int type, final boolean normalized, final int stride,
+			final Buffer pointer) {
+		GLES20.glVertexAttribPointer(
+				index, size, type, normalized, stride, pointer);
+	}
+
+	public void glDrawElements(final int mode, final int count,
+			final int type, final Buffer indices) {
+		GLES20.glDrawElements(mode, count, type, indices);
+	}
+
+	public void glViewport(final int x, final int y, final int width,
+			final int height) {
+		GLES20.glViewport(x, y, width, height);
+	}
+
+	public void glEnable(final int cap) {
+		GLES20.glEnable(cap);
+	}
+
+	public void glDisable(final int cap) {
+		GLES20.glDisable(cap);
+	}
+
+	public void glBlendFunc(final int sfactor, final int dfactor) {
+		GLES20.glBlendFunc(sfactor, dfactor);
+	}
+
+	public void glGenTextures(final int n, final int[] textures,
+			final int offset) {
+		GLES20.glGenTextures(n, textures, offset);
+	}
+
+	public void glBindTexture(final int target, final int texture) {
+		GLES20.glBindTexture(target, texture);
+	}
+
+	public void glTexParameteri(final int target, final int pname,
+			final int param) {
+		GLES20.glTexParameteri(target, pname, param);
+	}
+
+	public void glDeleteTextures(final int n, final int[] textures,
+			final int offset) {
+		GLES20.glDeleteTextures(n, textures, offset);
+	}
+
+	public void glActiveTexture(final int texture) {
+		GLES20.glActiveTexture(texture);
+	}
+
+	public void texImage2D(final int target, final int level,
+			final Bitmap bitmap, final int border) {
+		GLUtils.texImage2D(target, level, bitmap, border);
+	}
+
+	public void glTexImage2D(final int target, final int level,
+			final int internalformat, final int width, final int height,
+			final int border, final int format, final int type,
+			final Buffer pixels) {
+		GLES20.glTexImage2D(target, level, internalformat, width, height,
+				border, format, type, pixels);
+	}
+
+	public void glCompressedTexImage2D(final int target, final int level,
+			final int internalformat, final int width, final int height,
+			final int border, final int imageSize, final Buffer data) {
+		GLES20.glCompressedTexImage2D(target, level, internalformat, width,
+				height, border, imageSize, data);
+	}
+
+	public String glGetString(final int name) {
+		return GLES20.glGetString(name);
+	}
+
+	public void glGetIntegerv(final int pname, final int[] params,
+			final int offset) {
+		GLES20.glGetIntegerv(pname, params, offset);
+	}
+
+	public int glGetError() {
+		return GLES20.glGetError();
+	}
+}
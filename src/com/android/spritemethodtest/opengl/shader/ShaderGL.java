@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.shader;
+
+import java.nio.Buffer;
+
+import android.graphics.Bitmap;
+
+/**
+ * The OpenGL ES 2.0 calls used by {@link ShaderRenderer}. Android only
+ * exposes them as static methods on GLES20, which can't be wrapped the way
+ * a GL10 can. Going through this interface lets the renderer run against a
+ * recording or software stand-in as well as the real thing, which is
+ * {@link AndroidShaderGL}.
+ *
+ * @author Lance Nanek
+ *
+ */
+public interface ShaderGL {
+
+	int glCreateShader(int type);
+
+	void glShaderSource(int shader, String source);
+
+	void glCompileShader(int shader);
+
+	void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+	String glGetShaderInfoLog(int shader);
+
+	void glDeleteShader(int shader);
+
+	int glCreateProgram();
+
+	void glAttachShader(int program, int shader);
+
+	void glLinkProgram(int program);
+
+	void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+	String glGetProgramInfoLog(int program);
+
+	void glDeleteProgram(int program);
+
+	void glUseProgram(int program);
+
+	int glGetAttribLocation(int program, String name);
+
+	int glGetUniformLocation(int program, String name);
+
+	void glUniform1i(int location, int x);
+
+	void glUniform4fv(int location, int count, float[] v, int offset);
+
+	void glUniformMatrix4fv(int location, int count, boolean transpose,
+			float[] value, int offset);
+
+	void glEnableVertexAttribArray(int index);
+
+	void glVertexAttribPointer(int index, int size, int type,
+			boolean normalized, int stride, Buffer pointer);
+
+	void glDrawElements(int mode, int count, int type, Buffer indices);
+
+	void glViewport(int x, int y, int width, int height);
+
+	void glEnable(int cap);
+
+	void glDisable(int cap);
+
+	void glBlendFunc(int sfactor, int dfactor);
+
+	void glGenTextures(int n, int[] textures, int offset);
+
+	void glBindTexture(int target, int texture);
+
+	void glTexParameteri(int target, int pname, int param);
+
+	void glDeleteTextures(int n, int[] textures, int offset);
+
+	void glActiveTexture(int texture);
+
+	void texImage2D(int target, int level, Bitmap bitmap, int border);
+
+	void glTexImage2D(int target, int level, int internalformat, int width,
+			int height, int border, int format, int type, Buffer pixels);
+
+	void glCompressedTexImage2D(int target, int level, int internalformat,
+			int width, int height, int border, int imageSize, Buffer data);
+
+	String glGetString(int name);
+
+	void glGetIntegerv(int pname, int[] params, int offset);
+
+	int glGetError();
+}
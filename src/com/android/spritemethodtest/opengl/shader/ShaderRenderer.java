@@ -0,0 +1,568 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.shader;
+
+import static android.opengl.GLES20.*;
+import static com.android.spritemethodtest.opengl.batched.BufferUtil.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.opengles.GL10;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.spritemethodtest.PixelFormatPolicy;
+import com.android.spritemethodtest.ProfileRecorder;
+import com.android.spritemethodtest.opengl.CompressedTexture;
+import com.android.spritemethodtest.opengl.GLSprite;
+import com.android.spritemethodtest.opengl.GLSurfaceView;
+import com.android.spritemethodtest.opengl.TextureFileCache;
+import com.android.spritemethodtest.opengl.batched.TextureAtlas;
+
+/**
+ * Draws the sprites with OpenGL ES 2.0. A stream of quad corners, each
+ * holding which corner it is and which sprite of the draw call it belongs
+ * to, is written once. Every frame only the {@link SpriteRecords} are sent,
+ * as uniform vectors, and the vertex shader expands them into positions and
+ * texture coordinates. Compared to the batched methods this moves the
+ * per-corner work off the CPU and sends a quarter as many floats per sprite.
+ * <p>
+ * The GL10 passed in by {@link GLSurfaceView} is ignored, all calls go
+ * through a {@link ShaderGL} instead. The surface view has to be set to
+ * create an OpenGL ES 2.0 context.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class ShaderRenderer implements GLSurfaceView.Renderer {
+
+	//EGL_OPENGL_ES2_BIT isn't in the EGL10 interface.
+	private static final int EGL_OPENGL_ES2_BIT = 4;
+
+	//Corner x, corner y, sprite index, and padding to keep 4 byte alignment.
+	private static final int BYTES_PER_CORNER = 4;
+
+	//Sprite index in the corner stream is an unsigned byte.
+	private static final int MAX_SPRITES_PER_DRAW = 256;
+
+	//The projection matrix takes up this many uniform vectors.
+	private static final int PROJECTION_VECTORS = 4;
+
+	private static final String FRAGMENT_SHADER =
+		"precision mediump float;\n" +
+		"uniform sampler2D u_texture;\n" +
+		"varying vec2 v_texCoord;\n" +
+		"void main() {\n" +
+		"	gl_FragColor = texture2D(u_texture, v_texCoord);\n" +
+		"}\n";
+
+	//Takes the alpha from the gray of a second texture, for ETC1.
+	private static final String FRAGMENT_SHADER_ALPHA_PLANE =
+		"precision mediump float;\n" +
+		"uniform sampler2D u_texture;\n" +
+		"uniform sampler2D u_alpha;\n" +
+		"varying vec2 v_texCoord;\n" +
+		"void main() {\n" +
+		"	gl_FragColor = vec4(texture2D(u_texture, v_texCoord).rgb,\n" +
+		"			texture2D(u_alpha, v_texCoord).g);\n" +
+		"}\n";
+
+	private final BitmapFactory.Options mBitmapOptions =
+		new BitmapFactory.Options();
+
+	private final ShaderGL mGL;
+
+	private final Context mContext;
+
+	private final GLSprite[] mSprites;
+
+	private final float[] mProjection = new float[16];
+
+	private final int[] mWorkspace = new int[1];
+
+	private SpriteRecords[] mLayers = new SpriteRecords[0];
+
+	private int[] mLayerTextures = new int[0];
+
+	//Alpha of the atlas, when it was loaded as ETC1, or 0.
+	private int mAlphaTexture;
+
+	private int mCompression = CompressedTexture.COMPRESSION_NONE;
+
+	private TextureFileCache mFileCache;
+
+	private int mProgram;
+
+	private int mSpritesUniform;
+
+	private int mSpritesPerDraw;
+
+	private ByteBuffer mCorners;
+
+	private ShortBuffer mIndices;
+
+	//Set for a new context, so loading into it is only timed once.
+	private boolean mContextCreated;
+
+	/**
+	 * Creates a ShaderRenderer instance.
+	 *
+	 * @param context Context to load textures from
+	 * @param sprites GLSprite[] to draw every frame
+	 * @param gl ShaderGL to make all OpenGL ES 2.0 calls through
+	 */
+	public ShaderRenderer(final Context context, final GLSprite[] sprites,
+			final ShaderGL gl) {
+		mContext = context;
+		mSprites = null != sprites ? sprites : new GLSprite[] {};
+		mGL = gl;
+	}
+
+	/**
+	 * Sets the records the sprites write into, background first, then the
+	 * atlas sprites. Each layer is one or more draw calls.
+	 */
+	public void setSpriteRecords(final SpriteRecords[] layers) {
+		mLayers = layers;
+	}
+
+	/**
+	 * @param compression int CompressedTexture.COMPRESSION_ constant for
+	 * the format to load the textures in
+	 */
+	public void setCompression(final int compression) {
+		mCompression = compression;
+	}
+
+	/**
+	 * @param fileCache TextureFileCache to keep decoded images in, or null
+	 * to decode them every time
+	 */
+	public void setFileCache(final TextureFileCache fileCache) {
+		mFileCache = fileCache;
+	}
+
+	/**
+	 * @return int sprites drawn per draw call, known after sizeChanged
+	 */
+	int getSpritesPerDraw() {
+		return mSpritesPerDraw;
+	}
+
+	public int[] getConfigSpec() {
+		// We don't need a depth buffer, and don't care about our
+		// color depth.
+		int[] configSpec = {
+				EGL10.EGL_DEPTH_SIZE, 0,
+				EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT,
+				EGL10.EGL_NONE };
+		return configSpec;
+	}
+
+	public void surfaceCreated(final GL10 gl) {
+		//Everything is set up in sizeChanged, same as SimpleGLRenderer.
+		mContextCreated = true;
+	}
+
+	public void sizeChanged(final GL10 unused, final int width,
+			final int height) {
+		final ShaderGL gl = mGL;
+
+		gl.glDisable(GL_DITHER);
+		gl.glDisable(GL_DEPTH_TEST);
+		gl.glDisable(GL_CULL_FACE);
+		gl.glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+		gl.glViewport(0, 0, width, height);
+		for ( int x = 0; x < mSprites.length; x++ ) {
+			mSprites[x].setViewSize(width, height);
+		}
+
+		//Any program and textures from before belonged to a context that
+		//may be gone, so everything is created again. The textures go
+		//first, since the program depends on whether there is an alpha
+		//plane.
+		mAlphaTexture = 0;
+		final long textureLoadStart = SystemClock.uptimeMillis();
+		final int atlas = loadTexture(TextureAtlas.RESOURCE_ID);
+		mLayerTextures = new int[] {
+				TextureAtlas.BACKGROUND_RESOURCE_ID == TextureAtlas.RESOURCE_ID
+					? atlas : loadTexture(TextureAtlas.BACKGROUND_RESOURCE_ID),
+				atlas,
+		};
+		//Rotating loads them again too, but isn't part of starting up.
+		if ( mContextCreated ) {
+			ProfileRecorder.sSingleton.recordStartup(
+					ProfileRecorder.STARTUP_TEXTURE_LOAD, textureLoadStart);
+			mContextCreated = false;
+		}
+
+		gl.glGetIntegerv(GL_MAX_VERTEX_UNIFORM_VECTORS, mWorkspace, 0);
+		mSpritesPerDraw = Math.min(MAX_SPRITES_PER_DRAW,
+				(mWorkspace[0] - PROJECTION_VECTORS)
+				/ SpriteRecords.VECTORS_PER_SPRITE);
+		mProgram = createProgram(mSpritesPerDraw, 0 != mAlphaTexture);
+		createCorners(mSpritesPerDraw);
+
+		gl.glUseProgram(mProgram);
+		mSpritesUniform = gl.glGetUniformLocation(mProgram, "u_sprites");
+		gl.glUniform1i(gl.glGetUniformLocation(mProgram, "u_texture"), 0);
+		if ( 0 != mAlphaTexture ) {
+			//Stays bound to the second unit for every layer. The
+			//background doesn't blend, so its alpha doesn't matter.
+			gl.glUniform1i(gl.glGetUniformLocation(mProgram, "u_alpha"), 1);
+			gl.glActiveTexture(GL_TEXTURE1);
+			gl.glBindTexture(GL_TEXTURE_2D, mAlphaTexture);
+		}
+		gl.glActiveTexture(GL_TEXTURE0);
+
+		ortho(width, height);
+		gl.glUniformMatrix4fv(gl.glGetUniformLocation(
+				mProgram, "u_projection"), 1, false, mProjection, 0);
+
+		final int corner = gl.glGetAttribLocation(mProgram, "a_corner");
+		gl.glEnableVertexAttribArray(corner);
+		mCorners.position(0);
+		gl.glVertexAttribPointer(corner, 3, GL_UNSIGNED_BYTE, false,
+				BYTES_PER_CORNER, mCorners);
+
+		// Now's a good time to run the GC.  Since we won't do any explicit
+		// allocation during the test, the GC should stay dormant and not
+		// influence our results.
+		Runtime.getRuntime().gc();
+	}
+
+	public void drawFrame(final GL10 unused) {
+		int culled = 0;
+		for ( int x = 0; x < mSprites.length; x++ ) {
+			if ( mSprites[x].isOutsideView() ) {
+				culled++;
+			} else {
+				mSprites[x].draw(unused);
+			}
+		}
+		ProfileRecorder.sSingleton.count(
+				ProfileRecorder.COUNTER_CULLED_SPRITES, culled);
+
+		final ShaderGL gl = mGL;
+		final int layerCount = Math.min(mLayers.length, mLayerTextures.length);
+		for ( int layer = 0; layer < layerCount; layer++ ) {
+			final SpriteRecords records = mLayers[layer];
+
+			//Only the background is opaque.
+			if ( 0 == layer ) {
+				gl.glDisable(GL_BLEND);
+			} else {
+				gl.glEnable(GL_BLEND);
+			}
+			//Layers usually share the atlas, so it stays bound.
+			if ( 0 == layer
+					|| mLayerTextures[layer] != mLayerTextures[layer - 1] ) {
+				gl.glBindTexture(GL_TEXTURE_2D, mLayerTextures[layer]);
+				ProfileRecorder.sSingleton.count(
+						ProfileRecorder.COUNTER_TEXTURE_BINDS, 1);
+			}
+
+			for ( int first = 0; first < records.spriteCount;
+					first += mSpritesPerDraw ) {
+				final int count =
+					Math.min(mSpritesPerDraw, records.spriteCount - first);
+				gl.glUniform4fv(mSpritesUniform,
+						count * SpriteRecords.VECTORS_PER_SPRITE,
+						records.records,
+						first * SpriteRecords.FLOATS_PER_SPRITE);
+				mIndices.position(0);
+				gl.glDrawElements(GL_TRIANGLES, count * INDICES_PER_QUAD,
+						GL_UNSIGNED_SHORT, mIndices);
+			}
+
+			ProfileRecorder.sSingleton.count(
+					ProfileRecorder.COUNTER_DYNAMIC_LAYER_BYTES,
+					records.spriteCount * SpriteRecords.FLOATS_PER_SPRITE
+					* BYTES_PER_FLOAT);
+			records.reset();
+		}
+	}
+
+	public void shutdown(final GL10 unused) {
+		for ( int x = 0; x < mLayerTextures.length; x++ ) {
+			if ( x > 0 && mLayerTextures[x] == mLayerTextures[x - 1] ) {
+				continue;
+			}
+			mWorkspace[0] = mLayerTextures[x];
+			mGL.glDeleteTextures(1, mWorkspace, 0);
+		}
+		mLayerTextures = new int[0];
+		if ( 0 != mAlphaTexture ) {
+			mWorkspace[0] = mAlphaTexture;
+			mGL.glDeleteTextures(1, mWorkspace, 0);
+			mAlphaTexture = 0;
+		}
+		if ( 0 != mProgram ) {
+			mGL.glDeleteProgram(mProgram);
+			mProgram = 0;
+		}
+	}
+
+	/**
+	 * Builds the vertex shader. The uniform array holds the records for
+	 * one draw call, so its size depends on how many uniforms there are.
+	 */
+	private static String vertexShader(final int spritesPerDraw) {
+		return
+			"uniform mat4 u_projection;\n" +
+			"uniform vec4 u_sprites[" +
+			spritesPerDraw * SpriteRecords.VECTORS_PER_SPRITE + "];\n" +
+			"attribute vec3 a_corner;\n" +
+			"varying vec2 v_texCoord;\n" +
+			"void main() {\n" +
+			"	int sprite = int(a_corner.z) * " +
+			SpriteRecords.VECTORS_PER_SPRITE + ";\n" +
+			"	vec4 bounds = u_sprites[sprite];\n" +
+			"	vec4 rect = u_sprites[sprite + 1];\n" +
+			"	vec2 position = \n" +
+			"		bounds.xy + (a_corner.xy - 0.5) * bounds.zw;\n" +
+			"	v_texCoord = mix(rect.xy, rect.zw, a_corner.xy);\n" +
+			"	gl_Position = u_projection * vec4(position, 0.0, 1.0);\n" +
+			"}\n";
+	}
+
+	private int createProgram(final int spritesPerDraw,
+			final boolean alphaPlane) {
+		final ShaderGL gl = mGL;
+		final int vertex =
+			compileShader(GL_VERTEX_SHADER, vertexShader(spritesPerDraw));
+		final int fragment = compileShader(GL_FRAGMENT_SHADER,
+				alphaPlane ? FRAGMENT_SHADER_ALPHA_PLANE : FRAGMENT_SHADER);
+
+		final int program = gl.glCreateProgram();
+		gl.glAttachShader(program, vertex);
+		gl.glAttachShader(program, fragment);
+		gl.glLinkProgram(program);
+
+		//The program keeps them until it is deleted.
+		gl.glDeleteShader(vertex);
+		gl.glDeleteShader(fragment);
+
+		gl.glGetProgramiv(program, GL_LINK_STATUS, mWorkspace, 0);
+		if ( 0 == mWorkspace[0] ) {
+			final String log = gl.glGetProgramInfoLog(program);
+			gl.glDeleteProgram(program);
+			throw new RuntimeException("Program link failed: " + log);
+		}
+		return program;
+	}
+
+	private int compileShader(final int type, final String source) {
+		final ShaderGL gl = mGL;
+		final int shader = gl.glCreateShader(type);
+		gl.glShaderSource(shader, source);
+		gl.glCompileShader(shader);
+		gl.glGetShaderiv(shader, GL_COMPILE_STATUS, mWorkspace, 0);
+		if ( 0 == mWorkspace[0] ) {
+			final String log = gl.glGetShaderInfoLog(shader);
+			gl.glDeleteShader(shader);
+			throw new RuntimeException("Shader compile failed: " + log);
+		}
+		return shader;
+	}
+
+	/**
+	 * Writes the corner stream and indices for the largest draw call. They
+	 * never change, every draw call uses the start of them.
+	 */
+	private void createCorners(final int spritesPerDraw) {
+		final int verts = spritesPerDraw * VERTS_PER_QUAD;
+		final byte[] corners = new byte[verts * BYTES_PER_CORNER];
+
+		//Corners in the order the shared indices expect: start of both
+		//axes, end of y, end of x, then end of both.
+		int offset = 0;
+		for ( int sprite = 0; sprite < spritesPerDraw; sprite++ ) {
+			for ( int vert = 0; vert < VERTS_PER_QUAD; vert++ ) {
+				corners[offset++] = (byte) (vert >> 1);
+				corners[offset++] = (byte) (vert & 1);
+				corners[offset++] = (byte) sprite;
+				corners[offset++] = 0;
+			}
+		}
+
+		mCorners = createDirectByteBuffer(corners.length);
+		mCorners.put(corners);
+		mCorners.position(0);
+		mIndices = createShortIndicesBuffer(spritesPerDraw * INDICES_PER_QUAD);
+	}
+
+	/**
+	 * Sets the projection to the same pixel coordinates SimpleGLRenderer
+	 * uses, glOrthof(0, width, 0, height, 0, 1) in column major order.
+	 */
+	private void ortho(final int width, final int height) {
+		final float[] m = mProjection;
+		for ( int i = 0; i < m.length; i++ ) {
+			m[i] = 0;
+		}
+		m[0] = 2.0f / width;
+		m[5] = 2.0f / height;
+		m[10] = -2.0f;
+		m[12] = -1.0f;
+		m[13] = -1.0f;
+		m[14] = -1.0f;
+		m[15] = 1.0f;
+	}
+
+	/**
+	 * Loads the version of an image in the chosen compression, if there is
+	 * one the context supports, otherwise the image itself. An ETC1 image
+	 * that isn't opaque brings its alpha plane along into mAlphaTexture.
+	 * Only one is drawn with, so any other falls back to the image.
+	 */
+	private int loadTexture(final int resourceId) {
+		if ( CompressedTexture.COMPRESSION_NONE == mCompression
+				|| null == mContext ) {
+			return loadBitmap(resourceId);
+		}
+
+		final Resources resources = mContext.getResources();
+		final boolean etc1 =
+			CompressedTexture.COMPRESSION_ETC1 == mCompression;
+		final int encoded = CompressedTexture.findResource(resources,
+				resourceId, etc1 ? CompressedTexture.SUFFIX_ETC1
+						: CompressedTexture.SUFFIX_PALETTE8);
+		final int alpha = etc1 ? CompressedTexture.findResource(resources,
+				resourceId, CompressedTexture.SUFFIX_ALPHA_ETC1) : 0;
+		if ( 0 == encoded || (0 != alpha && 0 != mAlphaTexture)
+				|| !CompressedTexture.isSupported(
+						mGL.glGetString(GL_EXTENSIONS),
+						etc1 ? CompressedTexture.GL_ETC1_RGB8_OES
+								: GL10.GL_PALETTE8_RGBA8_OES, false) ) {
+			return loadBitmap(resourceId);
+		}
+
+		if ( 0 != alpha ) {
+			mAlphaTexture = loadCompressed(alpha);
+		}
+		return loadCompressed(encoded);
+	}
+
+	private int loadCompressed(final int rawResourceId) {
+		final long loadStart = SystemClock.uptimeMillis();
+		final CompressedTexture texture;
+		try {
+			texture = CompressedTexture.load(
+					mContext.getResources(), rawResourceId);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		final ShaderGL gl = mGL;
+		final int textureName = createTexture();
+		final int bytes = texture.data.capacity();
+		gl.glCompressedTexImage2D(GL_TEXTURE_2D, 0, texture.internalFormat,
+				texture.width, texture.height, 0, bytes, texture.data);
+
+		final int error = gl.glGetError();
+		if ( GL_NO_ERROR != error ) {
+			Log.e("SpriteMethodTest", "Texture Load GLError: " + error);
+		}
+		ProfileRecorder.sSingleton.recordTexture(texture.name,
+				texture.getFormatName(), bytes,
+				SystemClock.uptimeMillis() - loadStart, false);
+		return textureName;
+	}
+
+	private int createTexture() {
+		final ShaderGL gl = mGL;
+		gl.glGenTextures(1, mWorkspace, 0);
+		final int textureName = mWorkspace[0];
+		gl.glBindTexture(GL_TEXTURE_2D, textureName);
+
+		gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+		gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+		gl.glTexParameteri(
+				GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+		gl.glTexParameteri(
+				GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+		return textureName;
+	}
+
+	private int loadBitmap(final int resourceId) {
+		final long loadStart = SystemClock.uptimeMillis();
+		final ShaderGL gl = mGL;
+		final int textureName = createTexture();
+
+		if ( null != mContext ) {
+			final String name =
+				mContext.getResources().getResourceEntryName(resourceId);
+			TextureFileCache.Pixels pixels =
+				null != mFileCache ? mFileCache.map(resourceId) : null;
+			if ( null == pixels ) {
+				final Bitmap bitmap = PixelFormatPolicy.sSingleton.decode(
+						mContext.getResources(), resourceId, mBitmapOptions);
+				if ( null != mFileCache ) {
+					pixels = mFileCache.store(resourceId, bitmap);
+				}
+				if ( null == pixels ) {
+					uploadBitmap(name, resourceId, bitmap, loadStart);
+				}
+				bitmap.recycle();
+			}
+			if ( null != pixels ) {
+				gl.glTexImage2D(GL_TEXTURE_2D, 0, pixels.format, pixels.width,
+						pixels.height, 0, pixels.format, pixels.type,
+						pixels.data);
+				ProfileRecorder.sSingleton.recordTexture(name,
+						pixels.getFormatName(), pixels.data.capacity(),
+						SystemClock.uptimeMillis() - loadStart, pixels.mapped);
+			}
+		}
+
+		final int error = gl.glGetError();
+		if ( GL_NO_ERROR != error ) {
+			Log.e("SpriteMethodTest", "Texture Load GLError: " + error);
+		}
+		return textureName;
+	}
+
+	private void uploadBitmap(final String name, final int resourceId,
+			final Bitmap bitmap, final long loadStart) {
+		final ShaderGL gl = mGL;
+		final int width = bitmap.getWidth();
+		final int height = bitmap.getHeight();
+		final int alphaClass =
+			PixelFormatPolicy.sSingleton.getAlphaClass(resourceId);
+		if ( PixelFormatPolicy.isRgba5551(alphaClass, bitmap) ) {
+			gl.glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0,
+					GL_RGBA, GL_UNSIGNED_SHORT_5_5_5_1,
+					PixelFormatPolicy.toRgba5551(bitmap));
+		} else {
+			gl.texImage2D(GL_TEXTURE_2D, 0, bitmap, 0);
+		}
+		ProfileRecorder.sSingleton.recordTexture(name,
+				PixelFormatPolicy.getFormatName(alphaClass, bitmap),
+				width * height
+				* PixelFormatPolicy.getBytesPerPixel(alphaClass, bitmap),
+				SystemClock.uptimeMillis() - loadStart, false);
+	}
+}
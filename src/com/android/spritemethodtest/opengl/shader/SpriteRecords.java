@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.shader;
+
+import static com.android.spritemethodtest.opengl.batched.BufferUtil.*;
+
+/**
+ * Compact per-sprite records for {@link ShaderRenderer}, the shader
+ * equivalent of DrawData. Instead of four corners of positions and texture
+ * coordinates, each sprite is two vectors: its center and size, then the
+ * texture coordinates of its corners at the start and end of both axes. 
+ * The vertex shader expands them into quads.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class SpriteRecords {
+
+	public static final int VECTORS_PER_SPRITE = 2;
+
+	public static final int FLOATS_PER_SPRITE = VECTORS_PER_SPRITE * 4;
+
+	public float[] records;
+
+	public int spriteCount;
+
+	public SpriteRecords(final int spriteCapacity) {
+		records = new float[Math.max(spriteCapacity, 1) * FLOATS_PER_SPRITE];
+	}
+
+	/**
+	 * Adds a sprite.
+	 *
+	 * @param left float x coordinate of the left edge
+	 * @param top float y coordinate of the edge at the start of the texture
+	 * @param width float width
+	 * @param height float height
+	 * @param texture float[] quad texture coordinates from TextureAtlas
+	 */
+	public void sprite(final float left, final float top, final float width,
+			final float height, final float[] texture) {
+		int offset = spriteCount * FLOATS_PER_SPRITE;
+		if ( offset + FLOATS_PER_SPRITE > records.length ) {
+			final float[] grown = new float[growCapacity(
+					records.length, offset + FLOATS_PER_SPRITE)];
+			System.arraycopy(records, 0, grown, 0, offset);
+			records = grown;
+		}
+
+		records[offset++] = left + width / 2;
+		records[offset++] = top + height / 2;
+		records[offset++] = width;
+		records[offset++] = height;
+
+		//The first and last corners of a TextureAtlas quad are opposite.
+		final int last = (VERTS_PER_QUAD - 1) * TEX_COORDS_PER_VERT;
+		records[offset++] = texture[0];
+		records[offset++] = texture[1];
+		records[offset++] = texture[last];
+		records[offset++] = texture[last + 1];
+
+		spriteCount++;
+	}
+
+	public void reset() {
+		spriteCount = 0;
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.shader;
+
+import static android.opengl.GLES20.*;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+
+import android.graphics.Bitmap;
+
+/**
+ * Records the sprite uniform uploads and draw calls made through it instead
+ * of making any OpenGL calls, so the way {@link ShaderRenderer} splits
+ * sprites into draw calls can be tested without a context. Calls that
+ * return something answer like a working context would: new names,
+ * shaders that compile, programs that link, and no errors.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class RecordingShaderGL implements ShaderGL {
+
+	private final int mMaxVertexUniformVectors;
+
+	private int mNextName = 1;
+
+	//Vectors and starting float of each glUniform4fv, in call order.
+	private final ArrayList<Integer> mUniformVectors = new ArrayList<Integer>();
+
+	private final ArrayList<Integer> mUniformOffsets = new ArrayList<Integer>();
+
+	//Indices of each glDrawElements, in call order.
+	private final ArrayList<Integer> mDrawIndices = new ArrayList<Integer>();
+
+	/**
+	 * Creates a RecordingShaderGL instance.
+	 *
+	 * @param maxVertexUniformVectors int to answer for
+	 * GL_MAX_VERTEX_UNIFORM_VECTORS, which limits the sprites per draw
+	 */
+	public RecordingShaderGL(final int maxVertexUniformVectors) {
+		mMaxVertexUniformVectors = maxVertexUniformVectors;
+	}
+
+	/**
+	 * Forgets the calls recorded so far.
+	 */
+	public void clear() {
+		mUniformVectors.clear();
+		mUniformOffsets.clear();
+		mDrawIndices.clear();
+	}
+
+	/**
+	 * @return int glUniform4fv calls recorded
+	 */
+	public int getUniformCount() {
+		return mUniformVectors.size();
+	}
+
+	/**
+	 * @return int vectors uploaded by a recorded glUniform4fv call
+	 */
+	public int getUniformVectors(final int call) {
+		return mUniformVectors.get(call);
+	}
+
+	/**
+	 * @return int offset into the array of a recorded glUniform4fv call
+	 */
+	public int getUniformOffset(final int call) {
+		return mUniformOffsets.get(call);
+	}
+
+	/**
+	 * @return int glDrawElements calls recorded
+	 */
+	public int getDrawCount() {
+		return mDrawIndices.size();
+	}
+
+	/**
+	 * @return int indices drawn by a recorded glDrawElements call
+	 */
+	public int getDrawIndices(final int call) {
+		return mDrawIndices.get(call);
+	}
+
+	public int glCreateShader(final int type) {
+		return mNextName++;
+	}
+
+	public void glShaderSource(final int shader, final String source) {
+	}
+
+	public void glCompileShader(final int shader) {
+	}
+
+	public void glGetShaderiv(final int shader, final int pname,
+			final int[] params, final int offset) {
+		params[offset] = GL_TRUE;
+	}
+
+	public String glGetShaderInfoLog(final int shader) {
+		return "";
+	}
+
+	public void glDeleteShader(final int shader) {
+	}
+
+	public int glCreateProgram() {
+		return mNextName++;
+	}
+
+	public void glAttachShader(final int program, final int shader) {
+	}
+
+	public void glLinkProgram(final int program) {
+	}
+
+	public void glGetProgramiv(final int program, final int pname,
+			final int[] params, final int offset) {
+		params[offset] = GL_TRUE;
+	}
+
+	public String glGetProgramInfoLog(final int program) {
+		return "";
+	}
+
+	public void glDeleteProgram(final int program) {
+	}
+
+	public void glUseProgram(final int program) {
+	}
+
+	public int glGetAttribLocation(final int program, final String name) {
+		return 0;
+	}
+
+	public int glGetUniformLocation(final int program, final String name) {
+		return 0;
+	}
+
+	public void glUniform1i(final int location, final int x) {
+	}
+
+	public void glUniform4fv(final int location, final int count,
+			final float[] v, final int offset) {
+		mUniformVectors.add(count);
+		mUniformOffsets.add(offset);
+	}
+
+	public void glUniformMatrix4fv(final int location, final int count,
+			final boolean transpose, final float[] value, final int offset) {
+	}
+
+	public void glEnableVertexAttribArray(final int index) {
+	}
+
+	public void glVertexAttribPointer(final int index, final int size,
+			final int type, final boolean normalized, final int stride,
+			final Buffer pointer) {
+	}
+
+	public void glDrawElements(final int mode, final int count,
+			final int type, final Buffer indices) {
+		mDrawIndices.add(count);
+	}
+
+	public void glViewport(final int x, final int y, final int width,
+			final int height) {
+	}
+
+	public void glEnable(final int cap) {
+	}
+
+	public void glDisable(final int cap) {
+	}
+
+	public void glBlendFunc(final int sfactor, final int dfactor) {
+	}
+
+	public void glGenTextures(final int n, final int[] textures,
+			final int offset) {
+		for( int i = 0; i < n; i++ ) {
+			textures[offset + i] = mNextName++;
+		}
+	}
+
+	public void glBindTexture(final int target, final int texture) {
+	}
+
+	public void glTexParameteri(final int target, final int pname,
+			final int param) {
+	}
+
+	public void glDeleteTextures(final int n, final int[] textures,
+			final int offset) {
+	}
+
+	public void glActiveTexture(final int texture) {
+	}
+
+	public void texImage2D(final int target, final int level,
+			final Bitmap bitmap, final int border) {
+	}
+
+	public void glTexImage2D(final int target, final int level,
+			final int internalformat, final int width, final int height,
+			final int border, final int format, final int type,
+			final Buffer pixels) {
+	}
+
+	public void glCompressedTexImage2D(final int target, final int level,
+			final int internalformat, final int width, final int height,
+			final int border, final int imageSize, final Buffer data) {
+	}
+
+	public String glGetString(final int name) {
+		return "";
+	}
+
+	public void glGetIntegerv(final int pname, final int[] params,
+			final int offset) {
+		params[offset] = GL_MAX_VERTEX_UNIFORM_VECTORS == pname
+			? mMaxVertexUniformVectors : 0;
+	}
+
+	public int glGetError() {
+		return GL_NO_ERROR;
+	}
+}
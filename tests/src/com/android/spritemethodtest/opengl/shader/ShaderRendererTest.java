@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.spritemethodtest.opengl.shader;
+
+import static com.android.spritemethodtest.opengl.batched.BufferUtil.*;
+
+import junit.framework.TestCase;
+
+import com.android.spritemethodtest.R;
+import com.android.spritemethodtest.opengl.DrawMethod;
+import com.android.spritemethodtest.opengl.GLSprite;
+
+/**
+ * Checks {@link ShaderRenderer} splits each layer into draw calls of at
+ * most its sprites per draw, uploading each call's records from the right
+ * offset and drawing the right number of indices, with robot counts on
+ * either side of the chunk boundaries.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class ShaderRendererTest extends TestCase {
+
+	//Odd, so a partial last chunk can't be mistaken for half a full one.
+	private static final int SPRITES_PER_DRAW = 3;
+
+	//Four vectors for the projection matrix, then the sprites.
+	private static final int UNIFORM_VECTORS =
+		4 + SPRITES_PER_DRAW * SpriteRecords.VECTORS_PER_SPRITE;
+
+	private static final int SPRITE_SIZE = 16;
+
+	public void testChunkBoundaries() {
+		final int[] robotCounts = {
+				0, 1,
+				SPRITES_PER_DRAW - 1, SPRITES_PER_DRAW, SPRITES_PER_DRAW + 1,
+				SPRITES_PER_DRAW * 2, SPRITES_PER_DRAW * 2 + 1,
+		};
+		for( final int robots : robotCounts ) {
+			checkFrame(robots);
+		}
+	}
+
+	/**
+	 * Draws one frame of the background and some robots and checks every
+	 * draw call the renderer made.
+	 */
+	private void checkFrame(final int robots) {
+		final RecordingShaderGL gl = new RecordingShaderGL(UNIFORM_VECTORS);
+		final GLSprite[] sprites = new GLSprite[robots + 1];
+		final SpriteRecords[] layers = new SpriteRecords[] {
+				new SpriteRecords(1),
+				new SpriteRecords(Math.max(robots, 1)),
+		};
+		for( int x = 0; x < sprites.length; x++ ) {
+			sprites[x] = new GLSprite(0 == x ? R.drawable.background
+					: R.drawable.skate1, DrawMethod.SHADER_ES2);
+			sprites[x].setWidth(SPRITE_SIZE);
+			sprites[x].setHeight(SPRITE_SIZE);
+			//All in view, so none are culled.
+			sprites[x].setX(x * SPRITE_SIZE % 320);
+			sprites[x].setSpriteRecords(layers[0 == x ? 0 : 1]);
+		}
+
+		//No context, so textures get names but nothing is decoded.
+		final ShaderRenderer renderer = new ShaderRenderer(null, sprites, gl);
+		renderer.setSpriteRecords(layers);
+		renderer.sizeChanged(null, 320, 480);
+		assertEquals(SPRITES_PER_DRAW, renderer.getSpritesPerDraw());
+		gl.clear();
+		renderer.drawFrame(null);
+
+		final int[] layerSprites = { 1, robots };
+		int call = 0;
+		for( int layer = 0; layer < layerSprites.length; layer++ ) {
+			for( int first = 0; first < layerSprites[layer];
+					first += SPRITES_PER_DRAW ) {
+				final int count =
+					Math.min(SPRITES_PER_DRAW, layerSprites[layer] - first);
+				final String where =
+					robots + " robots, draw " + call + ", ";
+				assertTrue(where + "missing upload",
+						call < gl.getUniformCount());
+				assertTrue(where + "missing draw", call < gl.getDrawCount());
+				assertEquals(where + "uniform vectors",
+						count * SpriteRecords.VECTORS_PER_SPRITE,
+						gl.getUniformVectors(call));
+				assertEquals(where + "uniform offset",
+						first * SpriteRecords.FLOATS_PER_SPRITE,
+						gl.getUniformOffset(call));
+				assertEquals(where + "draw indices",
+						count * INDICES_PER_QUAD, gl.getDrawIndices(call));
+				call++;
+			}
+		}
+		assertEquals(robots + " robots, uploads", call, gl.getUniformCount());
+		assertEquals(robots + " robots, draws", call, gl.getDrawCount());
+	}
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Desktop build step that packs images into texture atlas pages and writes
+ * the Java table of where each image ended up. Run it before building the
+ * app whenever the packed images change, from the project directory:
+ * <pre>
+ * javac -d bin/tools tools/AtlasPacker.java
+ * java -cp bin/tools AtlasPacker res/drawable/background.png \
+ *     res/drawable/skate1.png res/drawable/skate2.png res/drawable/skate3.png
+ * </pre>
+ * Pages are written to res/raw/packed_atlas_N.png, so the resource system
+ * never scales them for the screen density, and the table to
+ * src/com/android/spritemethodtest/opengl/batched/PackedAtlas.java.
+ * Images are looked up in the table by the R.drawable ID of the file they
+ * were packed from.
+ * <p>
+ * Placement uses the MaxRects algorithm with the best short side fit rule:
+ * the free space is kept as a list of maximal rectangles, each image goes
+ * in the free rectangle it leaves the smallest margin in, and the free
+ * rectangles it overlaps are split around it. Images are placed largest
+ * first. Each page is the smallest power of two size, up to
+ * {@link #MAX_PAGE_SIZE}, that fits the images left; when none do, the
+ * largest page is filled and the rest go on further pages.
+ * <p>
+ * Images are separated by {@link #PADDING} pixels, filled by repeating
+ * each image's right and bottom edges, so filtering can't blend in a
+ * neighbor.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class AtlasPacker {
+
+	//Devices from this era support at least 1024 pixel textures.
+	private static final int MAX_PAGE_SIZE = 1024;
+
+	private static final int PADDING = 1;
+
+	private static final String PAGE_PATH = "res/raw/packed_atlas_";
+
+	private static final String TABLE_PATH =
+		"src/com/android/spritemethodtest/opengl/batched/PackedAtlas.java";
+
+	private static class Rect {
+
+		int x, y, width, height;
+
+		Rect(final int x, final int y, final int width, final int height) {
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+
+		boolean contains(final Rect other) {
+			return other.x >= x && other.y >= y
+				&& other.x + other.width <= x + width
+				&& other.y + other.height <= y + height;
+		}
+
+		boolean intersects(final Rect other) {
+			return other.x < x + width && x < other.x + other.width
+				&& other.y < y + height && y < other.y + other.height;
+		}
+	}
+
+	private static class Image {
+
+		final String name;
+
+		final BufferedImage pixels;
+
+		int page;
+
+		Rect placed;
+
+		Image(final String name, final BufferedImage pixels) {
+			this.name = name;
+			this.pixels = pixels;
+		}
+	}
+
+	private static class Page {
+
+		final int width, height;
+
+		final List<Image> images = new ArrayList<Image>();
+
+		Page(final int width, final int height) {
+			this.width = width;
+			this.height = height;
+		}
+	}
+
+	public static void main(final String[] args) throws IOException {
+		if ( 0 == args.length ) {
+			System.err.println("Usage: AtlasPacker image.png...");
+			System.exit(1);
+		}
+
+		final List<Image> remaining = new ArrayList<Image>();
+		for( final String path : args ) {
+			final File file = new File(path);
+			final BufferedImage pixels = ImageIO.read(file);
+			if ( null == pixels ) {
+				throw new IOException("Not an image: " + path);
+			}
+			if ( pixels.getWidth() > MAX_PAGE_SIZE
+					|| pixels.getHeight() > MAX_PAGE_SIZE ) {
+				throw new IOException("Larger than a page: " + path);
+			}
+			final String name = file.getName();
+			remaining.add(new Image(name.substring(0, name.lastIndexOf('.')),
+					pixels));
+		}
+
+		//Largest first, by longer side then by area.
+		Collections.sort(remaining, new Comparator<Image>() {
+			public int compare(final Image a, final Image b) {
+				final int aSide = Math.max(
+						a.pixels.getWidth(), a.pixels.getHeight());
+				final int bSide = Math.max(
+						b.pixels.getWidth(), b.pixels.getHeight());
+				if ( aSide != bSide ) {
+					return bSide - aSide;
+				}
+				return b.pixels.getWidth() * b.pixels.getHeight()
+					- a.pixels.getWidth() * a.pixels.getHeight();
+			}
+		});
+
+		final List<Page> pages = new ArrayList<Page>();
+		while ( !remaining.isEmpty() ) {
+			final Page page = packPage(remaining);
+			for( final Image image : page.images ) {
+				image.page = pages.size();
+				remaining.remove(image);
+			}
+			pages.add(page);
+		}
+
+		final List<Image> all = new ArrayList<Image>();
+		for( int i = 0; i < pages.size(); i++ ) {
+			final Page page = pages.get(i);
+			ImageIO.write(drawPage(page), "png",
+					new File(PAGE_PATH + i + ".png"));
+			all.addAll(page.images);
+			System.out.println("Page " + i + ": " + page.width + "x"
+					+ page.height + ", " + page.images.size() + " images");
+		}
+
+		writeTable(pages, all);
+	}
+
+	/**
+	 * Packs as many of the images as fit on the smallest page that fits
+	 * all of them, or on the largest page if none does.
+	 */
+	private static Page packPage(final List<Image> images) {
+		final List<int[]> sizes = new ArrayList<int[]>();
+		for( int width = 1; width <= MAX_PAGE_SIZE; width *= 2 ) {
+			for( int height = 1; height <= MAX_PAGE_SIZE; height *= 2 ) {
+				sizes.add(new int[] { width, height });
+			}
+		}
+		//Smallest area first, and squarer pages first within an area.
+		Collections.sort(sizes, new Comparator<int[]>() {
+			public int compare(final int[] a, final int[] b) {
+				final int area = a[0] * a[1] - b[0] * b[1];
+				if ( 0 != area ) {
+					return area;
+				}
+				return Math.abs(a[0] - a[1]) - Math.abs(b[0] - b[1]);
+			}
+		});
+
+		for( final int[] size : sizes ) {
+			final Page page = tryPack(size[0], size[1], images);
+			if ( page.images.size() == images.size() ) {
+				return page;
+			}
+		}
+		return tryPack(MAX_PAGE_SIZE, MAX_PAGE_SIZE, images);
+	}
+
+	private static Page tryPack(final int width, final int height,
+			final List<Image> images) {
+		final Page page = new Page(width, height);
+
+		//Padding goes after each image, so the page gets room for one more
+		//at its far edges, where no neighbor needs separating.
+		final List<Rect> free = new ArrayList<Rect>();
+		free.add(new Rect(0, 0, width + PADDING, height + PADDING));
+
+		for( final Image image : images ) {
+			final int paddedWidth = image.pixels.getWidth() + PADDING;
+			final int paddedHeight = image.pixels.getHeight() + PADDING;
+
+			Rect best = null;
+			int bestShortSide = Integer.MAX_VALUE;
+			int bestLongSide = Integer.MAX_VALUE;
+			for( final Rect rect : free ) {
+				if ( paddedWidth > rect.width || paddedHeight > rect.height ) {
+					continue;
+				}
+				final int leftoverX = rect.width - paddedWidth;
+				final int leftoverY = rect.height - paddedHeight;
+				final int shortSide = Math.min(leftoverX, leftoverY);
+				final int longSide = Math.max(leftoverX, leftoverY);
+				if ( shortSide < bestShortSide || (shortSide == bestShortSide
+						&& longSide < bestLongSide) ) {
+					best = rect;
+					bestShortSide = shortSide;
+					bestLongSide = longSide;
+				}
+			}
+			if ( null == best ) {
+				continue;
+			}
+
+			final Rect used =
+				new Rect(best.x, best.y, paddedWidth, paddedHeight);
+			splitFree(free, used);
+			image.placed = new Rect(used.x, used.y,
+					image.pixels.getWidth(), image.pixels.getHeight());
+			page.images.add(image);
+		}
+		return page;
+	}
+
+	/**
+	 * Replaces every free rectangle overlapping the used one with the up to
+	 * four maximal rectangles around it, then drops free rectangles inside
+	 * other ones.
+	 */
+	private static void splitFree(final List<Rect> free, final Rect used) {
+		final List<Rect> split = new ArrayList<Rect>();
+		for( int i = free.size() - 1; i >= 0; i-- ) {
+			final Rect rect = free.get(i);
+			if ( !rect.intersects(used) ) {
+				continue;
+			}
+			free.remove(i);
+			if ( used.x > rect.x ) {
+				split.add(new Rect(rect.x, rect.y,
+						used.x - rect.x, rect.height));
+			}
+			if ( used.x + used.width < rect.x + rect.width ) {
+				split.add(new Rect(used.x + used.width, rect.y,
+						rect.x + rect.width - used.x - used.width,
+						rect.height));
+			}
+			if ( used.y > rect.y ) {
+				split.add(new Rect(rect.x, rect.y,
+						rect.width, used.y - rect.y));
+			}
+			if ( used.y + used.height < rect.y + rect.height ) {
+				split.add(new Rect(rect.x, used.y + used.height, rect.width,
+						rect.y + rect.height - used.y - used.height));
+			}
+		}
+		free.addAll(split);
+
+		for( int i = free.size() - 1; i >= 0; i-- ) {
+			for( int j = 0; j < free.size(); j++ ) {
+				if ( i != j && free.get(j).contains(free.get(i)) ) {
+					free.remove(i);
+					break;
+				}
+			}
+		}
+	}
+
+	private static BufferedImage drawPage(final Page page) {
+		final BufferedImage pixels = new BufferedImage(
+				page.width, page.height, BufferedImage.TYPE_INT_ARGB);
+		for( final Image image : page.images ) {
+			final Rect placed = image.placed;
+			for( int y = 0; y < placed.height + PADDING; y++ ) {
+				final int pageY = placed.y + y;
+				if ( pageY >= page.height ) {
+					break;
+				}
+				final int imageY = Math.min(y, placed.height - 1);
+				for( int x = 0; x < placed.width + PADDING; x++ ) {
+					final int pageX = placed.x + x;
+					if ( pageX >= page.width ) {
+						break;
+					}
+					final int imageX = Math.min(x, placed.width - 1);
+					pixels.setRGB(pageX, pageY,
+							image.pixels.getRGB(imageX, imageY));
+				}
+			}
+		}
+		return pixels;
+	}
+
+	private static void writeTable(final List<Page> pages,
+			final List<Image> images) throws IOException {
+		Collections.sort(images, new Comparator<Image>() {
+			public int compare(final Image a, final Image b) {
+				return a.name.compareTo(b.name);
+			}
+		});
+
+		final PrintWriter out = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(TABLE_PATH), "UTF-8"));
+		try {
+			out.println("/*");
+			out.println(" * Generated by tools/AtlasPacker.java, do not edit.");
+			out.println(" */");
+			out.println();
+			out.println("package com.android.spritemethodtest.opengl.batched;");
+			out.println();
+			out.println("import com.android.spritemethodtest.R;");
+			out.println();
+			out.println("/**");
+			out.println(" * Where each packed image is in the atlas pages.");
+			out.println(" * Texture coordinates are in the same quad order as");
+			out.println(" * {@link TextureAtlas}.");
+			out.println(" */");
+			out.println("public final class PackedAtlas {");
+			out.println();
+			out.println("\tpublic static final int[] PAGE_RESOURCE_IDS = new int[] {");
+			for( int i = 0; i < pages.size(); i++ ) {
+				final Page page = pages.get(i);
+				out.println("\t\tR.raw.packed_atlas_" + i + ", // "
+						+ page.width + "x" + page.height);
+			}
+			out.println("\t};");
+			out.println();
+
+			out.println("\t/**");
+			out.println("\t * @param resourceId int R.drawable ID of a packed image");
+			out.println("\t * @return int index into {@link #PAGE_RESOURCE_IDS}, or -1 if");
+			out.println("\t * the image wasn't packed");
+			out.println("\t */");
+			out.println("\tpublic static int getPage(final int resourceId) {");
+			out.println("\t\tswitch ( resourceId ) {");
+			for( final Image image : images ) {
+				out.println("\t\t\tcase R.drawable." + image.name + ":");
+				out.println("\t\t\t\treturn " + image.page + ";");
+			}
+			out.println("\t\t}");
+			out.println("\t\treturn -1;");
+			out.println("\t}");
+			out.println();
+
+			writeLookup(out, images, "float[]", "Float", "FLOAT");
+			writeLookup(out, images, "int[]", "Fixed", "FIXED");
+			writeSize(out, images, "Width");
+			writeSize(out, images, "Height");
+
+			for( final Image image : images ) {
+				final Page page = pages.get(image.page);
+				final Rect placed = image.placed;
+				final float left = placed.x / (float) page.width;
+				final float right =
+					(placed.x + placed.width) / (float) page.width;
+				final float top = placed.y / (float) page.height;
+				final float bottom =
+					(placed.y + placed.height) / (float) page.height;
+				final String constant = image.name.toUpperCase();
+				out.println("\tprivate static final float[] " + constant
+						+ "_FLOAT = new float[] {");
+				out.println("\t\t// U, V");
+				out.println("\t\t" + left + "f, " + bottom + "f,");
+				out.println("\t\t" + left + "f, " + top + "f,");
+				out.println("\t\t" + right + "f, " + bottom + "f,");
+				out.println("\t\t" + right + "f, " + top + "f,");
+				out.println("\t};");
+				out.println();
+				out.println("\tprivate static final int[] " + constant
+						+ "_FIXED = fix(" + constant + "_FLOAT);");
+				out.println();
+			}
+
+			out.println("\tprivate static int[] fix(final float[] input) {");
+			out.println("\t\tfinal int[] result = new int[input.length];");
+			out.println("\t\tfor( int i = 0; i < input.length; i++ ) {");
+			out.println("\t\t\tresult[i] = FixedPointUtil.fix(input[i]);");
+			out.println("\t\t}");
+			out.println("\t\treturn result;");
+			out.println("\t}");
+			out.println("}");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Sizes are of the file that was packed. Drawable folders for other
+	 * densities can hold other sizes of the same image, so anything drawn
+	 * from the atlas has to be sized from these instead of the resource.
+	 */
+	private static void writeSize(final PrintWriter out,
+			final List<Image> images, final String dimension) {
+		out.println("\t/**");
+		out.println("\t * @param resourceId int R.drawable ID of a packed image");
+		out.println("\t * @return int " + dimension.toLowerCase()
+				+ " in pixels as packed, or 0 if the image wasn't packed");
+		out.println("\t */");
+		out.println("\tpublic static int get" + dimension
+				+ "(final int resourceId) {");
+		out.println("\t\tswitch ( resourceId ) {");
+		for( final Image image : images ) {
+			out.println("\t\t\tcase R.drawable." + image.name + ":");
+			out.println("\t\t\t\treturn " + ("Width".equals(dimension)
+					? image.placed.width : image.placed.height) + ";");
+		}
+		out.println("\t\t}");
+		out.println("\t\treturn 0;");
+		out.println("\t}");
+		out.println();
+	}
+
+	private static void writeLookup(final PrintWriter out,
+			final List<Image> images, final String type, final String kind,
+			final String suffix) {
+		out.println("\t/**");
+		out.println("\t * @param resourceId int R.drawable ID of a packed image");
+		out.println("\t * @return " + type + " texture coordinates within its page,");
+		out.println("\t * or null if the image wasn't packed");
+		out.println("\t */");
+		out.println("\tpublic static " + type + " get" + kind
+				+ "Coords(final int resourceId) {");
+		out.println("\t\tswitch ( resourceId ) {");
+		for( final Image image : images ) {
+			out.println("\t\t\tcase R.drawable." + image.name + ":");
+			out.println("\t\t\t\treturn " + image.name.toUpperCase()
+					+ "_" + suffix + ";");
+		}
+		out.println("\t\t}");
+		out.println("\t\treturn null;");
+		out.println("\t}");
+		out.println();
+	}
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright (C) 2010 Lance Nanek
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Desktop build step that pre-encodes images into the compressed texture
+ * formats CompressedTexture loads. Run it before building the app whenever
+ * the images change, after AtlasPacker if the atlas changed, from the
+ * project directory:
+ * <pre>
+ * javac -d bin/tools tools/TextureCompressor.java
+ * java -cp bin/tools TextureCompressor res/drawable/background.png \
+ *     res/drawable/skate1.png res/drawable/skate2.png \
+ *     res/drawable/skate3.png res/raw/packed_atlas_0.png
+ * </pre>
+ * For each image NAME.png it writes to res/raw:
+ * <ul>
+ * <li>NAME_etc1.pkm, the color as ETC1 in the PKM format the Android tools
+ * use. ETC1 has no alpha, so images that aren't opaque also get
+ * NAME_alpha_etc1.pkm, the alpha as gray.</li>
+ * <li>NAME_pal8.pal, the image reduced to 256 colors, alpha included, as
+ * GL_PALETTE8_RGBA8_OES data after a 16 byte header: "PAL8", then the
+ * format, width and height as big endian ints.</li>
+ * </ul>
+ * ETC1 blocks are encoded by trying both sub-block orientations and both
+ * the individual and differential base color modes, keeping whichever has
+ * the least squared error. Palettes are chosen by median cut.
+ *
+ * @author Lance Nanek
+ *
+ */
+public class TextureCompressor {
+
+	private static final String OUTPUT_PATH = "res/raw/";
+
+	private static final int GL_PALETTE8_RGBA8_OES = 0x8B96;
+
+	private static final int PALETTE_SIZE = 256;
+
+	//Modifier magnitudes for each of the eight ETC1 tables.
+	private static final int[][] ETC1_MODIFIERS = new int[][] {
+		{ 2, 8 }, { 5, 17 }, { 9, 29 }, { 13, 42 },
+		{ 18, 60 }, { 24, 80 }, { 33, 106 }, { 47, 183 },
+	};
+
+	//Best encoding found so far for one block.
+	private static class Block {
+
+		long bits;
+
+		long error = Long.MAX_VALUE;
+	}
+
+	public static void main(final String[] args) throws IOException {
+		if ( 0 == args.length ) {
+			System.err.println("Usage: TextureCompressor image.png...");
+			System.exit(1);
+		}
+
+		for( final String path : args ) {
+			final File file = new File(path);
+			final BufferedImage image = ImageIO.read(file);
+			if ( null == image ) {
+				throw new IOException("Not an image: " + path);
+			}
+			final String name = file.getName();
+			final String base =
+				OUTPUT_PATH + name.substring(0, name.lastIndexOf('.'));
+
+			final int width = image.getWidth();
+			final int height = image.getHeight();
+			final int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+
+			writeEtc1(base + "_etc1.pkm", argb, width, height, false);
+			if ( hasAlpha(argb) ) {
+				writeEtc1(base + "_alpha_etc1.pkm", argb, width, height, true);
+			}
+			writePalette8(base + "_pal8.pal", argb, width, height);
+			System.out.println(path + ": " + width + "x" + height);
+		}
+	}
+
+	private static boolean hasAlpha(final int[] argb) {
+		for( final int pixel : argb ) {
+			if ( 0xff != pixel >>> 24 ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void writeEtc1(final String path, final int[] argb,
+			final int width, final int height, final boolean alpha)
+			throws IOException {
+		final int blocksWide = (width + 3) / 4;
+		final int blocksHigh = (height + 3) / 4;
+		final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(path)));
+		try {
+			out.writeBytes("PKM 10");
+			//ETC1_RGB_NO_MIPMAPS
+			out.writeShort(0);
+			out.writeShort(blocksWide * 4);
+			out.writeShort(blocksHigh * 4);
+			out.writeShort(width);
+			out.writeShort(height);
+
+			final int[] block = new int[16 * 3];
+			for( int blockY = 0; blockY < blocksHigh; blockY++ ) {
+				for( int blockX = 0; blockX < blocksWide; blockX++ ) {
+					//Pixels past the edge repeat the last row or column.
+					for( int x = 0; x < 4; x++ ) {
+						for( int y = 0; y < 4; y++ ) {
+							final int pixel = argb[
+								Math.min(blockY * 4 + y, height - 1) * width
+								+ Math.min(blockX * 4 + x, width - 1)];
+							final int offset = (x * 4 + y) * 3;
+							if ( alpha ) {
+								block[offset] = block[offset + 1] =
+									block[offset + 2] = pixel >>> 24;
+							} else {
+								block[offset] = (pixel >> 16) & 0xff;
+								block[offset + 1] = (pixel >> 8) & 0xff;
+								block[offset + 2] = pixel & 0xff;
+							}
+						}
+					}
+					out.writeLong(encodeEtc1Block(block));
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @param block int[] red, green, blue of the 16 pixels, in ETC1 pixel
+	 * order, column by column
+	 * @return long the encoded block
+	 */
+	static long encodeEtc1Block(final int[] block) {
+		final Block best = new Block();
+		for( int flip = 0; flip < 2; flip++ ) {
+			final float[] first = average(block, flip, 0);
+			final float[] second = average(block, flip, 1);
+
+			//Individual mode, two 4 bit base colors.
+			final int[] first4 = new int[3];
+			final int[] second4 = new int[3];
+			for( int c = 0; c < 3; c++ ) {
+				first4[c] = quantize(first[c], 15);
+				second4[c] = quantize(second[c], 15);
+			}
+			tryEtc1(block, best, flip, false, first4, second4);
+
+			//Differential mode, a 5 bit base and a 3 bit signed difference.
+			final int[] first5 = new int[3];
+			final int[] second5 = new int[3];
+			boolean fits = true;
+			for( int c = 0; c < 3; c++ ) {
+				first5[c] = quantize(first[c], 31);
+				second5[c] = quantize(second[c], 31);
+				final int delta = second5[c] - first5[c];
+				fits &= delta >= -4 && delta <= 3;
+			}
+			if ( fits ) {
+				tryEtc1(block, best, flip, true, first5, second5);
+			}
+		}
+		return best.bits;
+	}
+
+	private static float[] average(final int[] block, final int flip,
+			final int half) {
+		final float[] sum = new float[3];
+		for( int x = 0; x < 4; x++ ) {
+			for( int y = 0; y < 4; y++ ) {
+				if ( half != subBlock(flip, x, y) ) {
+					continue;
+				}
+				final int offset = (x * 4 + y) * 3;
+				for( int c = 0; c < 3; c++ ) {
+					sum[c] += block[offset + c];
+				}
+			}
+		}
+		for( int c = 0; c < 3; c++ ) {
+			sum[c] /= 8;
+		}
+		return sum;
+	}
+
+	private static int subBlock(final int flip, final int x, final int y) {
+		return 0 == flip ? x >> 1 : y >> 1;
+	}
+
+	private static int quantize(final float value, final int max) {
+		return Math.max(0, Math.min(max, Math.round(value * max / 255f)));
+	}
+
+	private static int expand(final int value, final boolean differential) {
+		return differential ? (value << 3) | (value >> 2)
+			: (value << 4) | value;
+	}
+
+	/**
+	 * Picks the best table and modifiers for each sub-block with the given
+	 * base colors and keeps the result if it beats the best so far.
+	 */
+	private static void tryEtc1(final int[] block, final Block best,
+			final int flip, final boolean differential,
+			final int[] first, final int[] second) {
+		long error = 0;
+		final int[] tables = new int[2];
+		int msb = 0;
+		int lsb = 0;
+		for( int half = 0; half < 2; half++ ) {
+			final int[] base = 0 == half ? first : second;
+			final int red = expand(base[0], differential);
+			final int green = expand(base[1], differential);
+			final int blue = expand(base[2], differential);
+
+			long bestError = Long.MAX_VALUE;
+			int bestMsb = 0;
+			int bestLsb = 0;
+			for( int table = 0; table < ETC1_MODIFIERS.length; table++ ) {
+				long tableError = 0;
+				int tableMsb = 0;
+				int tableLsb = 0;
+				for( int x = 0; x < 4; x++ ) {
+					for( int y = 0; y < 4; y++ ) {
+						if ( half != subBlock(flip, x, y) ) {
+							continue;
+						}
+						final int offset = (x * 4 + y) * 3;
+						int pixelError = Integer.MAX_VALUE;
+						int pixelIndex = 0;
+						for( int index = 0; index < 4; index++ ) {
+							final int modifier = modifier(table, index);
+							final int dr = clamp(red + modifier)
+								- block[offset];
+							final int dg = clamp(green + modifier)
+								- block[offset + 1];
+							final int db = clamp(blue + modifier)
+								- block[offset + 2];
+							final int e = dr * dr + dg * dg + db * db;
+							if ( e < pixelError ) {
+								pixelError = e;
+								pixelIndex = index;
+							}
+						}
+						tableError += pixelError;
+						final int bit = x * 4 + y;
+						tableMsb |= (pixelIndex >> 1) << bit;
+						tableLsb |= (pixelIndex & 1) << bit;
+					}
+				}
+				if ( tableError < bestError ) {
+					bestError = tableError;
+					tables[half] = table;
+					bestMsb = tableMsb;
+					bestLsb = tableLsb;
+				}
+			}
+			error += bestError;
+			msb |= bestMsb;
+			lsb |= bestLsb;
+		}
+
+		if ( error >= best.error ) {
+			return;
+		}
+
+		long bits = 0;
+		for( int c = 0; c < 3; c++ ) {
+			final int shift = 59 - c * 8;
+			if ( differential ) {
+				bits |= (long) first[c] << shift;
+				bits |= (long) ((second[c] - first[c]) & 7) << (shift - 3);
+			} else {
+				bits |= (long) first[c] << (shift + 1);
+				bits |= (long) second[c] << (shift - 3);
+			}
+		}
+		bits |= (long) tables[0] << 37;
+		bits |= (long) tables[1] << 34;
+		bits |= (differential ? 1L : 0L) << 33;
+		bits |= (long) flip << 32;
+		bits |= (long) (msb & 0xffff) << 16;
+		bits |= lsb & 0xffff;
+
+		best.bits = bits;
+		best.error = error;
+	}
+
+	//Pixel index 0 and 1 add the small and large modifier, 2 and 3 subtract.
+	private static int modifier(final int table, final int index) {
+		final int magnitude = ETC1_MODIFIERS[table][index & 1];
+		return index < 2 ? magnitude : -magnitude;
+	}
+
+	private static int clamp(final int value) {
+		return value < 0 ? 0 : value > 255 ? 255 : value;
+	}
+
+	private static void writePalette8(final String path, final int[] argb,
+			final int width, final int height) throws IOException {
+		//Fully transparent pixels all look the same, so share one entry.
+		final int[] pixels = new int[argb.length];
+		for( int i = 0; i < argb.length; i++ ) {
+			pixels[i] = 0 == argb[i] >>> 24 ? 0 : argb[i];
+		}
+
+		final int[] palette = medianCut(pixels);
+		final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(path)));
+		try {
+			out.writeBytes("PAL8");
+			out.writeInt(GL_PALETTE8_RGBA8_OES);
+			out.writeInt(width);
+			out.writeInt(height);
+
+			//The full palette is always stored, unused entries included.
+			for( int i = 0; i < PALETTE_SIZE; i++ ) {
+				final int color = i < palette.length ? palette[i] : 0;
+				out.writeByte(color >> 16);
+				out.writeByte(color >> 8);
+				out.writeByte(color);
+				out.writeByte(color >>> 24);
+			}
+			for( final int pixel : pixels ) {
+				out.writeByte(nearest(palette, pixel));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Splits the colors into up to {@link #PALETTE_SIZE} boxes, each time
+	 * halving the box with the widest channel range at the median of that
+	 * channel.
+	 *
+	 * @return int[] the ARGB average of each box
+	 */
+	private static int[] medianCut(final int[] pixels) {
+		final List<int[]> boxes = new ArrayList<int[]>();
+		boxes.add(pixels.clone());
+		while ( boxes.size() < PALETTE_SIZE ) {
+			int widest = -1;
+			int widestChannel = 0;
+			int widestRange = 0;
+			for( int i = 0; i < boxes.size(); i++ ) {
+				final int[] box = boxes.get(i);
+				for( int channel = 0; channel < 4; channel++ ) {
+					final int range = range(box, channel);
+					if ( range > widestRange ) {
+						widest = i;
+						widestChannel = channel;
+						widestRange = range;
+					}
+				}
+			}
+			if ( -1 == widest ) {
+				break;
+			}
+
+			final int[] box = boxes.remove(widest);
+			final int shift = widestChannel * 8;
+			final long[] keyed = new long[box.length];
+			for( int i = 0; i < box.length; i++ ) {
+				keyed[i] = ((long) ((box[i] >>> shift) & 0xff) << 32)
+					| (box[i] & 0xffffffffL);
+			}
+			java.util.Arrays.sort(keyed);
+			final int half = box.length / 2;
+			final int[] low = new int[half];
+			final int[] high = new int[box.length - half];
+			for( int i = 0; i < box.length; i++ ) {
+				final int color = (int) keyed[i];
+				if ( i < half ) {
+					low[i] = color;
+				} else {
+					high[i - half] = color;
+				}
+			}
+			boxes.add(low);
+			boxes.add(high);
+		}
+
+		final int[] palette = new int[boxes.size()];
+		for( int i = 0; i < palette.length; i++ ) {
+			final int[] box = boxes.get(i);
+			final long[] sums = new long[4];
+			for( final int color : box ) {
+				for( int channel = 0; channel < 4; channel++ ) {
+					sums[channel] += (color >>> (channel * 8)) & 0xff;
+				}
+			}
+			int color = 0;
+			for( int channel = 0; channel < 4; channel++ ) {
+				color |= (int) (sums[channel] / box.length) << (channel * 8);
+			}
+			palette[i] = color;
+		}
+		return palette;
+	}
+
+	private static int range(final int[] box, final int channel) {
+		if ( box.length < 2 ) {
+			return 0;
+		}
+		int min = 255;
+		int max = 0;
+		for( final int color : box ) {
+			final int value = (color >>> (channel * 8)) & 0xff;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		return max - min;
+	}
+
+	private static int nearest(final int[] palette, final int color) {
+		int best = 0;
+		int bestDistance = Integer.MAX_VALUE;
+		for( int i = 0; i < palette.length; i++ ) {
+			int distance = 0;
+			for( int channel = 0; channel < 4; channel++ ) {
+				final int d = ((palette[i] >>> (channel * 8)) & 0xff)
+					- ((color >>> (channel * 8)) & 0xff);
+				distance += d * d;
+			}
+			if ( distance < bestDistance ) {
+				best = i;
+				bestDistance = distance;
+			}
+		}
+		return best;
+	}
+}